@@ -0,0 +1,47 @@
+package markdown.benchmark;
+
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.CommandLineOptionException;
+import org.openjdk.jmh.runner.options.CommandLineOptions;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import org.openjdk.jmh.runner.options.TimeValue;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Runs the benchmarks with the defaults used for the baseline numbers:
+ * throughput in ops/s and MB/s, plus the GC profiler for the allocated bytes per operation.
+ * <p>
+ * All the usual JMH command-line options can be given to override the defaults, e.g. "LexerBenchmark -p size=LARGE".
+ */
+public class BenchmarkRunner {
+    public static void main(String[] args) throws RunnerException, CommandLineOptionException {
+        CommandLineOptions commandLine = new CommandLineOptions(args);
+
+        OptionsBuilder builder = new OptionsBuilder();
+        builder.parent(commandLine);
+        if (commandLine.getIncludes().isEmpty())
+            builder.include(MarkdownInput.class.getPackageName() + ".*Benchmark");
+        if (commandLine.getBenchModes().isEmpty())
+            builder.mode(Mode.Throughput);
+        if (!commandLine.getTimeUnit().hasValue())
+            builder.timeUnit(TimeUnit.SECONDS);
+        if (!commandLine.getWarmupIterations().hasValue())
+            builder.warmupIterations(3);
+        if (!commandLine.getWarmupTime().hasValue())
+            builder.warmupTime(TimeValue.seconds(1));
+        if (!commandLine.getMeasurementIterations().hasValue())
+            builder.measurementIterations(5);
+        if (!commandLine.getMeasurementTime().hasValue())
+            builder.measurementTime(TimeValue.seconds(1));
+        if (!commandLine.getForkCount().hasValue())
+            builder.forks(1);
+        if (commandLine.getProfilers().isEmpty())
+            builder.addProfiler(GCProfiler.class);
+
+        new Runner(builder.build()).run();
+    }
+}
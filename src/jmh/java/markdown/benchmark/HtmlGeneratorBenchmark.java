@@ -0,0 +1,37 @@
+package markdown.benchmark;
+
+import markdown.interpreter.HtmlGeneratorVisitor;
+import markdown.nodes.FlatDoc;
+import markdown.nodes.MdDoc;
+import markdown.parser.MarkdownLexer;
+import markdown.parser.MarkdownParser;
+import org.openjdk.jmh.annotations.*;
+
+public class HtmlGeneratorBenchmark {
+    @State(Scope.Benchmark)
+    public static class Document {
+        MdDoc doc;
+        FlatDoc flat;
+
+        @Setup(Level.Trial)
+        public void setUp(MarkdownInput input) {
+            doc = MarkdownParser.parse(input.file, new MarkdownLexer(true).tokenizeToBuffer(input.text));
+            flat = FlatDoc.of(doc);
+            flat.trimToSize();
+        }
+    }
+
+    @Benchmark
+    public String generate(MarkdownInput input, Document document, Throughput throughput) {
+        String html = new HtmlGeneratorVisitor().generate(document.doc);
+        throughput.add(input.bytes);
+        return html;
+    }
+
+    @Benchmark
+    public String generateFlat(MarkdownInput input, Document document, Throughput throughput) {
+        String html = new HtmlGeneratorVisitor().generate(document.flat);
+        throughput.add(input.bytes);
+        return html;
+    }
+}
@@ -0,0 +1,65 @@
+package markdown.benchmark;
+
+import markdown.HtmlPublisher;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.Executor;
+import java.util.concurrent.Flow;
+
+/**
+ * The latency of the first item of an HtmlPublisher, which does not depend on the size of the document, against
+ * publishing the whole document. The signals come on the benchmark thread.
+ */
+public class HtmlPublisherBenchmark {
+    private static final Executor DIRECT = Runnable::run;
+
+    /**
+     * Requests all the items, or only the first one and cancels then.
+     */
+    private static final class Collector implements Flow.Subscriber<CharSequence> {
+        private final boolean all;
+        private Flow.Subscription subscription;
+        long chars;
+
+        Collector(boolean all) {
+            this.all = all;
+        }
+
+        @Override
+        public void onSubscribe(Flow.Subscription subscription) {
+            this.subscription = subscription;
+            subscription.request(all ? Long.MAX_VALUE : 1);
+        }
+
+        @Override
+        public void onNext(CharSequence item) {
+            chars += item.length();
+            if (!all)
+                subscription.cancel();
+        }
+
+        @Override
+        public void onError(Throwable error) {
+            throw new IllegalStateException(error);
+        }
+
+        @Override
+        public void onComplete() {
+        }
+    }
+
+    @Benchmark
+    public long firstItem(MarkdownInput input) {
+        Collector collector = new Collector(false);
+        new HtmlPublisher(input.uri, DIRECT).subscribe(collector);
+        return collector.chars;
+    }
+
+    @Benchmark
+    public long allItems(MarkdownInput input, Throughput throughput) {
+        Collector collector = new Collector(true);
+        new HtmlPublisher(input.uri, DIRECT).subscribe(collector);
+        throughput.add(input.bytes);
+        return collector.chars;
+    }
+}
@@ -0,0 +1,47 @@
+package markdown.benchmark;
+
+import markdown.parser.MarkdownLexer;
+import markdown.parser.MarkdownToken;
+import markdown.parser.MarkdownTokenStream;
+import markdown.parser.TokenBuffer;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.io.IOException;
+import java.util.List;
+
+public class LexerBenchmark {
+    @Benchmark
+    public List<MarkdownToken> tokenize(MarkdownInput input, Throughput throughput) {
+        MarkdownLexer lexer = new MarkdownLexer(true);
+        List<MarkdownToken> tokens = lexer.tokenize(input.text);
+        throughput.add(input.bytes);
+        return tokens;
+    }
+
+    @Benchmark
+    public TokenBuffer tokenizeToBuffer(MarkdownInput input, Throughput throughput) {
+        MarkdownLexer lexer = new MarkdownLexer(true);
+        TokenBuffer tokens = lexer.tokenizeToBuffer(input.text);
+        throughput.add(input.bytes);
+        return tokens;
+    }
+
+    @Benchmark
+    public List<MarkdownToken> tokenizeFile(MarkdownInput input, Throughput throughput) throws IOException {
+        MarkdownLexer lexer = new MarkdownLexer(true);
+        List<MarkdownToken> tokens = lexer.tokenize(input.uri);
+        throughput.add(input.bytes);
+        return tokens;
+    }
+
+    @Benchmark
+    public void tokenStream(MarkdownInput input, Throughput throughput, Blackhole blackhole) {
+        MarkdownLexer lexer = new MarkdownLexer(true);
+        try (MarkdownTokenStream tokens = lexer.tokenStream(input.text)) {
+            while (tokens.hasNext())
+                blackhole.consume(tokens.next());
+        }
+        throughput.add(input.bytes);
+    }
+}
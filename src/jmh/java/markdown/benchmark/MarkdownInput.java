@@ -0,0 +1,81 @@
+package markdown.benchmark;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URI;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+
+/**
+ * The markdown input shared by all benchmarks.
+ * <p>
+ * The documents are built by repeating the basic*.md test-resources, so every size contains the same mix of
+ * headings, paragraphs, emphasis, line-breaks and blockquotes which the parser fully supports.
+ */
+@State(Scope.Benchmark)
+public class MarkdownInput {
+    public enum Size {
+        SMALL(1),       // ~5 KB
+        MEDIUM(64),     // ~330 KB
+        LARGE(1024);    // ~5 MB
+
+        private final int copies;
+
+        Size(int copies) {
+            this.copies = copies;
+        }
+    }
+
+    private static final String[] SAMPLES = {
+            "basic01_text.md",
+            "basic02_headings.md",
+            "basic03_paragraphs.md",
+            "basic04_linebreaks.md",
+            "basic05_emphasis.md",
+            "basic06_blockquotes.md"
+    };
+
+    @Param({"SMALL", "MEDIUM", "LARGE"})
+    public Size size;
+
+    public String text;
+    public int bytes;
+    public ByteBuffer utf8;     // the encoded text, off the heap like a memory-mapped file
+    public File file;
+    public URI uri;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        StringBuilder sample = new StringBuilder();
+        for (String resource : SAMPLES) {
+            try (InputStream in = MarkdownInput.class.getResourceAsStream("/" + resource)) {
+                if (in == null)
+                    throw new IOException("Missing resource " + resource);
+                sample.append(new String(in.readAllBytes(), StandardCharsets.UTF_8)).append('\n');
+            }
+        }
+
+        StringBuilder sb = new StringBuilder(sample.length() * size.copies);
+        for (int i = 0; i < size.copies; i++)
+            sb.append(sample);
+        text = sb.toString();
+
+        byte[] content = text.getBytes(StandardCharsets.UTF_8);
+        bytes = content.length;
+        utf8 = ByteBuffer.allocateDirect(content.length).put(content).flip().asReadOnlyBuffer();
+        file = File.createTempFile("markdown-benchmark-" + size.name().toLowerCase() + "-", ".md");
+        file.deleteOnExit();
+        Files.write(file.toPath(), content);
+        uri = file.toURI();
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        if (file != null)
+            file.delete();
+    }
+}
@@ -0,0 +1,49 @@
+package markdown.benchmark;
+
+import markdown.nodes.MdDoc;
+import markdown.parser.MarkdownLexer;
+import markdown.parser.MarkdownParser;
+import markdown.parser.ParallelMarkdownParser;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * Lexing and parsing a whole document, sequentially and on a fork-join pool with the given number of threads:
+ * the speedup is the ratio of the ops/s of parallel and sequential at the same size.
+ */
+public class ParallelParserBenchmark {
+    @State(Scope.Benchmark)
+    public static class Pool {
+        @Param({"1", "2", "4", "8"})
+        public int threads;
+
+        ForkJoinPool pool;
+        ParallelMarkdownParser parser;
+
+        @Setup(Level.Trial)
+        public void setUp() {
+            pool = new ForkJoinPool(threads);
+            parser = new ParallelMarkdownParser(true, pool, ParallelMarkdownParser.DEFAULT_CHUNK_SIZE / 8);
+        }
+
+        @TearDown(Level.Trial)
+        public void tearDown() {
+            pool.shutdown();
+        }
+    }
+
+    @Benchmark
+    public MdDoc sequential(MarkdownInput input, Throughput throughput) {
+        MdDoc doc = MarkdownParser.parse(input.file, new MarkdownLexer(true).tokenizeToBuffer(input.text));
+        throughput.add(input.bytes);
+        return doc;
+    }
+
+    @Benchmark
+    public MdDoc parallel(MarkdownInput input, Pool pool, Throughput throughput) {
+        MdDoc doc = pool.parser.parse(input.file, input.text);
+        throughput.add(input.bytes);
+        return doc;
+    }
+}
@@ -0,0 +1,59 @@
+package markdown.benchmark;
+
+import markdown.nodes.MdDoc;
+import markdown.parser.IncrementalParser;
+import markdown.parser.MarkdownLexer;
+import markdown.parser.MarkdownParser;
+import markdown.parser.MarkdownToken;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.List;
+
+public class ParserBenchmark {
+    @State(Scope.Benchmark)
+    public static class Tokens {
+        List<MarkdownToken> tokens;
+
+        @Setup(Level.Trial)
+        public void setUp(MarkdownInput input) {
+            tokens = new MarkdownLexer(true).tokenize(input.text);
+        }
+    }
+
+    @Benchmark
+    public MdDoc parse(MarkdownInput input, Tokens tokens, Throughput throughput) {
+        MdDoc doc = MarkdownParser.parse(input.file, tokens.tokens);
+        throughput.add(input.bytes);
+        return doc;
+    }
+
+    /**
+     * An editor which types a char into the middle of the document and deletes it again.
+     */
+    @State(Scope.Thread)
+    public static class Editor {
+        IncrementalParser parser;
+        MdDoc doc;
+        String text;
+        String editedText;
+        int offset;
+
+        @Setup(Level.Trial)
+        public void setUp(MarkdownInput input) {
+            parser = new IncrementalParser();
+            text = input.text;
+            doc = parser.parse(text);
+            offset = text.indexOf(' ', text.length() / 2);
+            editedText = text.substring(0, offset) + "x" + text.substring(offset);
+        }
+    }
+
+    /**
+     * The two incremental re-parses of an edit and its undo: their time should not depend on the size.
+     */
+    @Benchmark
+    public MdDoc reparse(Editor editor) {
+        editor.parser.reparse(editor.doc, editor.text, editor.offset, 0, "x");
+        return editor.parser.reparse(editor.doc, editor.editedText, editor.offset, 1, "");
+    }
+}
@@ -0,0 +1,39 @@
+package markdown.benchmark;
+
+import markdown.MarkdownProcessor;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.File;
+import java.io.IOException;
+
+public class ProcessorBenchmark {
+    @State(Scope.Thread)
+    public static class Output {
+        public File file;
+
+        @Setup(Level.Trial)
+        public void setUp() throws IOException {
+            file = File.createTempFile("markdown-benchmark-", ".html");
+            file.deleteOnExit();
+        }
+
+        @TearDown(Level.Trial)
+        public void tearDown() {
+            file.delete();
+        }
+    }
+
+    @Benchmark
+    public String process(MarkdownInput input, Throughput throughput) {
+        String html = new MarkdownProcessor().process(input.uri);
+        throughput.add(input.bytes);
+        return html;
+    }
+
+    @Benchmark
+    public int processToFile(MarkdownInput input, Output output, Throughput throughput) {
+        int status = new MarkdownProcessor().process(input.uri, output.file);
+        throughput.add(input.bytes);
+        return status;
+    }
+}
@@ -0,0 +1,23 @@
+package markdown.benchmark;
+
+import org.openjdk.jmh.annotations.*;
+
+/**
+ * Secondary result of the benchmarks: the processed input in megabytes, reported by JMH as MB per second.
+ * <p>
+ * The allocated bytes per operation are reported by the GC profiler as gc.alloc.rate.norm.
+ */
+@State(Scope.Thread)
+@AuxCounters(AuxCounters.Type.OPERATIONS)
+public class Throughput {
+    public double megabytes;
+
+    @Setup(Level.Iteration)
+    public void reset() {
+        megabytes = 0;
+    }
+
+    public void add(int bytes) {
+        megabytes += bytes / 1_000_000.0;
+    }
+}
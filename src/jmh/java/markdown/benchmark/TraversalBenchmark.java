@@ -0,0 +1,113 @@
+package markdown.benchmark;
+
+import markdown.interpreter.TreeVisitor;
+import markdown.interpreter.Visitor;
+import markdown.nodes.*;
+import markdown.parser.MarkdownLexer;
+import markdown.parser.MarkdownParser;
+import org.openjdk.jmh.annotations.*;
+
+/**
+ * Compares visiting every node of a document recursively, with a Visitor and acceptChildren(...), against
+ * MdNode.walk(...) with its explicit stack.
+ */
+public class TraversalBenchmark {
+    @State(Scope.Benchmark)
+    public static class Document {
+        MdDoc doc;
+
+        @Setup(Level.Trial)
+        public void setUp(MarkdownInput input) {
+            doc = MarkdownParser.parse(input.file, new MarkdownLexer(true).tokenize(input.text));
+        }
+    }
+
+    @Benchmark
+    public int accept(MarkdownInput input, Document document, Throughput throughput) {
+        CountingVisitor visitor = new CountingVisitor();
+        document.doc.accept(visitor);
+        throughput.add(input.bytes);
+        return visitor.count;
+    }
+
+    @Benchmark
+    public int walk(MarkdownInput input, Document document, Throughput throughput) {
+        CountingVisitor visitor = new CountingVisitor();
+        document.doc.walk(visitor);
+        throughput.add(input.bytes);
+        return visitor.count;
+    }
+
+    @Benchmark
+    public int hashCode(MarkdownInput input, Document document, Throughput throughput) {
+        int hash = document.doc.hashCode();
+        throughput.add(input.bytes);
+        return hash;
+    }
+
+
+    /**
+     * Counts the chars of the texts, the same work for both kinds of traversal.
+     */
+    private static class CountingVisitor implements Visitor, TreeVisitor {
+        int count;
+
+        @Override
+        public boolean enter(MdNode node) {
+            if (node instanceof MdText)
+                count += ((MdText) node).getEnd() - ((MdText) node).getStart();
+            else
+                count++;
+            return true;
+        }
+
+        @Override
+        public void exit(MdNode node) {
+        }
+
+        @Override
+        public void visitDoc(MdDoc doc) {
+            count++;
+            doc.acceptChildren(this);
+        }
+
+        @Override
+        public void visitParagraph(MdParagraph paragraph) {
+            count++;
+            paragraph.acceptChildren(this);
+        }
+
+        @Override
+        public void visitHeading(MdHeading heading) {
+            count++;
+            heading.acceptChildren(this);
+        }
+
+        @Override
+        public void visitHtml(MdHtml html) {
+            count++;
+        }
+
+        @Override
+        public void visitBlockQuote(MdBlockQuote blockQuote) {
+            count++;
+            blockQuote.acceptChildren(this);
+        }
+
+        @Override
+        public void visitText(MdText text) {
+            count += text.getEnd() - text.getStart();
+        }
+
+        @Override
+        public void visitBreak(MdBreak lineBreak) {
+            count++;
+        }
+
+        @Override
+        public void visitEmphasis(MdEmphasis emphasis) {
+            count++;
+            emphasis.acceptChildren(this);
+        }
+    }
+}
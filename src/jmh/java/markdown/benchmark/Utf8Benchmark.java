@@ -0,0 +1,67 @@
+package markdown.benchmark;
+
+import markdown.MarkdownProcessor;
+import markdown.interpreter.ChannelWriter;
+import markdown.interpreter.HtmlGeneratorVisitor;
+import markdown.parser.MarkdownLexer;
+import markdown.parser.MarkdownParser;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.ByteBuffer;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Renders UTF-8 markdown from memory into a channel: decoded to chars, lexed and encoded again by a ChannelWriter,
+ * against lexed as bytes whose texts are copied into a Utf8ChannelWriter as they are.
+ */
+@State(Scope.Benchmark)
+public class Utf8Benchmark {
+    /**
+     * Discards the html, like a socket which is always ready; it stays open, so it can be passed to every call.
+     */
+    @State(Scope.Thread)
+    public static class Discard implements WritableByteChannel {
+        long written;
+
+        @Override
+        public int write(ByteBuffer src) {
+            int n = src.remaining();
+            src.position(src.limit());
+            written += n;
+            return n;
+        }
+
+        @Override
+        public boolean isOpen() {
+            return true;
+        }
+
+        @Override
+        public void close() {
+        }
+    }
+
+    private final MarkdownLexer lexer = new MarkdownLexer(true);
+    private final HtmlGeneratorVisitor htmlGenerator = new HtmlGeneratorVisitor();
+    private final MarkdownProcessor processor = new MarkdownProcessor();
+
+    @Benchmark
+    public long renderChars(MarkdownInput input, Discard output, Throughput throughput) throws IOException {
+        String text = StandardCharsets.UTF_8.decode(input.utf8.duplicate()).toString();
+        try (Writer writer = new ChannelWriter(output)) {
+            htmlGenerator.generate(MarkdownParser.parse(input.file, lexer.tokenizeToBuffer(text)), writer);
+        }
+        throughput.add(input.bytes);
+        return output.written;
+    }
+
+    @Benchmark
+    public long renderBytes(MarkdownInput input, Discard output, Throughput throughput) throws IOException {
+        processor.process(input.utf8, output);
+        throughput.add(input.bytes);
+        return output.written;
+    }
+}
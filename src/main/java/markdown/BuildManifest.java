@@ -0,0 +1,255 @@
+package markdown;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URISyntaxException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.jar.JarEntry;
+import java.util.jar.JarFile;
+import java.util.stream.Stream;
+
+/**
+ * BuildManifest
+ * <p>
+ * A persistent record of the inputs which were converted: per input path it stores the hash of the input's
+ * content and the hash of the renderer-version which converted it. An input whose hashes are the same on
+ * the next run does not need to be converted again.
+ * <p>
+ * The renderer-version is derived from all the class-files of the packages of the lexer, the parser, the nodes and
+ * the html-generator, as they are found next to this class, so a changed renderer invalidates all the entries by
+ * itself, also when a class is added to these packages. The manifest is a text file with one line
+ * per input, it may be updated by several threads at once.
+ */
+public class BuildManifest {
+    public static final String FILE_NAME = ".markdown-manifest";
+    static final String FORMAT_VERSION = "1";
+
+    private static final String[] RENDERER_PACKAGES = {"markdown/parser/", "markdown/nodes/", "markdown/interpreter/"};
+    private static final String[] RENDERER_CLASSES = {"markdown/MarkdownProcessor.class"};
+    private static volatile String rendererVersion;
+
+    private final Path file;
+    private final Map<String, Entry> entries = new ConcurrentHashMap<>();
+
+    private BuildManifest(Path file) {
+        this.file = file;
+    }
+
+    /**
+     * Load the manifest from the file, a missing file is an empty manifest.
+     */
+    public static BuildManifest load(Path file) throws IOException {
+        BuildManifest manifest = new BuildManifest(file);
+        if (Files.exists(file)) {
+            for (String line : Files.readAllLines(file, StandardCharsets.UTF_8)) {
+                if (line.isEmpty() || line.startsWith("#"))
+                    continue;
+                String[] fields = line.split("\t", 3);
+                if (fields.length == 3)
+                    manifest.entries.put(fields[2], new Entry(fields[0], fields[1]));
+            }
+        }
+        return manifest;
+    }
+
+    /**
+     * Store the manifest into its file; the file is replaced at once, so it is never left half written.
+     */
+    public void save() throws IOException {
+        Path temp = createSibling(file);
+        try {
+            try (BufferedWriter writer = Files.newBufferedWriter(temp, StandardCharsets.UTF_8)) {
+                writer.write("# markdown-manifest " + FORMAT_VERSION + ": content-hash, renderer-version, input-path\n");
+                for (Map.Entry<String, Entry> entry : new TreeMap<>(entries).entrySet()) {
+                    writer.write(entry.getValue().contentHash + "\t" + entry.getValue().rendererVersion + "\t" + entry.getKey());
+                    writer.write('\n');
+                }
+            }
+            moveReplacing(temp, file);
+        } finally {
+            Files.deleteIfExists(temp);
+        }
+    }
+
+
+    // operations:
+    public Path getFile() {
+        return file;
+    }
+
+    public int size() {
+        return entries.size();
+    }
+
+    /**
+     * @return true when the input was converted with the same content and the same renderer-version before
+     */
+    public boolean isUpToDate(String inputPath, String contentHash) {
+        Entry entry = entries.get(inputPath);
+        return entry != null && entry.contentHash.equals(contentHash) && entry.rendererVersion.equals(rendererVersion());
+    }
+
+    public void put(String inputPath, String contentHash) {
+        entries.put(inputPath, new Entry(contentHash, rendererVersion()));
+    }
+
+    public void remove(String inputPath) {
+        entries.remove(inputPath);
+    }
+
+    /**
+     * Remove the entries of all the inputs which are not among inputPaths, e.g. the ones which were deleted.
+     */
+    public void retainAll(Collection<String> inputPaths) {
+        entries.keySet().retainAll(inputPaths);
+    }
+
+    /**
+     * @return the hex-encoded SHA-256 hash of the content of the file
+     */
+    public static String hash(Path file) throws IOException {
+        MessageDigest digest = sha256();
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            ByteBuffer buffer = ByteBuffer.allocate(1 << 16);
+            while (channel.read(buffer) >= 0) {
+                buffer.flip();
+                digest.update(buffer);
+                buffer.clear();
+            }
+        }
+        return toHex(digest.digest());
+    }
+
+    /**
+     * @return the hex-encoded SHA-256 hash of the content
+     */
+    public static String hash(byte[] content) {
+        return toHex(sha256().digest(content));
+    }
+
+    /**
+     * @return the hash over the class-files of the renderer, which changes whenever the renderer does
+     */
+    public static String rendererVersion() {
+        String version = rendererVersion;
+        if (version == null) {
+            MessageDigest digest = sha256();
+            digest.update(FORMAT_VERSION.getBytes(StandardCharsets.UTF_8));
+            for (String rendererClass : rendererClasses()) {
+                digest.update(rendererClass.getBytes(StandardCharsets.UTF_8));
+                try (InputStream input = BuildManifest.class.getClassLoader().getResourceAsStream(rendererClass)) {
+                    if (input != null)
+                        digest.update(input.readAllBytes());
+                } catch (IOException e) {
+                    e.printStackTrace();
+                }
+            }
+            rendererVersion = version = toHex(digest.digest()).substring(0, 16);
+        }
+        return version;
+    }
+
+    /**
+     * @return the sorted resource-names of the class-files which the renderer-version is derived from: the ones of
+     * the renderer packages in the directory or jar this class was loaded from, and the other RENDERER_CLASSES
+     */
+    static List<String> rendererClasses() {
+        TreeSet<String> classes = new TreeSet<>(Arrays.asList(RENDERER_CLASSES));
+        try {
+            Path codeSource = Path.of(BuildManifest.class.getProtectionDomain().getCodeSource().getLocation().toURI());
+            if (Files.isDirectory(codeSource)) {
+                for (String rendererPackage : RENDERER_PACKAGES) {
+                    Path dir = codeSource.resolve(rendererPackage);
+                    if (!Files.isDirectory(dir))
+                        continue;
+                    try (Stream<Path> files = Files.walk(dir)) {
+                        files.map(file -> codeSource.relativize(file).toString().replace(File.separatorChar, '/'))
+                                .filter(name -> name.endsWith(".class"))
+                                .forEach(classes::add);
+                    }
+                }
+            } else {
+                try (JarFile jar = new JarFile(codeSource.toFile())) {
+                    for (JarEntry entry : Collections.list(jar.entries())) {
+                        for (String rendererPackage : RENDERER_PACKAGES) {
+                            if (entry.getName().startsWith(rendererPackage) && entry.getName().endsWith(".class"))
+                                classes.add(entry.getName());
+                        }
+                    }
+                }
+            }
+        } catch (IOException | URISyntaxException | RuntimeException e) {
+            e.printStackTrace();
+        }
+        return new ArrayList<>(classes);
+    }
+
+
+    // helpers:
+    private static class Entry {
+        final String contentHash;
+        final String rendererVersion;
+
+        Entry(String contentHash, String rendererVersion) {
+            this.contentHash = contentHash;
+            this.rendererVersion = rendererVersion;
+        }
+    }
+
+    /**
+     * Create a new empty file next to the file, to be moved onto it later. Unlike Files.createTempFile(...) the
+     * file gets the default permissions, so the moved file has the same ones as a file which is written directly.
+     */
+    static Path createSibling(Path file) throws IOException {
+        Path dir = file.toAbsolutePath().getParent();
+        Files.createDirectories(dir);
+        while (true) {
+            Path sibling = dir.resolve(file.getFileName() + "." + Long.toHexString(ThreadLocalRandom.current().nextLong()) + ".tmp");
+            try {
+                return Files.createFile(sibling);
+            } catch (FileAlreadyExistsException e) {
+                // taken, try the next name
+            }
+        }
+    }
+
+    static void moveReplacing(Path source, Path target) throws IOException {
+        try {
+            Files.move(source, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (AtomicMoveNotSupportedException e) {
+            Files.move(source, target, StandardCopyOption.REPLACE_EXISTING);
+        }
+    }
+
+    private static MessageDigest sha256() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 is not available", e);
+        }
+    }
+
+    private static String toHex(byte[] bytes) {
+        StringBuilder sb = new StringBuilder(bytes.length * 2);
+        for (byte b : bytes)
+            sb.append(Character.forDigit((b >> 4) & 0xF, 16)).append(Character.forDigit(b & 0xF, 16));
+        return sb.toString();
+    }
+}
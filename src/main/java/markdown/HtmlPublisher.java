@@ -0,0 +1,212 @@
+package markdown;
+
+import markdown.interpreter.HtmlGeneratorVisitor;
+import markdown.nodes.MdNode;
+import markdown.parser.MarkdownBlockParser;
+import markdown.parser.MarkdownLexer;
+import markdown.parser.MarkdownTokenStream;
+
+import java.io.File;
+import java.io.IOException;
+import java.net.URI;
+import java.util.Objects;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Flow;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * HtmlPublisher
+ * <p>
+ * Publishes the html of a document while it is lexed, parsed and rendered: every item is the html of one top-level
+ * block, and a block is only read and rendered when the subscriber requested an item for it. So the first item is
+ * there after the first block, and a slow subscriber holds back the rendering instead of the html piling up: the
+ * memory of a subscription for a uri is bounded by one block and the lexer's window, not by the size of the
+ * document. An in-memory text is lexed in one window of its whole length, like MarkdownLexer.tokenize(...) does.
+ * <p>
+ * The document's start-tags come with the first item, its end-tags are the last item, so the items concatenated
+ * are the same html as HtmlGeneratorVisitor.generate(doc). An item is a new CharSequence, which the publisher does
+ * not touch again.
+ * <p>
+ * Every subscription renders the document anew on the executor, one task at a time, so its signals are never
+ * concurrent. A cancelled subscription closes its input before the next block.
+ */
+public class HtmlPublisher implements Flow.Publisher<CharSequence> {
+    private final File filePath;
+    private final URI uri;              // null when the text is in memory
+    private final CharSequence text;
+    private final Executor executor;
+    private final MarkdownLexer lexer = new MarkdownLexer(true);
+    private final HtmlGeneratorVisitor htmlGenerator = new HtmlGeneratorVisitor();
+
+    /**
+     * @param uri the markdown, which is read again for every subscriber
+     */
+    public HtmlPublisher(URI uri) {
+        this(uri, ForkJoinPool.commonPool());
+    }
+
+    public HtmlPublisher(URI uri, Executor executor) {
+        this.filePath = "file".equalsIgnoreCase(uri.getScheme()) ? new File(uri) : null;
+        this.uri = uri;
+        this.text = null;
+        this.executor = executor;
+    }
+
+    public HtmlPublisher(CharSequence text) {
+        this(text, ForkJoinPool.commonPool());
+    }
+
+    public HtmlPublisher(CharSequence text, Executor executor) {
+        this.filePath = null;
+        this.uri = null;
+        this.text = text;
+        this.executor = executor;
+    }
+
+
+    // Flow.Publisher:
+    @Override
+    public void subscribe(Flow.Subscriber<? super CharSequence> subscriber) {
+        Objects.requireNonNull(subscriber);
+        new BlockSubscription(subscriber).schedule();   // onSubscribe(...) is signalled by the executor, too
+    }
+
+
+    /**
+     * The rendering of the document for one subscriber. Whoever changes the state calls schedule(): the first
+     * one submits run(), which drains until no more calls came in between, so only one thread signals at a time.
+     */
+    private final class BlockSubscription implements Flow.Subscription, Runnable {
+        private Flow.Subscriber<? super CharSequence> subscriber;  // null when terminated
+        private boolean isSubscribed;           // onSubscribe(...) was signalled
+        private MarkdownBlockParser blocks;     // opened on the first demand, null before
+        private boolean isBegun;                // the start-tags were emitted with the first block
+        private final AtomicLong demand = new AtomicLong();
+        private final AtomicInteger pending = new AtomicInteger();  // the calls of schedule() not yet drained
+        private volatile boolean cancelled;
+        private volatile Throwable invalidRequest;
+
+        BlockSubscription(Flow.Subscriber<? super CharSequence> subscriber) {
+            this.subscriber = subscriber;
+        }
+
+
+        // Flow.Subscription:
+        @Override
+        public void request(long n) {
+            if (n <= 0) {
+                invalidRequest = new IllegalArgumentException("Requested " + n + " items, it must be positive");
+            } else {
+                long current;
+                do {
+                    current = demand.get();
+                    if (current == Long.MAX_VALUE)
+                        break;
+                } while (!demand.compareAndSet(current, current + n < 0 ? Long.MAX_VALUE : current + n));
+            }
+            schedule();
+        }
+
+        @Override
+        public void cancel() {
+            cancelled = true;
+            schedule();
+        }
+
+
+        // helpers:
+        void schedule() {
+            if (pending.getAndIncrement() != 0)
+                return;     // run() is going to see the change
+            try {
+                executor.execute(this);
+            } catch (RejectedExecutionException e) {
+                Flow.Subscriber<? super CharSequence> rejected = subscriber;
+                subscriber = null;
+                cancelled = true;
+                if (rejected != null)
+                    rejected.onError(e);
+            }
+        }
+
+        @Override
+        public void run() {
+            int missed = pending.get();
+            do {
+                try {
+                    drain();
+                } catch (Throwable e) {
+                    terminate(e);
+                }
+                missed = pending.addAndGet(-missed);
+            } while (missed != 0);
+        }
+
+        /**
+         * Emit as many blocks as were requested, and the end of the document when it is reached.
+         */
+        private void drain() throws Exception {
+            if (subscriber == null)
+                return;
+            if (!isSubscribed) {
+                isSubscribed = true;
+                subscriber.onSubscribe(this);
+            }
+            while (subscriber != null) {
+                if (cancelled) {
+                    terminate(null);
+                } else if (invalidRequest != null) {
+                    terminate(invalidRequest);
+                } else if (demand.get() == 0) {
+                    return;
+                } else {
+                    if (blocks == null)
+                        blocks = new MarkdownBlockParser(filePath, openTokens());
+                    StringBuilder html = new StringBuilder();
+                    if (!isBegun) {
+                        htmlGenerator.generateBegin(html);
+                        isBegun = true;
+                    }
+                    boolean isEnd = !blocks.hasNext();
+                    if (isEnd) {
+                        htmlGenerator.generateEnd(html);
+                    } else {
+                        MdNode block = blocks.next();
+                        htmlGenerator.generateBlock(block, html);
+                    }
+                    demand.decrementAndGet();
+                    subscriber.onNext(html);
+                    if (isEnd && subscriber != null)
+                        terminate(null);
+                }
+            }
+        }
+
+        /**
+         * Lex a uri through a reader window; an in-memory text is lexed like MarkdownLexer.tokenize(...) does it,
+         * i.e. the tokens reference their ranges of the text instead of copying their values.
+         */
+        private MarkdownTokenStream openTokens() throws IOException {
+            return uri != null ? lexer.tokenStream(uri) : lexer.tokenStream(text);
+        }
+
+        /**
+         * Close the input and signal the end: onComplete() without error, unless the subscription was cancelled.
+         */
+        private void terminate(Throwable error) {
+            if (blocks != null)
+                blocks.close();
+            Flow.Subscriber<? super CharSequence> terminated = subscriber;
+            subscriber = null;
+            if (terminated == null || cancelled && error == null)
+                return;
+            if (error != null)
+                terminated.onError(error);
+            else
+                terminated.onComplete();
+        }
+    }
+}
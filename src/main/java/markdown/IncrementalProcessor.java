@@ -0,0 +1,85 @@
+package markdown;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+/**
+ * IncrementalProcessor
+ * <p>
+ * Converts a markdown-file like MarkdownProcessor.process(URI, File) does, but only when it is needed:
+ * an input which is up to date in the BuildManifest is skipped, and the output-file is only replaced
+ * when the generated bytes differ from the existing ones, so its modification time stays the same otherwise.
+ */
+public class IncrementalProcessor {
+    public enum Outcome {
+        SKIPPED,    // the input is up to date, it was not converted
+        UNCHANGED,  // the input was converted, but the output has the same bytes as before
+        WRITTEN,    // the output was written
+        FAILED
+    }
+
+    private final MarkdownProcessor processor;
+    private final BuildManifest manifest;
+
+    public IncrementalProcessor(BuildManifest manifest) {
+        this(new MarkdownProcessor(), manifest);
+    }
+
+    public IncrementalProcessor(MarkdownProcessor processor, BuildManifest manifest) {
+        this.processor = processor;
+        this.manifest = manifest;
+    }
+
+
+    public BuildManifest getManifest() {
+        return manifest;
+    }
+
+    /**
+     * @return the path under which the input is kept in the BuildManifest
+     */
+    public static String manifestKey(Path inputFile) {
+        return inputFile.toAbsolutePath().normalize().toString();
+    }
+
+    public Outcome process(Path inputFile, Path outputFile) {
+        String key = manifestKey(inputFile);
+        Path temp = null;
+        try {
+            String contentHash = BuildManifest.hash(inputFile);
+            if (manifest.isUpToDate(key, contentHash) && Files.exists(outputFile))
+                return Outcome.SKIPPED;
+
+            // generate next to the output-file, so it can be compared and moved into place:
+            temp = BuildManifest.createSibling(outputFile);
+            if (processor.process(inputFile.toUri(), temp.toFile()) != 0) {
+                manifest.remove(key);
+                return Outcome.FAILED;
+            }
+
+            Outcome outcome;
+            if (Files.isRegularFile(outputFile) && Files.mismatch(temp, outputFile) == -1) {
+                outcome = Outcome.UNCHANGED;
+            } else {
+                BuildManifest.moveReplacing(temp, outputFile);
+                outcome = Outcome.WRITTEN;
+            }
+            manifest.put(key, contentHash);
+            return outcome;
+        } catch (IOException e) {
+            System.err.printf("Failed to convert %s!\n", inputFile);
+            e.printStackTrace();
+            manifest.remove(key);
+            return Outcome.FAILED;
+        } finally {
+            if (temp != null) {
+                try {
+                    Files.deleteIfExists(temp);
+                } catch (IOException e) {
+                    e.printStackTrace();
+                }
+            }
+        }
+    }
+}
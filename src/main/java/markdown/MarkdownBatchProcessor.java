@@ -0,0 +1,240 @@
+package markdown;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.*;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * MarkdownBatchProcessor
+ * <p>
+ * Converts all the .md-files of an input directory-tree into .html-files at the same relative paths of
+ * an output directory-tree, in parallel on a pool of worker threads within one JVM.
+ * <p>
+ * The files are scheduled largest first, so a big file does not start last and prolong the whole batch.
+ * A file which fails is reported and counted, the others are converted anyway.
+ * <p>
+ * An incremental batch keeps a BuildManifest in the output directory: the unchanged inputs are skipped
+ * and the outputs with the same bytes as before are not rewritten.
+ */
+public class MarkdownBatchProcessor {
+    private final MarkdownProcessor processor = new MarkdownProcessor();
+    private final int threads;
+    private final boolean incremental;
+
+    public MarkdownBatchProcessor() {
+        this(Runtime.getRuntime().availableProcessors());
+    }
+
+    public MarkdownBatchProcessor(int threads) {
+        this(threads, false);
+    }
+
+    public MarkdownBatchProcessor(int threads, boolean incremental) {
+        if (threads < 1)
+            throw new IllegalArgumentException("At least one thread is needed");
+        this.threads = threads;
+        this.incremental = incremental;
+    }
+
+
+    public int getThreads() {
+        return threads;
+    }
+
+    public boolean isIncremental() {
+        return incremental;
+    }
+
+    /**
+     * Convert all the .md-files below inputDir into outputDir.
+     *
+     * @return the summary of the batch, including the files which failed
+     * @throws IOException when the inputDir can not be walked, or the manifest can not be read or written
+     */
+    public Summary process(Path inputDir, Path outputDir) throws IOException {
+        long startTime = System.nanoTime();
+        List<Path> inputFiles = findMarkdownFiles(inputDir);
+
+        // largest first:
+        List<Job> jobs = new ArrayList<>(inputFiles.size());
+        for (Path inputFile : inputFiles)
+            jobs.add(new Job(inputFile, outputFile(inputDir, outputDir, inputFile), sizeOf(inputFile)));
+        jobs.sort(Comparator.comparingLong((Job job) -> job.size).reversed());
+
+        IncrementalProcessor incrementalProcessor = incremental
+                ? new IncrementalProcessor(processor, BuildManifest.load(outputDir.resolve(BuildManifest.FILE_NAME)))
+                : null;
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        int[] outcomes = new int[IncrementalProcessor.Outcome.values().length];
+        List<Path> failedFiles = new ArrayList<>();
+        long bytes = 0;
+        try {
+            List<Future<IncrementalProcessor.Outcome>> results = new ArrayList<>(jobs.size());
+            for (Job job : jobs)
+                results.add(executor.submit(() -> convert(job, incrementalProcessor)));
+            for (int i = 0; i < jobs.size(); i++) {
+                IncrementalProcessor.Outcome outcome = waitFor(results.get(i));
+                outcomes[outcome.ordinal()]++;
+                if (outcome == IncrementalProcessor.Outcome.FAILED)
+                    failedFiles.add(jobs.get(i).inputFile);
+                else if (outcome != IncrementalProcessor.Outcome.SKIPPED)
+                    bytes += jobs.get(i).size;
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+        if (incrementalProcessor != null) {
+            // the inputs which are gone are forgotten:
+            Set<String> inputPaths = new HashSet<>();
+            for (Path inputFile : inputFiles)
+                inputPaths.add(IncrementalProcessor.manifestKey(inputFile));
+            incrementalProcessor.getManifest().retainAll(inputPaths);
+            incrementalProcessor.getManifest().save();
+        }
+        return new Summary(jobs.size(), outcomes[IncrementalProcessor.Outcome.SKIPPED.ordinal()],
+                outcomes[IncrementalProcessor.Outcome.UNCHANGED.ordinal()], failedFiles, bytes, System.nanoTime() - startTime);
+    }
+
+
+    // helpers:
+    private static class Job {
+        final Path inputFile;
+        final Path outputFile;
+        final long size;
+
+        Job(Path inputFile, Path outputFile, long size) {
+            this.inputFile = inputFile;
+            this.outputFile = outputFile;
+            this.size = size;
+        }
+    }
+
+    private IncrementalProcessor.Outcome convert(Job job, IncrementalProcessor incrementalProcessor) {
+        try {
+            if (incrementalProcessor != null)
+                return incrementalProcessor.process(job.inputFile, job.outputFile);
+
+            Path parent = job.outputFile.getParent();
+            if (parent != null)
+                Files.createDirectories(parent);
+            return processor.process(job.inputFile.toUri(), job.outputFile.toFile()) == 0
+                    ? IncrementalProcessor.Outcome.WRITTEN
+                    : IncrementalProcessor.Outcome.FAILED;
+        } catch (IOException | RuntimeException e) {
+            System.err.printf("Failed to convert %s!\n", job.inputFile);
+            e.printStackTrace();
+            return IncrementalProcessor.Outcome.FAILED;
+        }
+    }
+
+    private static IncrementalProcessor.Outcome waitFor(Future<IncrementalProcessor.Outcome> result) {
+        try {
+            return result.get();
+        } catch (ExecutionException e) {
+            e.getCause().printStackTrace();
+            return IncrementalProcessor.Outcome.FAILED;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return IncrementalProcessor.Outcome.FAILED;
+        }
+    }
+
+    static List<Path> findMarkdownFiles(Path inputDir) throws IOException {
+        try (Stream<Path> paths = Files.walk(inputDir)) {
+            return paths.filter(path -> path.getFileName().toString().endsWith(".md"))
+                    .filter(Files::isRegularFile)
+                    .collect(Collectors.toList());
+        }
+    }
+
+    static Path outputFile(Path inputDir, Path outputDir, Path inputFile) {
+        String relative = inputDir.relativize(inputFile).toString();
+        return outputDir.resolve(relative.substring(0, relative.length() - ".md".length()) + ".html");
+    }
+
+    private static long sizeOf(Path file) {
+        try {
+            return Files.size(file);
+        } catch (IOException e) {
+            return 0;   // the conversion is going to report the file
+        }
+    }
+
+
+    /**
+     * The result of a batch.
+     */
+    public static class Summary {
+        private final int files;
+        private final int skipped;
+        private final int unchanged;
+        private final List<Path> failedFiles;
+        private final long bytes;
+        private final long elapsedNanos;
+
+        public Summary(int files, int skipped, int unchanged, List<Path> failedFiles, long bytes, long elapsedNanos) {
+            this.files = files;
+            this.skipped = skipped;
+            this.unchanged = unchanged;
+            this.failedFiles = List.copyOf(failedFiles);
+            this.bytes = bytes;
+            this.elapsedNanos = elapsedNanos;
+        }
+
+        public int getFiles() {
+            return files;
+        }
+
+        /**
+         * @return the number of inputs which were up to date and not converted
+         */
+        public int getSkipped() {
+            return skipped;
+        }
+
+        /**
+         * @return the number of inputs which were converted, but whose output was the same as before
+         */
+        public int getUnchanged() {
+            return unchanged;
+        }
+
+        public int getWritten() {
+            return files - skipped - unchanged - failedFiles.size();
+        }
+
+        public List<Path> getFailedFiles() {
+            return failedFiles;
+        }
+
+        /**
+         * @return the size of the converted input files, without the skipped ones
+         */
+        public long getBytes() {
+            return bytes;
+        }
+
+        public long getElapsedNanos() {
+            return elapsedNanos;
+        }
+
+        public double getMegabytesPerSecond() {
+            return elapsedNanos > 0 ? bytes / 1e6 / (elapsedNanos / 1e9) : 0;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("%d files: %d written, %d unchanged, %d skipped, %d failed; %.3f MB in %.3f s (%.1f MB/s)",
+                    files, getWritten(), unchanged, skipped, failedFiles.size(), bytes / 1e6, elapsedNanos / 1e9,
+                    getMegabytesPerSecond());
+        }
+    }
+}
@@ -1,18 +1,84 @@
 package markdown;
 
+import markdown.interpreter.ChannelWriter;
 import markdown.interpreter.HtmlGeneratorVisitor;
+import markdown.interpreter.Utf8ChannelWriter;
 import markdown.nodes.MdDoc;
 import markdown.parser.MarkdownLexer;
 import markdown.parser.MarkdownParser;
+import markdown.parser.ParallelMarkdownParser;
+import markdown.server.MarkdownServer;
 
 import java.io.File;
-import java.io.FileNotFoundException;
 import java.io.IOException;
-import java.io.PrintWriter;
+import java.io.InputStream;
+import java.io.Writer;
+import java.net.InetSocketAddress;
 import java.net.URI;
+import java.nio.ByteBuffer;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.Arrays;
 
 public class MarkdownProcessor {
+    private static final Duration SERVER_DRAIN_TIMEOUT = Duration.ofSeconds(10);
+    private static final int SERVER_MAX_REQUEST_SECONDS = 30;
+    private static final int WATCH_THREADS = 2;     // enough for the files one author saves
+
+    // shared by all the calls, also from several threads:
+    private final MarkdownLexer lexer = new MarkdownLexer(true);
+    private final HtmlGeneratorVisitor htmlGenerator = new HtmlGeneratorVisitor();
+    private final ParallelMarkdownParser parallelParser;    // null: lex and parse sequentially, streaming the input
+    private final RenderCache renderCache;                  // null: every input is rendered
+    private final String cacheKeyPrefix;                    // the renderer and its options, see cacheKey(...)
+
+    public MarkdownProcessor() {
+        this(null);
+    }
+
+    /**
+     * @param parallelParser parses every input on the cores of its pool, null to parse sequentially
+     */
+    public MarkdownProcessor(ParallelMarkdownParser parallelParser) {
+        this(parallelParser, null);
+    }
+
+    /**
+     * @param renderCache caches the html by the hash of the input's content, null to render every input
+     */
+    public MarkdownProcessor(ParallelMarkdownParser parallelParser, RenderCache renderCache) {
+        this.parallelParser = parallelParser;
+        this.renderCache = renderCache;
+        this.cacheKeyPrefix = BuildManifest.rendererVersion() + "/crlf-eof=" + lexer.isCreateCRLFEofToken() + "/";
+    }
+
+    public RenderCache getRenderCache() {
+        return renderCache;
+    }
+
+
     public static void main(String[] args) {
+        if (args.length >= 3 && (args[0].equals("--batch") || args[0].equals("--incremental"))) {
+            System.exit(batch(args));
+        }
+        if (args.length >= 3 && args[0].equals("--watch")) {
+            int status = watch(args);
+            if (status != 0)
+                System.exit(status);
+            return;
+        }
+        if (args.length >= 2 && args[0].equals("--serve")) {
+            int status = serve(args);
+            if (status != 0)
+                System.exit(status);
+            return;     // the server's threads keep running until the JVM is shut down
+        }
+        boolean parallel = args.length >= 3 && args[0].equals("--parallel");
+        if (parallel)
+            args = Arrays.copyOfRange(args, 1, args.length);
         if (args.length<2) {
             System.out.println("MarkdownProcessor by bernhard_wallisch@hotmail.com");
             System.out.println();
@@ -21,36 +87,168 @@ public class MarkdownProcessor {
             System.out.println("Syntax: MarkdownProcessor <input-file> <output-file>");
             System.out.println("    <input-file>    the path to a markdown-file (.md)");
             System.out.println("    <output-file>   the path to the generated output-file (.html)");
+            System.out.println("Syntax: MarkdownProcessor --parallel <input-file> <output-file>");
+            System.out.println("    like above, but a big markdown-file is lexed and parsed on all processors");
+            System.out.println("Syntax: MarkdownProcessor --batch <input-dir> <output-dir> [<threads>]");
+            System.out.println("    <input-dir>     all the markdown-files (.md) in this directory-tree are processed in parallel");
+            System.out.println("    <output-dir>    the generated output-files (.html) are written to the same relative paths in here");
+            System.out.println("    <threads>       the number of worker threads, by default the number of processors");
+            System.out.println("Syntax: MarkdownProcessor --incremental <input-dir> <output-dir> [<threads>]");
+            System.out.println("    like --batch, but the unchanged markdown-files are skipped and unchanged output-files are not rewritten;");
+            System.out.println("    the state is kept in the file " + BuildManifest.FILE_NAME + " in the <output-dir>");
+            System.out.println("Syntax: MarkdownProcessor --watch <input-dir> <output-dir> [<threads>]");
+            System.out.println("    like --incremental, then the input-dir is watched and every changed markdown-file is rendered again,");
+            System.out.println("    until the JVM is shut down");
+            System.out.println("Syntax: MarkdownProcessor --serve <port> [<max-request-bytes>]");
+            System.out.println("    answers every POST of markdown with its html, until the JVM is shut down; then the running requests are");
+            System.out.println("    completed for up to " + SERVER_DRAIN_TIMEOUT.toSeconds() + " seconds");
             System.out.println("Remarks: When no further arguments are given, (built-in) plain html files are generated.");
             System.exit(1);
         }
 
-        File inputFile = new File(args[1]);
+        File inputFile = new File(args[0]);
         if (!inputFile.exists()) {
             System.err.printf("Input markdown-file %s is not existing!\n", inputFile);
             System.exit(1);
         }
-        File outputFile = new File(args[2]);
-        if (!outputFile.canWrite()) {
+        File outputFile = new File(args[1]);
+        if (outputFile.exists() && !outputFile.canWrite()) {
             System.err.printf("Can not write to output-file %s!\n", outputFile);
         }
 
-        var inputURI = inputFile.toURI();
-        MarkdownProcessor mdp = new MarkdownProcessor();
+        MarkdownProcessor mdp = new MarkdownProcessor(parallel ? new ParallelMarkdownParser(true) : null);
         int status = mdp.process( inputFile.toURI(), outputFile );
         if (status!=0) {
             System.exit(status);
         }
     }
 
+    private static int watch(String[] args) {
+        Path inputDir = Path.of(args[1]);
+        if (!Files.isDirectory(inputDir)) {
+            System.err.printf("Input directory %s is not existing!\n", inputDir);
+            return 1;
+        }
+        MarkdownWatcher watcher;
+        try {
+            int threads = args.length > 3 ? Integer.parseInt(args[3]) : WATCH_THREADS;
+            watcher = new MarkdownWatcher(inputDir, Path.of(args[2]), threads, MarkdownWatcher.DEFAULT_DEBOUNCE,
+                    System.out::println);
+        } catch (IllegalArgumentException e) {
+            System.err.printf("Invalid number of threads %s!\n", args[3]);
+            return 1;
+        } catch (IOException e) {
+            System.err.printf("Could not watch the input directory %s!\n", inputDir);
+            e.printStackTrace();
+            return 1;
+        }
+        Thread main = Thread.currentThread();
+        Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+            try {
+                watcher.close();
+                main.join();    // until the running renders are completed and the manifest is saved
+            } catch (IOException e) {
+                e.printStackTrace();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }));
+        try {
+            watcher.run(MarkdownProcessor::printSummary);
+        } catch (IOException e) {
+            System.err.printf("Could not watch the input directory %s!\n", inputDir);
+            e.printStackTrace();
+            return 1;
+        }
+        return 0;
+    }
+
+    private static int serve(String[] args) {
+        // a slow client must not pin a carrier of the virtual threads for good, see MarkdownServer:
+        if (System.getProperty("sun.net.httpserver.maxReqTime") == null)
+            System.setProperty("sun.net.httpserver.maxReqTime", String.valueOf(SERVER_MAX_REQUEST_SECONDS));
+        MarkdownServer server;
+        try {
+            int port = Integer.parseInt(args[1]);
+            long maxRequestBytes = args.length > 2 ? Long.parseLong(args[2]) : MarkdownServer.DEFAULT_MAX_REQUEST_BYTES;
+            server = new MarkdownServer(new InetSocketAddress(port), new MarkdownProcessor(), maxRequestBytes);
+        } catch (IllegalArgumentException e) {
+            System.err.printf("Invalid port or request size limit: %s\n", e.getMessage());
+            return 1;
+        } catch (IOException e) {
+            System.err.printf("Could not listen at port %s!\n", args[1]);
+            e.printStackTrace();
+            return 1;
+        }
+        Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+            try {
+                if (!server.shutdown(SERVER_DRAIN_TIMEOUT))
+                    System.err.println("Stopped the server before all the requests were completed");
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }));
+        server.start();
+        System.out.printf("Listening at %s\n", server.getAddress());
+        return 0;
+    }
+
+    private static int batch(String[] args) {
+        Path inputDir = Path.of(args[1]);
+        if (!Files.isDirectory(inputDir)) {
+            System.err.printf("Input directory %s is not existing!\n", inputDir);
+            return 1;
+        }
+        boolean incremental = args[0].equals("--incremental");
+        MarkdownBatchProcessor batchProcessor;
+        try {
+            int threads = args.length > 3 ? Integer.parseInt(args[3]) : Runtime.getRuntime().availableProcessors();
+            batchProcessor = new MarkdownBatchProcessor(threads, incremental);
+        } catch (IllegalArgumentException e) {
+            System.err.printf("Invalid number of threads %s!\n", args[3]);
+            return 1;
+        }
+
+        MarkdownBatchProcessor.Summary summary;
+        try {
+            summary = batchProcessor.process(inputDir, Path.of(args[2]));
+        } catch (IOException e) {
+            System.err.printf("Could not process the input directory %s!\n", inputDir);
+            e.printStackTrace();
+            return 1;
+        }
+        printSummary(summary);
+        return summary.getFailedFiles().isEmpty() ? 0 : 1;
+    }
+
+    private static void printSummary(MarkdownBatchProcessor.Summary summary) {
+        for (Path failedFile : summary.getFailedFiles())
+            System.err.printf("Failed: %s\n", failedFile);
+        System.out.println(summary);
+    }
+
+    /**
+     * Process the markdown at inputURI and stream the generated html straight into the outputFile.
+     *
+     * @return 0 on success, 1 on error
+     */
     public int process(URI inputURI, File outputFile) {
-        String html = process(inputURI);
-        if( html==null )
+        String html = null;
+        MdDoc doc = null;
+        if (renderCache != null)
+            html = processCached(inputURI);
+        else
+            doc = parse(inputURI);
+        if( html==null && doc==null )
             return 1;
 
-        try (PrintWriter writer = new PrintWriter(outputFile)) {
-            writer.println( html );
-        } catch (FileNotFoundException e) {
+        try (Writer writer = ChannelWriter.open(outputFile.toPath())) {
+            if (html != null)
+                writer.write( html );
+            else
+                htmlGenerator.generate( doc, writer );
+            writer.write( System.lineSeparator() );
+        } catch (IOException e) {
             System.err.printf("Failed to write to output-file %s!\n", outputFile);
             e.printStackTrace();
             return 1;
@@ -59,13 +257,96 @@ public class MarkdownProcessor {
     }
 
     public String process(URI inputURI) {
-        MdDoc doc;
+        if (renderCache != null)
+            return processCached(inputURI);
+
+        MdDoc doc = parse(inputURI);
+        if( doc==null )
+            return null;
+
+        return htmlGenerator.generate( doc );
+    }
+
+    /**
+     * Render markdown from memory and stream the html into output; through the render cache, if there is one.
+     *
+     * @param markdown the UTF-8 encoded markdown
+     * @throws IOException when appending to output failed
+     */
+    public void process(byte[] markdown, Appendable output) throws IOException {
+        if (renderCache != null)
+            output.append(renderCache.computeIfAbsent(cacheKey(markdown),
+                    key -> htmlGenerator.generate( parse(null, new String(markdown, StandardCharsets.UTF_8)) )));
+        else
+            htmlGenerator.generate( parse(null, ByteBuffer.wrap(markdown)), output );
+    }
+
+    /**
+     * Render UTF-8 encoded markdown from memory into a channel, as bytes: the markdown is lexed without decoding it
+     * and its texts are copied into the output without encoding them again, see Utf8Source. The channel is closed.
+     *
+     * @param markdown the bytes between its position and limit are rendered, e.g. of a memory-mapped file
+     * @throws IOException when writing to output failed
+     */
+    public void process(ByteBuffer markdown, WritableByteChannel output) throws IOException {
+        try (Utf8ChannelWriter writer = new Utf8ChannelWriter(output)) {
+            if (renderCache != null) {
+                byte[] bytes = new byte[markdown.remaining()];
+                markdown.get(markdown.position(), bytes);
+                process(bytes, writer);
+            } else {
+                htmlGenerator.generate( parse(null, markdown), writer );
+            }
+        }
+    }
+
+
+    // helpers:
+    /**
+     * Look the input up in the render cache by the hash of its content, render and cache it on a miss.
+     */
+    private String processCached(URI inputURI) {
+        byte[] content;
         try {
-            MarkdownLexer lexer = new MarkdownLexer();
-            lexer.setCreateCRLFEofToken(true);
-            var tokens = lexer.tokenize(inputURI);
+            content = readBytes(inputURI);
+        } catch (IOException e) {
+            System.err.printf("Could not read from input markdown-file %s!\n", inputURI);
+            e.printStackTrace(System.err);
+            return null;
+        }
+        return renderCache.computeIfAbsent(cacheKey(content),
+                key -> htmlGenerator.generate( parse(new File(inputURI), new String(content, StandardCharsets.UTF_8)) ));
+    }
 
-            doc = MarkdownParser.parse(new File(inputURI), tokens.listIterator());
+    /**
+     * @return the hash of the content, prefixed with the renderer-version and the options which change the html
+     */
+    String cacheKey(byte[] content) {
+        return cacheKeyPrefix + BuildManifest.hash(content);
+    }
+
+    private MdDoc parse(File file, String text) {
+        if (parallelParser != null)
+            return parallelParser.parse(file, text);
+        return MarkdownParser.parse(file, lexer.tokenizeToBuffer(text));
+    }
+
+    private MdDoc parse(File file, ByteBuffer utf8) {
+        if (parallelParser != null)
+            return parallelParser.parse(file, StandardCharsets.UTF_8.decode(utf8.duplicate()));
+        return MarkdownParser.parse(file, lexer.tokenizeToBuffer(utf8));
+    }
+
+    private MdDoc parse(URI inputURI) {
+        MdDoc doc;
+        try {
+            if (parallelParser != null) {
+                doc = parse(new File(inputURI), new String(readBytes(inputURI), StandardCharsets.UTF_8));
+            } else {
+                try (var tokens = lexer.tokenStream(inputURI)) {
+                    doc = MarkdownParser.parse(new File(inputURI), tokens);
+                }
+            }
         } catch (IOException e) {
             System.err.printf("Could not read from input markdown-file %s!\n", inputURI);
             e.printStackTrace(System.err);
@@ -75,8 +356,14 @@ public class MarkdownProcessor {
             System.err.printf("Failed to parse markdown in file %s!\n", inputURI);
             return null;
         }
+        return doc;
+    }
 
-        var htmlGenerator = new HtmlGeneratorVisitor();
-        return htmlGenerator.generate( doc );
+    private static byte[] readBytes(URI inputURI) throws IOException {
+        try (InputStream input = "file".equalsIgnoreCase(inputURI.getScheme())
+                ? Files.newInputStream(Path.of(inputURI))
+                : inputURI.toURL().openStream()) {
+            return input.readAllBytes();
+        }
     }
 }
@@ -0,0 +1,241 @@
+package markdown;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.*;
+import java.time.Duration;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+
+import static java.nio.file.StandardWatchEventKinds.*;
+
+/**
+ * MarkdownWatcher
+ * <p>
+ * Keeps the .html-files of an output directory-tree up to date with the .md-files of an input directory-tree
+ * while they are being edited: after an incremental batch, which converts whatever changed before, it watches
+ * the input-tree and re-renders every changed file on a small pool of worker threads, within the same JVM.
+ * <p>
+ * An editor usually saves a file with a burst of events, so the events of a file are coalesced: it is only
+ * rendered when it had no event for the debounce-window. A file which is still being rendered when it is due
+ * again waits for another window, so a file is never rendered by two workers at once.
+ */
+public class MarkdownWatcher implements Closeable {
+    public static final Duration DEFAULT_DEBOUNCE = Duration.ofMillis(100);
+
+    private final Path inputDir;
+    private final Path outputDir;
+    private final int threads;
+    private final long debounceNanos;
+    private final Consumer<Update> listener;
+    private final WatchService watchService;
+    private final Map<WatchKey, Path> watchedDirs = new HashMap<>();
+    private final Map<Path, Long> dueTimes = new HashMap<>();          // the pending files, owned by run()
+    private final Set<Path> rendering = ConcurrentHashMap.newKeySet();
+    private volatile boolean closed;
+
+    /**
+     * @param listener is told about every file which was rendered or deleted, from the worker threads
+     */
+    public MarkdownWatcher(Path inputDir, Path outputDir, int threads, Duration debounce, Consumer<Update> listener)
+            throws IOException {
+        if (threads < 1)
+            throw new IllegalArgumentException("At least one thread is needed");
+        this.inputDir = inputDir;
+        this.outputDir = outputDir;
+        this.threads = threads;
+        this.debounceNanos = debounce.toNanos();
+        this.listener = listener;
+        this.watchService = inputDir.getFileSystem().newWatchService();
+    }
+
+
+    // operations:
+    /**
+     * Convert the changed files, then watch the input-tree and re-render the files which change, until close().
+     *
+     * @throws IOException when the input-tree can not be walked, or the manifest can not be read or written
+     */
+    public void run() throws IOException {
+        run(summary -> {
+        });
+    }
+
+    /**
+     * @param batchListener is told the summary of the batch at the start, before the input-tree is watched
+     */
+    public void run(Consumer<MarkdownBatchProcessor.Summary> batchListener) throws IOException {
+        registerTree(inputDir);     // before the batch, so no change gets lost in between
+        batchListener.accept(new MarkdownBatchProcessor(threads, true).process(inputDir, outputDir));
+
+        IncrementalProcessor processor = new IncrementalProcessor(
+                BuildManifest.load(outputDir.resolve(BuildManifest.FILE_NAME)));
+        ExecutorService workers = Executors.newFixedThreadPool(threads);
+        try {
+            while (!closed) {
+                WatchKey key = dueTimes.isEmpty()
+                        ? watchService.take()
+                        : watchService.poll(nextDueTime() - System.nanoTime(), TimeUnit.NANOSECONDS);
+                if (key != null)
+                    handleEvents(key);
+                submitDueFiles(processor, workers);
+            }
+        } catch (ClosedWatchServiceException e) {
+            // closed
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            workers.shutdown();
+            try {
+                workers.awaitTermination(1, TimeUnit.MINUTES);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            processor.getManifest().save();
+        }
+    }
+
+    /**
+     * Stop run(); the files which are being rendered are completed.
+     */
+    @Override
+    public void close() throws IOException {
+        closed = true;
+        watchService.close();
+    }
+
+
+    // helpers:
+    private void registerTree(Path dir) throws IOException {
+        try (Stream<Path> paths = Files.walk(dir)) {
+            for (Path path : (Iterable<Path>) paths.filter(Files::isDirectory)::iterator)
+                watchedDirs.put(path.register(watchService, ENTRY_CREATE, ENTRY_MODIFY, ENTRY_DELETE), path);
+        }
+    }
+
+    private void handleEvents(WatchKey key) {
+        long dueTime = System.nanoTime() + debounceNanos;
+        Path dir = watchedDirs.get(key);
+        for (WatchEvent<?> event : key.pollEvents()) {
+            try {
+                if (event.kind() == OVERFLOW) {
+                    // events were lost: check all the files, the unchanged ones are skipped by their hash
+                    for (Path inputFile : MarkdownBatchProcessor.findMarkdownFiles(inputDir))
+                        dueTimes.put(inputFile, dueTime);
+                    continue;
+                }
+                if (dir == null)
+                    continue;
+                Path path = dir.resolve((Path) event.context());
+                if (event.kind() == ENTRY_CREATE && Files.isDirectory(path, LinkOption.NOFOLLOW_LINKS)) {
+                    // its files may have been created before it was registered:
+                    registerTree(path);
+                    for (Path inputFile : MarkdownBatchProcessor.findMarkdownFiles(path))
+                        dueTimes.put(inputFile, dueTime);
+                } else if (path.getFileName().toString().endsWith(".md")) {
+                    dueTimes.put(path, dueTime);
+                }
+            } catch (IOException | UncheckedIOException e) {
+                // e.g. a directory which was deleted again right away
+                e.printStackTrace();
+            }
+        }
+        if (!key.reset())
+            watchedDirs.remove(key);
+    }
+
+    private long nextDueTime() {
+        long next = Long.MAX_VALUE;
+        for (long dueTime : dueTimes.values())
+            next = Math.min(next, dueTime);
+        return next;
+    }
+
+    private void submitDueFiles(IncrementalProcessor processor, ExecutorService workers) {
+        long now = System.nanoTime();
+        for (Iterator<Map.Entry<Path, Long>> it = dueTimes.entrySet().iterator(); it.hasNext(); ) {
+            Map.Entry<Path, Long> entry = it.next();
+            if (entry.getValue() - now > 0)
+                continue;
+            Path inputFile = entry.getKey();
+            if (!rendering.add(inputFile)) {
+                entry.setValue(now + debounceNanos);
+                continue;
+            }
+            it.remove();
+            workers.execute(() -> {
+                try {
+                    listener.accept(render(processor, inputFile));
+                } finally {
+                    rendering.remove(inputFile);
+                }
+            });
+        }
+    }
+
+    private Update render(IncrementalProcessor processor, Path inputFile) {
+        long startTime = System.nanoTime();
+        Path outputFile = MarkdownBatchProcessor.outputFile(inputDir, outputDir, inputFile);
+        if (!Files.isRegularFile(inputFile)) {
+            processor.getManifest().remove(IncrementalProcessor.manifestKey(inputFile));
+            try {
+                Files.deleteIfExists(outputFile);
+            } catch (IOException e) {
+                e.printStackTrace();
+                return new Update(inputFile, IncrementalProcessor.Outcome.FAILED, System.nanoTime() - startTime);
+            }
+            return new Update(inputFile, null, System.nanoTime() - startTime);
+        }
+        return new Update(inputFile, processor.process(inputFile, outputFile), System.nanoTime() - startTime);
+    }
+
+
+    /**
+     * A file which was rendered, or deleted.
+     */
+    public static class Update {
+        private final Path inputFile;
+        private final IncrementalProcessor.Outcome outcome;
+        private final long elapsedNanos;
+
+        public Update(Path inputFile, IncrementalProcessor.Outcome outcome, long elapsedNanos) {
+            this.inputFile = inputFile;
+            this.outcome = outcome;
+            this.elapsedNanos = elapsedNanos;
+        }
+
+        public Path getInputFile() {
+            return inputFile;
+        }
+
+        /**
+         * @return how the file was rendered, null when it was deleted and its output-file with it
+         */
+        public IncrementalProcessor.Outcome getOutcome() {
+            return outcome;
+        }
+
+        public boolean isDeleted() {
+            return outcome == null;
+        }
+
+        public long getElapsedNanos() {
+            return elapsedNanos;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("%s: %s in %.1f ms", inputFile, isDeleted() ? "deleted" : outcome.name().toLowerCase(),
+                    elapsedNanos / 1e6);
+        }
+    }
+}
@@ -0,0 +1,224 @@
+package markdown;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Function;
+
+/**
+ * RenderCache
+ * <p>
+ * An in-memory cache of rendered html, bounded by the total size of the cached html rather than by the number
+ * of entries. The keys are content hashes, see MarkdownProcessor.
+ * <p>
+ * The eviction policy is a segmented LRU: a new entry starts in the probation segment and is only promoted to
+ * the protected segment when it is hit again. The entries are evicted from the probation segment first, so a
+ * crawler which requests every page once only churns the probation segment and does not flush the hot pages.
+ * <p>
+ * The cache is split into shards by the hash of the key, each with its own lock, so concurrent lookups of
+ * different keys do not wait for each other.
+ */
+public class RenderCache {
+    public static final int DEFAULT_SHARDS = 16;
+    static final int ENTRY_OVERHEAD = 96;      // estimated bytes of an entry besides its html: key, node, map-entry
+    private static final double PROTECTED_SHARE = 0.8;
+
+    private final long maxBytes;
+    private final Shard[] shards;
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+
+    public RenderCache(long maxBytes) {
+        this(maxBytes, DEFAULT_SHARDS);
+    }
+
+    /**
+     * @param maxBytes the total size of the cached html, as 2 bytes per char, plus a small overhead per entry
+     * @param shards   the number of independently locked parts, each holds an equal share of maxBytes
+     */
+    public RenderCache(long maxBytes, int shards) {
+        if (maxBytes < 1)
+            throw new IllegalArgumentException("The cache must hold at least one byte");
+        if (shards < 1)
+            throw new IllegalArgumentException("At least one shard is needed");
+        this.maxBytes = maxBytes;
+        this.shards = new Shard[shards];
+        for (int i = 0; i < shards; i++)
+            this.shards[i] = new Shard(maxBytes / shards + (i < maxBytes % shards ? 1 : 0));
+    }
+
+
+    // operations:
+    /**
+     * @return the cached html of the key, null when it is not cached
+     */
+    public String get(String key) {
+        String html = shardOf(key).get(key);
+        (html != null ? hits : misses).increment();
+        return html;
+    }
+
+    /**
+     * Cache the html of the key. An html which is bigger than a shard is not cached at all.
+     */
+    public void put(String key, String html) {
+        evictions.add(shardOf(key).put(key, html));
+    }
+
+    /**
+     * @return the cached html of the key, or the html rendered and cached now; the rendering is done without
+     * holding a lock, so the same key may be rendered twice by concurrent misses
+     */
+    public String computeIfAbsent(String key, Function<String, String> render) {
+        String html = get(key);
+        if (html == null) {
+            html = render.apply(key);
+            if (html != null)
+                put(key, html);
+        }
+        return html;
+    }
+
+    public void clear() {
+        for (Shard shard : shards)
+            shard.clear();
+    }
+
+
+    // getters:
+    public long getMaxBytes() {
+        return maxBytes;
+    }
+
+    /**
+     * @return the estimated size of all the cached entries
+     */
+    public long getBytes() {
+        long bytes = 0;
+        for (Shard shard : shards)
+            bytes += shard.bytes;
+        return bytes;
+    }
+
+    public int size() {
+        int size = 0;
+        for (Shard shard : shards)
+            size += shard.size;
+        return size;
+    }
+
+    public long getHits() {
+        return hits.sum();
+    }
+
+    public long getMisses() {
+        return misses.sum();
+    }
+
+    public long getEvictions() {
+        return evictions.sum();
+    }
+
+    @Override
+    public String toString() {
+        return String.format("RenderCache: %d entries, %d of %d bytes; %d hits, %d misses, %d evictions",
+                size(), getBytes(), maxBytes, getHits(), getMisses(), getEvictions());
+    }
+
+
+    // helpers:
+    static long weigh(String key, String html) {
+        return 2L * (key.length() + html.length()) + ENTRY_OVERHEAD;
+    }
+
+    private Shard shardOf(String key) {
+        int h = key.hashCode();
+        h ^= h >>> 16;
+        return shards[Math.floorMod(h, shards.length)];
+    }
+
+    /**
+     * One independently locked part of the cache. Both segments are kept in LRU order, the eldest entry first.
+     */
+    private static class Shard {
+        private final long capacity;
+        private final long protectedCapacity;
+        private final LinkedHashMap<String, String> probation = new LinkedHashMap<>(16, 0.75f, true);
+        private final LinkedHashMap<String, String> protect = new LinkedHashMap<>(16, 0.75f, true);
+        private long protectedBytes;
+        private volatile long bytes;    // read without the lock for the statistics
+        private volatile int size;
+
+        Shard(long capacity) {
+            this.capacity = capacity;
+            this.protectedCapacity = (long) (capacity * PROTECTED_SHARE);
+        }
+
+        synchronized String get(String key) {
+            String html = protect.get(key);
+            if (html != null)
+                return html;
+            html = probation.remove(key);
+            if (html != null) {
+                // hit again: promote it, the eldest protected entries make room and go back on probation
+                long weight = weigh(key, html);
+                protect.put(key, html);
+                protectedBytes += weight;
+                Iterator<Map.Entry<String, String>> eldest = protect.entrySet().iterator();
+                while (protectedBytes > protectedCapacity && protect.size() > 1) {
+                    Map.Entry<String, String> entry = eldest.next();
+                    eldest.remove();
+                    protectedBytes -= weigh(entry.getKey(), entry.getValue());
+                    probation.put(entry.getKey(), entry.getValue());
+                }
+            }
+            return html;
+        }
+
+        /**
+         * @return the number of evicted entries
+         */
+        synchronized int put(String key, String html) {
+            long weight = weigh(key, html);
+            if (weight > capacity)
+                return 0;
+            String previous = protect.get(key);
+            long bytes = this.bytes;
+            if (previous != null) {
+                protect.put(key, html);
+                long delta = weight - weigh(key, previous);
+                protectedBytes += delta;
+                bytes += delta;
+            } else {
+                previous = probation.put(key, html);
+                bytes += previous != null ? weight - weigh(key, previous) : weight;
+            }
+            this.bytes = bytes;
+
+            int evicted = 0;
+            while (this.bytes > capacity) {
+                LinkedHashMap<String, String> segment = !probation.isEmpty() ? probation : protect;
+                Iterator<Map.Entry<String, String>> eldest = segment.entrySet().iterator();
+                Map.Entry<String, String> entry = eldest.next();
+                eldest.remove();
+                long entryWeight = weigh(entry.getKey(), entry.getValue());
+                if (segment == protect)
+                    protectedBytes -= entryWeight;
+                this.bytes -= entryWeight;
+                evicted++;
+            }
+            size = probation.size() + protect.size();
+            return evicted;
+        }
+
+        synchronized void clear() {
+            probation.clear();
+            protect.clear();
+            protectedBytes = 0;
+            bytes = 0;
+            size = 0;
+        }
+    }
+}
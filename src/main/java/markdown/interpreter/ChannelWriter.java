@@ -0,0 +1,181 @@
+package markdown.interpreter;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.CharsetEncoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.CodingErrorAction;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * ChannelWriter
+ * <p>
+ * A buffered UTF-8 Writer on top of a channel: the chars are collected in a fixed-size buffer, which is
+ * encoded and written to the channel chunk by chunk whenever it is full. So the memory held by the writer
+ * does not depend on the size of the output. The encoded bytes go through a direct ByteBuffer of a
+ * DirectBufferPool, which close() gives back, so the writers of a batch do not allocate one each.
+ * <p>
+ * Malformed chars (unpaired surrogates) are replaced like OutputStreamWriter does.
+ */
+public class ChannelWriter extends Writer {
+    public static final int DEFAULT_BUFFER_SIZE = 1 << 16;
+
+    private final WritableByteChannel channel;
+    private final CharsetEncoder encoder = StandardCharsets.UTF_8.newEncoder()
+            .onMalformedInput(CodingErrorAction.REPLACE)
+            .onUnmappableCharacter(CodingErrorAction.REPLACE);
+    private final char[] chars;
+    private final CharBuffer charBuffer;
+    private final DirectBufferPool pool;
+    private final ByteBuffer bytes;
+    private int count;      // number of chars in the buffer
+    private boolean closed;
+
+    public ChannelWriter(WritableByteChannel channel) {
+        this(channel, DEFAULT_BUFFER_SIZE);
+    }
+
+    public ChannelWriter(WritableByteChannel channel, int bufferSize) {
+        this(channel, bufferSize, DirectBufferPool.SHARED);
+    }
+
+    public ChannelWriter(WritableByteChannel channel, int bufferSize, DirectBufferPool pool) {
+        if (bufferSize < 2)
+            throw new IllegalArgumentException("The buffer must hold at least a surrogate pair");
+        this.channel = channel;
+        this.chars = new char[bufferSize];
+        this.charBuffer = CharBuffer.wrap(chars);
+        this.pool = pool;
+        this.bytes = pool.acquire();
+    }
+
+    /**
+     * Open the file for writing, an existing file is truncated.
+     */
+    public static ChannelWriter open(Path path) throws IOException {
+        return new ChannelWriter(FileChannel.open(path,
+                StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE));
+    }
+
+
+    // Writer:
+    @Override
+    public void write(int c) throws IOException {
+        ensureOpen();
+        if (count == chars.length)
+            flushBuffer(false);
+        chars[count++] = (char) c;
+    }
+
+    @Override
+    public void write(char[] cbuf, int off, int len) throws IOException {
+        ensureOpen();
+        while (len > 0) {
+            if (count == chars.length)
+                flushBuffer(false);
+            int n = Math.min(len, chars.length - count);
+            System.arraycopy(cbuf, off, chars, count, n);
+            count += n;
+            off += n;
+            len -= n;
+        }
+    }
+
+    @Override
+    public void write(String str, int off, int len) throws IOException {
+        ensureOpen();
+        while (len > 0) {
+            if (count == chars.length)
+                flushBuffer(false);
+            int n = Math.min(len, chars.length - count);
+            str.getChars(off, off + n, chars, count);
+            count += n;
+            off += n;
+            len -= n;
+        }
+    }
+
+    @Override
+    public Writer append(CharSequence csq, int start, int end) throws IOException {
+        if (csq == null)
+            return super.append(csq, start, end);
+        if (csq instanceof String) {
+            write((String) csq, start, end - start);
+            return this;
+        }
+        ensureOpen();
+        for (int i = start; i < end; i++) {
+            if (count == chars.length)
+                flushBuffer(false);
+            chars[count++] = csq.charAt(i);
+        }
+        return this;
+    }
+
+    @Override
+    public Writer append(CharSequence csq) throws IOException {
+        return csq == null ? super.append(null) : append(csq, 0, csq.length());
+    }
+
+    @Override
+    public void flush() throws IOException {
+        ensureOpen();
+        flushBuffer(false);
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (closed)
+            return;
+        try {
+            flushBuffer(true);
+        } finally {
+            closed = true;
+            pool.release(bytes);
+            channel.close();
+        }
+    }
+
+
+    // helpers:
+    /**
+     * Encode the buffered chars and write them to the channel. A trailing high-surrogate stays in the buffer
+     * until its low-surrogate arrives, except at the end of the input. The bytes are written whenever their
+     * buffer is full, which may be more than once per chunk of chars.
+     */
+    private void flushBuffer(boolean endOfInput) throws IOException {
+        charBuffer.limit(count).position(0);
+        CoderResult result;
+        while ((result = encoder.encode(charBuffer, bytes, endOfInput)).isOverflow())
+            writeBytes();
+        if (result.isError())
+            result.throwException();
+        if (endOfInput) {
+            while (encoder.flush(bytes).isOverflow())
+                writeBytes();
+        }
+        writeBytes();
+
+        int remaining = charBuffer.remaining();
+        System.arraycopy(chars, charBuffer.position(), chars, 0, remaining);
+        count = remaining;
+    }
+
+    private void writeBytes() throws IOException {
+        bytes.flip();
+        while (bytes.hasRemaining())
+            channel.write(bytes);
+        bytes.clear();
+    }
+
+    private void ensureOpen() throws IOException {
+        if (closed)
+            throw new IOException("Stream closed");
+    }
+}
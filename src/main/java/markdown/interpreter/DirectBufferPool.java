@@ -0,0 +1,62 @@
+package markdown.interpreter;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+
+/**
+ * DirectBufferPool
+ * <p>
+ * Keeps the direct ByteBuffers of the Utf8ChannelWriters for re-use: a direct buffer is expensive to allocate and
+ * is only freed by the garbage collector, so a server which renders many small requests takes them from here.
+ * The pool holds at most maxBuffers idle buffers, the ones released beyond that are left to the garbage collector.
+ */
+public final class DirectBufferPool {
+    public static final int DEFAULT_BUFFER_SIZE = 1 << 16;
+
+    /** The pool of all the writers which are not given one of their own. */
+    public static final DirectBufferPool SHARED =
+            new DirectBufferPool(DEFAULT_BUFFER_SIZE, Runtime.getRuntime().availableProcessors() * 4);
+
+    private final int bufferSize;
+    private final BlockingQueue<ByteBuffer> idle;
+
+    public DirectBufferPool(int bufferSize, int maxBuffers) {
+        if (bufferSize < 4)
+            throw new IllegalArgumentException("A buffer must hold at least one UTF-8 sequence");
+        this.bufferSize = bufferSize;
+        this.idle = new ArrayBlockingQueue<>(Math.max(maxBuffers, 1));
+    }
+
+
+    // getters:
+    public int getBufferSize() {
+        return bufferSize;
+    }
+
+    /**
+     * @return the number of idle buffers in the pool
+     */
+    public int size() {
+        return idle.size();
+    }
+
+
+    // operations:
+    /**
+     * @return a cleared buffer of bufferSize bytes, a new one when the pool is empty
+     */
+    public ByteBuffer acquire() {
+        ByteBuffer buffer = idle.poll();
+        return buffer != null ? buffer : ByteBuffer.allocateDirect(bufferSize);
+    }
+
+    /**
+     * Give a buffer of acquire() back; it must not be used by the caller anymore.
+     */
+    public void release(ByteBuffer buffer) {
+        if (buffer.capacity() != bufferSize || !buffer.isDirect())
+            throw new IllegalArgumentException("The buffer is not from this pool");
+        idle.offer(buffer.clear());
+    }
+}
@@ -1,78 +1,280 @@
 package markdown.interpreter;
 
+import markdown.metrics.MarkdownMetrics;
+import markdown.metrics.RenderEvent;
 import markdown.nodes.*;
+import markdown.parser.Utf8Source;
 
-public class HtmlGeneratorVisitor implements Visitor {
-    private StringBuilder content = new StringBuilder();
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.function.Consumer;
+
+/**
+ * HtmlGeneratorVisitor
+ * <p>
+ * Generates the html of a document into any Appendable, so the output can be streamed e.g. to a Writer
+ * instead of being collected in memory first. The texts of markdown which was lexed as bytes are copied as
+ * bytes into a Utf8ChannelWriter; for any other output they are decoded one by one.
+ * <p>
+ * The generator itself has no state: every call of generate(...) walks the document with an HtmlVisitor of its
+ * own, which holds the output, so one generator can be shared by any number of threads without locking. The
+ * document is walked with an explicit stack, see TreeVisitor, so even an adversarially deep nesting can not
+ * overflow the stack of a render-thread.
+ */
+public class HtmlGeneratorVisitor {
+    private static final String DOC_START = "<!DOCTYPE html>\n<html>\n<body>\n";
+    private static final String DOC_END = "</body>\n</html>\n";
+
+    // the tags, looked up instead of built per node: by MdEmphasis.Kind.ordinal() and by heading level
+    private static final String[] EMPHASIS_START = new String[MdEmphasis.Kind.values().length];
+    private static final String[] EMPHASIS_END = new String[MdEmphasis.Kind.values().length];
+    private static final String[] HEADING_START = new String[7];
+    private static final String[] HEADING_END = new String[7];
+
+    static {
+        for (MdEmphasis.Kind kind : MdEmphasis.Kind.values()) {
+            EMPHASIS_START[kind.ordinal()] = switch (kind) {
+                case ITALIC -> "<i>";
+                case BOLD -> "<b>";
+                default -> "<b><i>";
+            };
+            EMPHASIS_END[kind.ordinal()] = switch (kind) {
+                case ITALIC -> "</i>";
+                case BOLD -> "</b>";
+                default -> "</i></b>";
+            };
+        }
+        for (int level = 0; level < HEADING_START.length; level++) {
+            HEADING_START[level] = "<h" + level + ">";
+            HEADING_END[level] = "</h" + level + ">\n";
+        }
+    }
 
 
     public String generate(MdDoc doc) {
-        doc.accept(this);
-        return content.toString();
+        return generate(doc.getFilePath(), doc::walk, doc.getSourceLength());
+    }
+
+    /**
+     * Generate the html of the document into output.
+     *
+     * @throws IOException when appending to output failed; the output then holds an incomplete document
+     */
+    public void generate(MdDoc doc, Appendable output) throws IOException {
+        generate(doc.getFilePath(), doc::walk, output);
     }
 
-    @Override
-    public void visitDoc(MdDoc doc) {
-        content.append("<!DOCTYPE html>\n");
-        content.append("<html>\n");
-        content.append("<body>\n");
-        doc.acceptChildren(this);
-        content.append("</body>\n");
-        content.append("</html>\n");
+    /**
+     * Generate the html of a flat document, without creating its MdNodes.
+     */
+    public String generate(FlatDoc doc) {
+        return generate(doc.getFilePath(), doc::walk, doc.getSourceLength());
     }
 
-    @Override
-    public void visitHtml(MdHtml html) {
-        content.append(html.getValue() + "\n");
+    public void generate(FlatDoc doc, Appendable output) throws IOException {
+        generate(doc.getFilePath(), doc::walk, output);
     }
 
-    @Override
-    public void visitHeading(MdHeading heading) {
-        content.append("<h" + heading.getLevel() + ">");
-        heading.acceptChildren(this);
-        content.append("</h" + heading.getLevel() + ">\n");
+
+    // block by block: generateBegin(...), generateBlock(...) of every top-level block and generateEnd(...) are the same as generate(doc)
+    public void generateBegin(Appendable output) throws IOException {
+        output.append(DOC_START);
     }
 
-    @Override
-    public void visitParagraph(MdParagraph paragraph) {
-        content.append("<p>");
-        paragraph.acceptChildren(this);
-        content.append("</p>\n");
+    /**
+     * Generate the html of a top-level block of a document, without the document's tags around it.
+     *
+     * @throws IOException when appending to output failed
+     */
+    public void generateBlock(MdNode block, Appendable output) throws IOException {
+        HtmlVisitor visitor = new HtmlVisitor(output, output instanceof Utf8ChannelWriter);
+        try {
+            block.walk(visitor);
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
     }
 
-    @Override
-    public void visitBlockQuote(MdBlockQuote blockQuote) {
-        content.append("<blockquote>\n");
-        blockQuote.acceptChildren(this);
-        content.append("</blockquote>\n");
+    public void generateEnd(Appendable output) throws IOException {
+        output.append(DOC_END);
     }
 
-    @Override
-    public void visitText(MdText text) {
-        content.append(text.getValue() + " ");
+
+    // helpers:
+    /**
+     * @param sourceLength the length of the markdown, to size the buffer for the html; -1 if it is unknown
+     */
+    private String generate(File filePath, Consumer<TreeVisitor> walk, int sourceLength) {
+        boolean isRecording = MarkdownMetrics.isRecording();
+        long start = isRecording ? System.nanoTime() : 0;
+        RenderEvent event = RenderEvent.start();
+        StringBuilder sb = new StringBuilder(estimateLength(sourceLength));
+        HtmlVisitor visitor = new HtmlVisitor(sb, false);
+        walk.accept(visitor);
+        event.finish(filePath, visitor.nodes, sb.length());
+        if (isRecording)
+            MarkdownMetrics.recordGenerate(start, sb.length());
+        return sb.toString();
     }
 
-    @Override
-    public void visitBreak(MdBreak lineBreak) {
-        content.append("<br/>\n");
+    private void generate(File filePath, Consumer<TreeVisitor> walk, Appendable output) throws IOException {
+        boolean isRecording = MarkdownMetrics.isRecording();
+        long start = isRecording ? System.nanoTime() : 0;
+        RenderEvent event = RenderEvent.start();
+        CountingAppendable counting = isRecording || event.isEnabled() ? new CountingAppendable(output) : null;
+        HtmlVisitor visitor = new HtmlVisitor(counting != null ? counting : output,
+                output instanceof Utf8ChannelWriter);
+        try {
+            walk.accept(visitor);
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+        event.finish(filePath, visitor.nodes, counting != null ? counting.count : -1);
+        if (isRecording)
+            MarkdownMetrics.recordGenerate(start, counting.count);
     }
 
-    @Override
-    public void visitEmphasis(MdEmphasis emphasis) {
-        content.append(
-            switch (emphasis.getKind() ) {
-                case ITALIC -> "<i>";
-                case BOLD -> "<b>";
-                default -> "<b><i>";
+    /**
+     * Counts the generated chars for the metrics and the RenderEvent, when the output is not a StringBuilder which knows its length.
+     */
+    private static final class CountingAppendable implements Appendable {
+        private final Appendable output;
+        private long count;
+
+        CountingAppendable(Appendable output) {
+            this.output = output;
+        }
+
+        @Override
+        public Appendable append(CharSequence csq) throws IOException {
+            output.append(csq);
+            count += csq != null ? csq.length() : 4;    // "null"
+            return this;
+        }
+
+        @Override
+        public Appendable append(CharSequence csq, int start, int end) throws IOException {
+            output.append(csq, start, end);
+            count += end - start;
+            return this;
+        }
+
+        @Override
+        public Appendable append(char c) throws IOException {
+            output.append(c);
+            count++;
+            return this;
+        }
+    }
+
+    /**
+     * The html of the test-documents and benchmarks is 1.1 to 1.25 times as long as their markdown, plus the
+     * document's tags: so the buffer rarely grows, and then only once.
+     */
+    static int estimateLength(int sourceLength) {
+        if (sourceLength < 0)
+            return 256;
+        return (int) Math.min(sourceLength + sourceLength / 4L + 64, Integer.MAX_VALUE - 8);
+    }
+
+    /**
+     * The walk of one document into one output: the start-tags on enter, the end-tags on exit.
+     */
+    private static final class HtmlVisitor implements TreeVisitor {
+        private final Appendable content;
+        private final boolean isUtf8Output; // the content takes the bytes of a Utf8Source, else its texts are decoded
+        private int nodes;                  // the number of entered nodes, for the RenderEvent
+
+        HtmlVisitor(Appendable content, boolean isUtf8Output) {
+            this.content = content;
+            this.isUtf8Output = isUtf8Output;
+        }
+
+
+        // TreeVisitor:
+        @Override
+        public boolean enter(MdNode node) {
+            nodes++;
+            if (node instanceof MdText) {
+                MdText text = (MdText) node;
+                if (text.getSource() instanceof Utf8Source && !isUtf8Output)
+                    append(text.getValue());
+                else
+                    append(text.getSource(), text.getStart(), text.getEnd());
+                append(' ');
+            } else if (node instanceof MdBreak) {
+                append("<br/>\n");
+            } else if (node instanceof MdEmphasis) {
+                append(EMPHASIS_START[((MdEmphasis) node).getKind().ordinal()]);
+            } else if (node instanceof MdParagraph) {
+                append("<p>");
+            } else if (node instanceof MdHeading) {
+                int level = ((MdHeading) node).getLevel();
+                if (level >= 0 && level < HEADING_START.length) {
+                    append(HEADING_START[level]);
+                } else {
+                    append("<h");
+                    append(Integer.toString(level));
+                    append('>');
+                }
+            } else if (node instanceof MdBlockQuote) {
+                append("<blockquote>\n");
+            } else if (node instanceof MdHtml) {
+                append(node.getValue());
+                append('\n');
+            } else if (node instanceof MdDoc) {
+                append(DOC_START);
             }
-        );
-        emphasis.acceptChildren(this);
-        content.append(
-                switch (emphasis.getKind() ) {
-                    case ITALIC -> "</i>";
-                    case BOLD -> "</b>";
-                    default -> "</i></b>";
+            return true;
+        }
+
+        @Override
+        public void exit(MdNode node) {
+            if (node instanceof MdEmphasis) {
+                append(EMPHASIS_END[((MdEmphasis) node).getKind().ordinal()]);
+            } else if (node instanceof MdParagraph) {
+                append("</p>\n");
+            } else if (node instanceof MdHeading) {
+                int level = ((MdHeading) node).getLevel();
+                if (level >= 0 && level < HEADING_END.length) {
+                    append(HEADING_END[level]);
+                } else {
+                    append("</h");
+                    append(Integer.toString(level));
+                    append(">\n");
                 }
-        );
+            } else if (node instanceof MdBlockQuote) {
+                append("</blockquote>\n");
+            } else if (node instanceof MdDoc) {
+                append(DOC_END);
+            }
+        }
+
+
+        // helpers: the TreeVisitor can not throw an IOException, so it is tunneled up to generate(...)
+        private void append(CharSequence csq) {
+            try {
+                content.append(csq);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+
+        private void append(CharSequence csq, int start, int end) {
+            try {
+                content.append(csq, start, end);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+
+        private void append(char c) {
+            try {
+                content.append(c);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
     }
 }
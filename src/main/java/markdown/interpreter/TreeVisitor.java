@@ -0,0 +1,19 @@
+package markdown.interpreter;
+
+import markdown.nodes.MdNode;
+
+/**
+ * TreeVisitor
+ * <p>
+ * The callbacks of MdNode.walk(...), which visits a tree in document order with an explicit stack instead of
+ * recursion, so the depth of a document is only limited by the heap: enter(...) is called before the children
+ * of a node and exit(...) after them.
+ */
+public interface TreeVisitor {
+    /**
+     * @return false to skip the children of the node and its exit(...)
+     */
+    boolean enter(MdNode node);
+
+    void exit(MdNode node);
+}
@@ -0,0 +1,178 @@
+package markdown.interpreter;
+
+import markdown.parser.Utf8Source;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Utf8ChannelWriter
+ * <p>
+ * A buffered UTF-8 Writer on top of a channel, for the markdown which was lexed as bytes: the ranges of a
+ * Utf8Source, i.e. the texts of the document, are copied into the buffer as they are, without being decoded and
+ * encoded again. Only the other chars, mostly the ASCII tags of the html, are encoded, straight into the buffer.
+ * <p>
+ * The buffer is a direct ByteBuffer of a DirectBufferPool, which is written to the channel whenever it is full;
+ * close() gives it back. Malformed chars (unpaired surrogates) are replaced by '?' like ChannelWriter does.
+ */
+public class Utf8ChannelWriter extends Writer {
+    private final WritableByteChannel channel;
+    private final DirectBufferPool pool;
+    private ByteBuffer bytes;       // null when closed
+    private char highSurrogate;     // the first half of a surrogate pair whose second half is not written yet, else 0
+
+    public Utf8ChannelWriter(WritableByteChannel channel) {
+        this(channel, DirectBufferPool.SHARED);
+    }
+
+    public Utf8ChannelWriter(WritableByteChannel channel, DirectBufferPool pool) {
+        this.channel = channel;
+        this.pool = pool;
+        this.bytes = pool.acquire();
+    }
+
+    /**
+     * Open the file for writing, an existing file is truncated.
+     */
+    public static Utf8ChannelWriter open(Path path) throws IOException {
+        return new Utf8ChannelWriter(FileChannel.open(path,
+                StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE));
+    }
+
+
+    // Writer:
+    @Override
+    public void write(int c) throws IOException {
+        ensureOpen();
+        encode((char) c);
+    }
+
+    @Override
+    public void write(char[] cbuf, int off, int len) throws IOException {
+        ensureOpen();
+        for (int i = off; i < off + len; i++)
+            encode(cbuf[i]);
+    }
+
+    @Override
+    public void write(String str, int off, int len) throws IOException {
+        ensureOpen();
+        for (int i = off; i < off + len; i++)
+            encode(str.charAt(i));
+    }
+
+    /**
+     * Append the range of csq; the range of a Utf8Source is copied as bytes.
+     */
+    @Override
+    public Writer append(CharSequence csq, int start, int end) throws IOException {
+        if (csq == null)
+            return super.append(csq, start, end);
+        ensureOpen();
+        if (csq instanceof Utf8Source) {
+            Utf8Source source = (Utf8Source) csq;
+            replaceHighSurrogate();
+            while (start < end) {
+                if (!bytes.hasRemaining())
+                    flushBuffer();
+                int n = Math.min(end - start, bytes.remaining());
+                source.copyTo(start, start + n, bytes);
+                start += n;
+            }
+        } else {
+            for (int i = start; i < end; i++)
+                encode(csq.charAt(i));
+        }
+        return this;
+    }
+
+    @Override
+    public Writer append(CharSequence csq) throws IOException {
+        return csq == null ? super.append(null) : append(csq, 0, csq.length());
+    }
+
+    @Override
+    public void flush() throws IOException {
+        ensureOpen();
+        flushBuffer();
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (bytes == null)
+            return;
+        try {
+            replaceHighSurrogate();
+            flushBuffer();
+        } finally {
+            pool.release(bytes);
+            bytes = null;
+            channel.close();
+        }
+    }
+
+
+    // helpers:
+    private void encode(char c) throws IOException {
+        if (bytes.remaining() < 4)
+            flushBuffer();
+        if (c < 0x80 && highSurrogate == 0) {
+            bytes.put((byte) c);
+        } else if (Character.isHighSurrogate(c)) {
+            replaceHighSurrogate();
+            highSurrogate = c;
+        } else if (Character.isLowSurrogate(c)) {
+            if (highSurrogate == 0) {
+                bytes.put((byte) '?');
+                return;
+            }
+            int codePoint = Character.toCodePoint(highSurrogate, c);
+            highSurrogate = 0;
+            bytes.put((byte) (0xf0 | codePoint >> 18));
+            bytes.put((byte) (0x80 | codePoint >> 12 & 0x3f));
+            bytes.put((byte) (0x80 | codePoint >> 6 & 0x3f));
+            bytes.put((byte) (0x80 | codePoint & 0x3f));
+        } else {
+            replaceHighSurrogate();
+            if (c < 0x80) {
+                bytes.put((byte) c);
+            } else if (c < 0x800) {
+                bytes.put((byte) (0xc0 | c >> 6));
+                bytes.put((byte) (0x80 | c & 0x3f));
+            } else {
+                bytes.put((byte) (0xe0 | c >> 12));
+                bytes.put((byte) (0x80 | c >> 6 & 0x3f));
+                bytes.put((byte) (0x80 | c & 0x3f));
+            }
+        }
+    }
+
+    /**
+     * A high-surrogate which is not followed by its low-surrogate is malformed.
+     */
+    private void replaceHighSurrogate() throws IOException {
+        if (highSurrogate != 0) {
+            highSurrogate = 0;
+            if (!bytes.hasRemaining())
+                flushBuffer();
+            bytes.put((byte) '?');
+        }
+    }
+
+    private void flushBuffer() throws IOException {
+        bytes.flip();
+        while (bytes.hasRemaining())
+            channel.write(bytes);
+        bytes.clear();
+    }
+
+    private void ensureOpen() throws IOException {
+        if (bytes == null)
+            throw new IOException("Stream closed");
+    }
+}
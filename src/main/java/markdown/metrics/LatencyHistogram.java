@@ -0,0 +1,122 @@
+package markdown.metrics;
+
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * LatencyHistogram
+ * <p>
+ * The latencies of one phase, counted into buckets by the size of the input and by the power of two of the
+ * nanoseconds. Recording is lock-free: it increments one slot of an atomic array, so any number of threads can
+ * record at once, and a reader only sees each count a little late.
+ */
+public final class LatencyHistogram {
+    /**
+     * The upper bounds of the input-size classes, the last class holds all the bigger inputs.
+     */
+    static final long[] SIZE_LIMITS = {1 << 10, 1 << 14, 1 << 18, 1 << 22};
+    static final String[] SIZE_LABELS = {"<1K", "<16K", "<256K", "<4M", ">=4M"};
+    static final int SIZE_CLASSES = SIZE_LABELS.length;
+    static final int LATENCY_BUCKETS = 64;     // bucket i holds the latencies in [2^(i-1), 2^i) ns, bucket 0 holds 0
+
+    private static final int COUNT = LATENCY_BUCKETS;       // per size class: the buckets, then count, sum and max
+    private static final int SUM = LATENCY_BUCKETS + 1;
+    private static final int MAX = LATENCY_BUCKETS + 2;
+    private static final int STRIDE = LATENCY_BUCKETS + 3;
+
+    private final String phase;
+    private final String unit;      // what the input size is measured in, e.g. chars or tokens
+    private final AtomicLongArray slots = new AtomicLongArray(SIZE_CLASSES * STRIDE);
+
+    LatencyHistogram(String phase, String unit) {
+        this.phase = phase;
+        this.unit = unit;
+    }
+
+
+    // operations:
+    public void record(long size, long nanos) {
+        if (nanos < 0)
+            nanos = 0;
+        int base = sizeClass(size) * STRIDE;
+        slots.incrementAndGet(base + (64 - Long.numberOfLeadingZeros(nanos)));
+        slots.incrementAndGet(base + COUNT);
+        slots.addAndGet(base + SUM, nanos);
+        long max;
+        while (nanos > (max = slots.get(base + MAX)) && !slots.compareAndSet(base + MAX, max, nanos)) ;
+    }
+
+    void reset() {
+        for (int i = 0; i < slots.length(); i++)
+            slots.set(i, 0);
+    }
+
+
+    // getters:
+    public String getPhase() {
+        return phase;
+    }
+
+    public String getUnit() {
+        return unit;
+    }
+
+    public long getCount(int sizeClass) {
+        return slots.get(sizeClass * STRIDE + COUNT);
+    }
+
+    public long getTotalNanos(int sizeClass) {
+        return slots.get(sizeClass * STRIDE + SUM);
+    }
+
+    public long getMaxNanos(int sizeClass) {
+        return slots.get(sizeClass * STRIDE + MAX);
+    }
+
+    /**
+     * @return the upper bound of the bucket which holds the percentile of the latencies, 0 if there are none
+     */
+    public long getPercentileNanos(int sizeClass, double percentile) {
+        int base = sizeClass * STRIDE;
+        long[] buckets = new long[LATENCY_BUCKETS];
+        long count = 0;
+        for (int i = 0; i < LATENCY_BUCKETS; i++)
+            count += buckets[i] = slots.get(base + i);
+        if (count == 0)
+            return 0;
+        long rank = Math.max((long) Math.ceil(count * percentile / 100.0), 1);
+        long seen = 0;
+        for (int i = 0; i < LATENCY_BUCKETS; i++) {
+            seen += buckets[i];
+            if (seen >= rank)
+                return i == 0 ? 0 : i == 63 ? Long.MAX_VALUE : (1L << i) - 1;
+        }
+        return Long.MAX_VALUE;
+    }
+
+    /**
+     * @return one summary per size class which has recorded latencies
+     */
+    PhaseLatency[] summarize() {
+        int classes = 0;
+        PhaseLatency[] summaries = new PhaseLatency[SIZE_CLASSES];
+        for (int sizeClass = 0; sizeClass < SIZE_CLASSES; sizeClass++) {
+            long count = getCount(sizeClass);
+            if (count == 0)
+                continue;
+            summaries[classes++] = new PhaseLatency(phase, SIZE_LABELS[sizeClass] + " " + unit, count,
+                    getTotalNanos(sizeClass), getPercentileNanos(sizeClass, 50), getPercentileNanos(sizeClass, 90),
+                    getPercentileNanos(sizeClass, 99), getMaxNanos(sizeClass));
+        }
+        return Arrays.copyOf(summaries, classes);
+    }
+
+
+    // helpers:
+    static int sizeClass(long size) {
+        for (int i = 0; i < SIZE_LIMITS.length; i++)
+            if (size < SIZE_LIMITS[i])
+                return i;
+        return SIZE_LIMITS.length;
+    }
+}
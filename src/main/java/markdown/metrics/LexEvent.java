@@ -0,0 +1,54 @@
+package markdown.metrics;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+import jdk.jfr.Threshold;
+
+/**
+ * LexEvent
+ * <p>
+ * A flight-recorder event around one run of the lexer over a whole input. See ParseEvent for how the events are
+ * switched on and how their threshold is configured.
+ */
+@Name("markdown.Lex")
+@Label("Markdown Lex")
+@Category("Markdown")
+@Description("The lexer turned a markdown input into tokens")
+@Threshold(MarkdownEvents.DEFAULT_THRESHOLD)
+@StackTrace(false)
+public class LexEvent extends jdk.jfr.Event {
+    @Label("Path")
+    @Description("The lexed file or uri, null for a text in memory")
+    String path;
+
+    @Label("Input Length")
+    @Description("The number of lexed chars")
+    long inputLength;
+
+    @Label("Tokens")
+    long tokenCount;
+
+
+    /**
+     * @return a started event; while no recording enables it, begin(), end() and shouldCommit() are empty and
+     * the event does not escape, so the JIT removes it altogether
+     */
+    public static LexEvent start() {
+        LexEvent event = new LexEvent();
+        event.begin();
+        return event;
+    }
+
+    public void finish(Object path, long inputLength, long tokenCount) {
+        end();
+        if (shouldCommit()) {
+            this.path = MarkdownEvents.toPath(path);
+            this.inputLength = inputLength;
+            this.tokenCount = tokenCount;
+            commit();
+        }
+    }
+}
@@ -0,0 +1,36 @@
+package markdown.metrics;
+
+import java.io.File;
+import java.net.URI;
+
+/**
+ * MarkdownEvents
+ * <p>
+ * The flight-recorder events of the lexer (LexEvent), the parser (ParseEvent) and the html-generator
+ * (RenderEvent). They are enabled by default, so any recording picks them up, but only the phases which took
+ * longer than their threshold are recorded, which keeps an always-on recording cheap. The threshold is 10 ms unless
+ * the recording's settings configure another one, e.g. in a .jfc file:
+ * <pre>
+ *     &lt;event name="markdown.Parse"&gt;
+ *         &lt;setting name="threshold"&gt;50 ms&lt;/setting&gt;
+ *     &lt;/event&gt;
+ * </pre>
+ * or with Recording.enable("markdown.Parse").withThreshold(...).
+ */
+public final class MarkdownEvents {
+    public static final String DEFAULT_THRESHOLD = "10 ms";
+
+    private MarkdownEvents() {
+    }
+
+    /**
+     * @param path a File, a URI or null
+     */
+    static String toPath(Object path) {
+        if (path instanceof File)
+            return ((File) path).getPath();
+        if (path instanceof URI)
+            return path.toString();
+        return null;
+    }
+}
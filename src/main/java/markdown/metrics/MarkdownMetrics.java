@@ -0,0 +1,196 @@
+package markdown.metrics;
+
+import javax.management.InstanceAlreadyExistsException;
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * MarkdownMetrics
+ * <p>
+ * Counters and latency histograms of the lexer, the parser and the html-generator, published as a platform
+ * MBean. The metrics are off by default and switched on with -Dmarkdown.metrics=true, by enable() or over JMX:
+ * the MBean is registered as soon as the markdown classes are used, also while the recording is off.
+ * <p>
+ * The instrumented methods only check isRecording() once per call, before they start and after they finished, and
+ * never inside their loops: while the metrics are off a call costs one read of a volatile boolean more.
+ * The counters are LongAdders and the histograms are lock-free, so the recording threads never wait for each other.
+ */
+public final class MarkdownMetrics implements MarkdownMetricsMXBean {
+    public static final String OBJECT_NAME = "markdown:type=MarkdownMetrics";
+
+    private static final MarkdownMetrics INSTANCE = new MarkdownMetrics();
+    private static volatile boolean enabled;
+
+    private final LongAdder documents = new LongAdder();
+    private final LongAdder inputChars = new LongAdder();
+    private final LongAdder tokens = new LongAdder();
+    private final LongAdder nodes = new LongAdder();
+    private final LongAdder outputChars = new LongAdder();
+    // every phase buckets its latencies by the size of its own input, which is all it knows of the document:
+    private final LatencyHistogram lex = new LatencyHistogram("lex", "chars");
+    private final LatencyHistogram parse = new LatencyHistogram("parse", "tokens");
+    private final LatencyHistogram generate = new LatencyHistogram("generate", "html-chars");
+
+    static {
+        register();
+        if (Boolean.getBoolean("markdown.metrics"))
+            enable();
+    }
+
+    private MarkdownMetrics() {
+    }
+
+
+    // construction:
+    public static MarkdownMetrics getInstance() {
+        return INSTANCE;
+    }
+
+    public static void enable() {
+        enabled = true;
+    }
+
+    public static void disable() {
+        enabled = false;
+    }
+
+    public static boolean isRecording() {
+        return enabled;
+    }
+
+
+    // recording: called by the instrumented methods, only when isRecording()
+    /**
+     * @param chars  the number of lexed chars
+     * @param tokens the number of created tokens
+     */
+    public static void recordLex(long startNanos, long chars, long tokens) {
+        long nanos = System.nanoTime() - startNanos;
+        INSTANCE.inputChars.add(chars);
+        INSTANCE.tokens.add(tokens);
+        INSTANCE.lex.record(chars, nanos);
+    }
+
+    /**
+     * @param tokens the number of parsed tokens
+     * @param nodes  the number of created nodes
+     */
+    public static void recordParse(long startNanos, long tokens, long nodes) {
+        long nanos = System.nanoTime() - startNanos;
+        INSTANCE.documents.increment();
+        INSTANCE.nodes.add(nodes);
+        INSTANCE.parse.record(tokens, nanos);
+    }
+
+    /**
+     * @param chars the number of generated html chars; the generator does not know the size of the markdown, so
+     *              its latencies are bucketed by this
+     */
+    public static void recordGenerate(long startNanos, long chars) {
+        long nanos = System.nanoTime() - startNanos;
+        INSTANCE.outputChars.add(chars);
+        INSTANCE.generate.record(chars, nanos);
+    }
+
+
+    // MarkdownMetricsMXBean:
+    @Override
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    @Override
+    public void setEnabled(boolean enabled) {
+        MarkdownMetrics.enabled = enabled;
+    }
+
+    @Override
+    public long getDocuments() {
+        return documents.sum();
+    }
+
+    @Override
+    public long getInputChars() {
+        return inputChars.sum();
+    }
+
+    @Override
+    public long getTokens() {
+        return tokens.sum();
+    }
+
+    @Override
+    public long getNodes() {
+        return nodes.sum();
+    }
+
+    @Override
+    public long getOutputChars() {
+        return outputChars.sum();
+    }
+
+    @Override
+    public List<PhaseLatency> getLatencies() {
+        List<PhaseLatency> latencies = new ArrayList<>();
+        for (LatencyHistogram histogram : new LatencyHistogram[]{lex, parse, generate})
+            Collections.addAll(latencies, histogram.summarize());
+        return latencies;
+    }
+
+    @Override
+    public void reset() {
+        documents.reset();
+        inputChars.reset();
+        tokens.reset();
+        nodes.reset();
+        outputChars.reset();
+        lex.reset();
+        parse.reset();
+        generate.reset();
+    }
+
+
+    // getters:
+    public LatencyHistogram getLexLatency() {
+        return lex;
+    }
+
+    public LatencyHistogram getParseLatency() {
+        return parse;
+    }
+
+    public LatencyHistogram getGenerateLatency() {
+        return generate;
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder sb = new StringBuilder(String.format(
+                "MarkdownMetrics: %d documents, %d input chars, %d tokens, %d nodes, %d output chars",
+                getDocuments(), getInputChars(), getTokens(), getNodes(), getOutputChars()));
+        for (PhaseLatency latency : getLatencies())
+            sb.append("\n  ").append(latency);
+        return sb.toString();
+    }
+
+
+    // helpers:
+    private static synchronized void register() {
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        try {
+            ObjectName name = new ObjectName(OBJECT_NAME);
+            if (!server.isRegistered(name))
+                server.registerMBean(INSTANCE, name);
+        } catch (InstanceAlreadyExistsException e) {
+            // registered concurrently by another class-loader's copy; that one publishes its own counters
+        } catch (JMException e) {
+            e.printStackTrace();
+        }
+    }
+}
@@ -0,0 +1,40 @@
+package markdown.metrics;
+
+import java.util.List;
+
+/**
+ * MarkdownMetricsMXBean
+ * <p>
+ * The management interface of MarkdownMetrics, registered as "markdown:type=MarkdownMetrics".
+ */
+public interface MarkdownMetricsMXBean {
+    boolean isEnabled();
+
+    void setEnabled(boolean enabled);
+
+    /**
+     * @return the number of parsed documents
+     */
+    long getDocuments();
+
+    /**
+     * @return the number of lexed chars
+     */
+    long getInputChars();
+
+    long getTokens();
+
+    long getNodes();
+
+    /**
+     * @return the number of generated html chars
+     */
+    long getOutputChars();
+
+    /**
+     * @return the latencies of lex, parse and generate, per size class of the input
+     */
+    List<PhaseLatency> getLatencies();
+
+    void reset();
+}
@@ -0,0 +1,58 @@
+package markdown.metrics;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+import jdk.jfr.Threshold;
+
+import java.io.File;
+
+/**
+ * ParseEvent
+ * <p>
+ * A flight-recorder event around the parsing of one document, see MarkdownEvents.
+ */
+@Name("markdown.Parse")
+@Label("Markdown Parse")
+@Category("Markdown")
+@Description("The parser built the tree of a markdown document out of its tokens")
+@Threshold(MarkdownEvents.DEFAULT_THRESHOLD)
+@StackTrace(false)
+public class ParseEvent extends jdk.jfr.Event {
+    @Label("Path")
+    @Description("The file of the document, null for a text in memory")
+    String path;
+
+    @Label("Input Length")
+    @Description("The number of chars the tokens were lexed from, -1 when it is unknown")
+    long inputLength;
+
+    @Label("Tokens")
+    long tokenCount;
+
+    @Label("Nodes")
+    long nodeCount;
+
+
+    /**
+     * @return a started event, see LexEvent.start()
+     */
+    public static ParseEvent start() {
+        ParseEvent event = new ParseEvent();
+        event.begin();
+        return event;
+    }
+
+    public void finish(File path, long inputLength, long tokenCount, long nodeCount) {
+        end();
+        if (shouldCommit()) {
+            this.path = MarkdownEvents.toPath(path);
+            this.inputLength = inputLength;
+            this.tokenCount = tokenCount;
+            this.nodeCount = nodeCount;
+            commit();
+        }
+    }
+}
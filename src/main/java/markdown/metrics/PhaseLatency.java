@@ -0,0 +1,76 @@
+package markdown.metrics;
+
+import javax.management.ConstructorParameters;
+
+/**
+ * PhaseLatency
+ * <p>
+ * The latencies of one phase for the inputs of one size class, as published by the MBean. The percentiles are
+ * the upper bounds of their histogram buckets, so they are exact to a factor of two.
+ */
+public class PhaseLatency {
+    private final String phase;
+    private final String inputSize;
+    private final long count;
+    private final long totalNanos;
+    private final long p50Nanos;
+    private final long p90Nanos;
+    private final long p99Nanos;
+    private final long maxNanos;
+
+    @ConstructorParameters({"phase", "inputSize", "count", "totalNanos", "p50Nanos", "p90Nanos", "p99Nanos", "maxNanos"})
+    public PhaseLatency(String phase, String inputSize, long count, long totalNanos,
+                        long p50Nanos, long p90Nanos, long p99Nanos, long maxNanos) {
+        this.phase = phase;
+        this.inputSize = inputSize;
+        this.count = count;
+        this.totalNanos = totalNanos;
+        this.p50Nanos = p50Nanos;
+        this.p90Nanos = p90Nanos;
+        this.p99Nanos = p99Nanos;
+        this.maxNanos = maxNanos;
+    }
+
+
+    // getters:
+    public String getPhase() {
+        return phase;
+    }
+
+    /**
+     * @return the size class of the inputs, e.g. "&lt;16K chars" or "&lt;1K tokens"
+     */
+    public String getInputSize() {
+        return inputSize;
+    }
+
+    public long getCount() {
+        return count;
+    }
+
+    public long getTotalNanos() {
+        return totalNanos;
+    }
+
+    public long getP50Nanos() {
+        return p50Nanos;
+    }
+
+    public long getP90Nanos() {
+        return p90Nanos;
+    }
+
+    public long getP99Nanos() {
+        return p99Nanos;
+    }
+
+    public long getMaxNanos() {
+        return maxNanos;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("%s %s: %d in %.3f ms, p50 %d ns, p90 %d ns, p99 %d ns, max %d ns",
+                phase, inputSize, count, totalNanos / 1e6, p50Nanos, p90Nanos, p99Nanos, maxNanos);
+    }
+}
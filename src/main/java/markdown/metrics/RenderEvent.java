@@ -0,0 +1,54 @@
+package markdown.metrics;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+import jdk.jfr.Threshold;
+
+import java.io.File;
+
+/**
+ * RenderEvent
+ * <p>
+ * A flight-recorder event around the html-generation of one document, see MarkdownEvents.
+ */
+@Name("markdown.Render")
+@Label("Markdown Render")
+@Category("Markdown")
+@Description("The html-generator rendered a markdown document")
+@Threshold(MarkdownEvents.DEFAULT_THRESHOLD)
+@StackTrace(false)
+public class RenderEvent extends jdk.jfr.Event {
+    @Label("Path")
+    @Description("The file of the document, null for a text in memory")
+    String path;
+
+    @Label("Nodes")
+    long nodeCount;
+
+    @Label("Output Length")
+    @Description("The number of generated html chars")
+    long outputLength;
+
+
+    /**
+     * @return a started event, see LexEvent.start()
+     */
+    public static RenderEvent start() {
+        RenderEvent event = new RenderEvent();
+        event.begin();
+        return event;
+    }
+
+    public void finish(File path, long nodeCount, long outputLength) {
+        end();
+        if (shouldCommit()) {
+            this.path = MarkdownEvents.toPath(path);
+            this.nodeCount = nodeCount;
+            this.outputLength = outputLength;
+            commit();
+        }
+    }
+}
@@ -8,7 +8,10 @@ public interface Composable<T> {
 
     List<T> getChildren();
     void addChild(T child);
+    void addChild(int index, T child);
     boolean removeChild(T child);
+    T removeChild(int index);
+    T setChild(int index, T child);
 
     default boolean isRoot() { return getParent()==null; }
     default boolean isLeaf() { return getChildren().size()==0; }
@@ -0,0 +1,672 @@
+package markdown.nodes;
+
+import markdown.interpreter.TreeVisitor;
+import markdown.interpreter.Visitor;
+import markdown.parser.Utf8Source;
+
+import java.io.File;
+import java.util.Arrays;
+import java.util.Objects;
+
+/**
+ * FlatDoc
+ * <p>
+ * A whole document packed into parallel primitive arrays (a struct of arrays), the node-counterpart of the
+ * TokenBuffer: per node the kind, the parent, the first child, the next sibling, the offset and the length of its
+ * value and a kind-specific info, the level of a heading or the ordinal of the Kind of an emphasis. The values are
+ * copied into one char-pool, so a document is a handful of arrays instead of an object per node.
+ * <p>
+ * The root is the node 0. of(...) stores the nodes in document order, so a walk over the tree mostly reads the
+ * arrays front to back. accept(...) and walk(...) drive a visitor over the document without creating its
+ * MdNodes: the visitor gets flyweight nodes, which are re-used for every node of a kind at the same depth. Such a
+ * node is only valid within its visit-call, or up to its exit(...), supports accept/acceptChildren and the
+ * getters of its class, but has no parent and no children-list. toDoc() creates the real MdDoc.
+ */
+public class FlatDoc {
+    public static final byte DOC = 0;
+    public static final byte PARAGRAPH = 1;
+    public static final byte HEADING = 2;
+    public static final byte HTML = 3;
+    public static final byte BLOCKQUOTE = 4;
+    public static final byte TEXT = 5;
+    public static final byte BREAK = 6;
+    public static final byte EMPHASIS = 7;
+
+    public static final int NONE = -1;      // no parent, child or sibling; or no value
+
+    private static final MdEmphasis.Kind[] KINDS = MdEmphasis.Kind.values();
+
+    private final File filePath;
+    private StringBuilder values = new StringBuilder();     // null after trimToSize(), until the next value
+    private String pool;            // the values as String, which Appendables copy much faster than a StringBuilder
+    private byte[] kinds;
+    private int[] parents;
+    private int[] firstChildren;
+    private int[] lastChildren;     // only to append in O(1); null after trimToSize(), until the next node
+    private int[] nextSiblings;
+    private int[] valueOffsets;
+    private int[] valueLengths;
+    private int[] infos;
+    private int size;
+    private int sourceLength = -1;  // a hint for the size of the output, see MdDoc
+
+    public FlatDoc(File filePath) {
+        this(filePath, 16);
+    }
+
+    /**
+     * Create a document with the root-node only.
+     */
+    public FlatDoc(File filePath, int initialCapacity) {
+        this.filePath = filePath;
+        int capacity = Math.max(initialCapacity, 1);
+        kinds = new byte[capacity];
+        parents = new int[capacity];
+        firstChildren = new int[capacity];
+        lastChildren = new int[capacity];
+        nextSiblings = new int[capacity];
+        valueOffsets = new int[capacity];
+        valueLengths = new int[capacity];
+        infos = new int[capacity];
+        add(NONE, DOC, null, 0, 0, 0);
+    }
+
+
+    // conversion:
+    public static FlatDoc of(MdDoc doc) {
+        FlatDoc flat = new FlatDoc(doc.getFilePath());
+        flat.setValue(0, doc.getValue());
+        doc.walk(flat.new Flattener());
+        flat.sourceLength = doc.getSourceLength();
+        return flat;
+    }
+
+    /**
+     * @return the document as a tree of MdNodes; the texts share one source-string
+     */
+    public MdDoc toDoc() {
+        String source = getValues();
+        MdNode[] nodes = new MdNode[size];
+        for (int node = 0; node < size; node++) {
+            nodes[node] = createNode(node, source);
+            if (node > 0)
+                nodes[parents[node]].addChild(nodes[node]);
+        }
+        MdDoc doc = (MdDoc) nodes[0];
+        doc.trimToSize();
+        doc.setSourceLength(sourceLength);
+        return doc;
+    }
+
+
+    // getters:
+    public File getFilePath() {
+        return filePath;
+    }
+
+    /**
+     * @return the number of chars of the markdown the document was parsed from, -1 if it is unknown
+     */
+    public int getSourceLength() {
+        return sourceLength;
+    }
+
+    public void setSourceLength(int sourceLength) {
+        this.sourceLength = sourceLength;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public byte kind(int node) {
+        return kinds[Objects.checkIndex(node, size)];
+    }
+
+    public int parent(int node) {
+        return parents[Objects.checkIndex(node, size)];
+    }
+
+    public int firstChild(int node) {
+        return firstChildren[Objects.checkIndex(node, size)];
+    }
+
+    public int nextSibling(int node) {
+        return nextSiblings[Objects.checkIndex(node, size)];
+    }
+
+    /**
+     * @return the offset of the node's value in getValues()
+     */
+    public int valueOffset(int node) {
+        return valueOffsets[Objects.checkIndex(node, size)];
+    }
+
+    /**
+     * @return the length of the node's value, NONE if it has none
+     */
+    public int valueLength(int node) {
+        return valueLengths[Objects.checkIndex(node, size)];
+    }
+
+    /**
+     * @return the value of the node, materialized as a new String; null if it has none
+     */
+    public String value(int node) {
+        int length = valueLength(node);
+        return length == NONE ? null : getValues().substring(valueOffsets[node], valueOffsets[node] + length);
+    }
+
+    /**
+     * @return the level of a heading, the ordinal of the Kind of an emphasis, otherwise 0
+     */
+    public int info(int node) {
+        return infos[Objects.checkIndex(node, size)];
+    }
+
+    /**
+     * @return the char-pool which holds the values of all the nodes
+     */
+    public String getValues() {
+        // the pool is only appended to, so an equally long copy is still up to date:
+        String pool = this.pool;
+        if (values != null && (pool == null || pool.length() != values.length()))
+            this.pool = pool = values.toString();
+        return pool;
+    }
+
+
+    // operations:
+    /**
+     * Append a node as the last child of parent.
+     *
+     * @param value the value, or null for none
+     * @param info  the level of a heading, the ordinal of the Kind of an emphasis, otherwise 0
+     * @return the index of the new node
+     */
+    public int addChild(int parent, byte kind, CharSequence value, int info) {
+        Objects.checkIndex(parent, size);
+        if (kind == DOC || kind < 0 || kind > EMPHASIS)
+            throw new IllegalArgumentException("Invalid node-kind " + kind);
+        return value == null
+                ? add(parent, kind, null, 0, 0, info)
+                : add(parent, kind, value, 0, value.length(), info);
+    }
+
+    /**
+     * Append a node whose value is the range [start, end) of source.
+     */
+    public int addChild(int parent, byte kind, CharSequence source, int start, int end, int info) {
+        Objects.checkIndex(parent, size);
+        if (kind == DOC || kind < 0 || kind > EMPHASIS)
+            throw new IllegalArgumentException("Invalid node-kind " + kind);
+        return add(parent, kind, source, start, end, info);
+    }
+
+    /**
+     * Cut the arrays down to the number of nodes and drop what is only needed to add nodes.
+     */
+    public void trimToSize() {
+        kinds = Arrays.copyOf(kinds, size);
+        parents = Arrays.copyOf(parents, size);
+        firstChildren = Arrays.copyOf(firstChildren, size);
+        nextSiblings = Arrays.copyOf(nextSiblings, size);
+        valueOffsets = Arrays.copyOf(valueOffsets, size);
+        valueLengths = Arrays.copyOf(valueLengths, size);
+        infos = Arrays.copyOf(infos, size);
+        lastChildren = null;
+        pool = getValues();
+        values = null;
+    }
+
+    /**
+     * Visit the document, as MdDoc.accept(visitor) would.
+     */
+    public void accept(Visitor visitor) {
+        new Walker().visit(0, 0, visitor);
+    }
+
+    /**
+     * Visit the document in document order, as MdDoc.walk(visitor) would. The walk follows the parent-, child-
+     * and sibling-links of the nodes, so it needs no stack at all.
+     */
+    public void walk(TreeVisitor visitor) {
+        Walker walker = new Walker();
+        int node = 0;
+        int depth = 0;
+        while (true) {
+            MdNode flyweight = walker.flyweight(node, depth);
+            boolean isEntered = visitor.enter(flyweight);
+            if (isEntered && firstChildren[node] != NONE) {
+                node = firstChildren[node];
+                depth++;
+                continue;
+            }
+            if (isEntered)
+                visitor.exit(flyweight);
+            // up to the next sibling, leaving the nodes which have none:
+            while (node != 0 && nextSiblings[node] == NONE) {
+                node = parents[node];
+                visitor.exit(walker.flyweight(node, --depth));
+            }
+            if (node == 0)
+                return;
+            node = nextSiblings[node];
+        }
+    }
+
+
+    // helpers:
+    private int add(int parent, byte kind, CharSequence source, int start, int end, int info) {
+        if (lastChildren == null)
+            restoreLastChildren();
+        if (size == kinds.length) {
+            int capacity = size * 2;
+            kinds = Arrays.copyOf(kinds, capacity);
+            parents = Arrays.copyOf(parents, capacity);
+            firstChildren = Arrays.copyOf(firstChildren, capacity);
+            lastChildren = Arrays.copyOf(lastChildren, capacity);
+            nextSiblings = Arrays.copyOf(nextSiblings, capacity);
+            valueOffsets = Arrays.copyOf(valueOffsets, capacity);
+            valueLengths = Arrays.copyOf(valueLengths, capacity);
+            infos = Arrays.copyOf(infos, capacity);
+        }
+        int node = size++;
+        kinds[node] = kind;
+        parents[node] = parent;
+        firstChildren[node] = NONE;
+        lastChildren[node] = NONE;
+        nextSiblings[node] = NONE;
+        infos[node] = info;
+        if (source == null) {
+            valueOffsets[node] = 0;
+            valueLengths[node] = NONE;
+        } else {
+            if (source instanceof Utf8Source) {
+                // the pool holds chars: decode the bytes
+                source = source.subSequence(start, end).toString();
+                start = 0;
+                end = source.length();
+            }
+            valueOffsets[node] = appendValue(source, start, end);
+            valueLengths[node] = end - start;
+        }
+        if (parent != NONE) {
+            if (lastChildren[parent] == NONE)
+                firstChildren[parent] = node;
+            else
+                nextSiblings[lastChildren[parent]] = node;
+            lastChildren[parent] = node;
+        }
+        return node;
+    }
+
+    private void setValue(int node, String value) {
+        valueOffsets[node] = value != null ? appendValue(value, 0, value.length()) : 0;
+        valueLengths[node] = value != null ? value.length() : NONE;
+    }
+
+    /**
+     * @return the offset of the value in the pool
+     */
+    private int appendValue(CharSequence source, int start, int end) {
+        if (values == null)
+            values = new StringBuilder(pool);
+        int offset = values.length();
+        values.append(source, start, end);
+        return offset;
+    }
+
+    private void restoreLastChildren() {
+        lastChildren = new int[kinds.length];
+        Arrays.fill(lastChildren, NONE);
+        for (int node = 1; node < size; node++)
+            lastChildren[parents[node]] = node;     // the siblings are stored in order
+    }
+
+    /**
+     * Appends the nodes of a walked MdDoc below the root, which is the MdDoc itself.
+     */
+    private final class Flattener implements TreeVisitor {
+        private int[] path = new int[16];   // the index of every node from the root down to the current one
+        private int depth = -1;
+
+        @Override
+        public boolean enter(MdNode node) {
+            int index = 0;
+            if (depth >= 0) {
+                int parent = path[depth];
+                if (node instanceof MdText) {
+                    MdText text = (MdText) node;
+                    index = text.getSource() == null
+                            ? add(parent, TEXT, null, 0, 0, 0)
+                            : add(parent, TEXT, text.getSource(), text.getStart(), text.getEnd(), 0);
+                } else {
+                    index = add(parent, kindOf(node), null, 0, 0, infoOf(node));
+                    setValue(index, node.getValue());
+                }
+            }
+            if (++depth == path.length)
+                path = Arrays.copyOf(path, depth * 2);
+            path[depth] = index;
+            return true;
+        }
+
+        @Override
+        public void exit(MdNode node) {
+            depth--;
+        }
+    }
+
+    private static byte kindOf(MdNode node) {
+        if (node instanceof MdParagraph)
+            return PARAGRAPH;
+        if (node instanceof MdHeading)
+            return HEADING;
+        if (node instanceof MdHtml)
+            return HTML;
+        if (node instanceof MdBlockQuote)
+            return BLOCKQUOTE;
+        if (node instanceof MdBreak)
+            return BREAK;
+        if (node instanceof MdEmphasis)
+            return EMPHASIS;
+        throw new IllegalArgumentException("Can not flatten " + node.getClass().getName());
+    }
+
+    private static int infoOf(MdNode node) {
+        if (node instanceof MdHeading)
+            return ((MdHeading) node).getLevel();
+        if (node instanceof MdEmphasis)
+            return ((MdEmphasis) node).getKind().ordinal();
+        return 0;
+    }
+
+    private MdNode createNode(int node, String source) {
+        String value = valueLengths[node] == NONE ? null
+                : source.substring(valueOffsets[node], valueOffsets[node] + valueLengths[node]);
+        MdNode created = switch (kinds[node]) {
+            case DOC -> new MdDoc(filePath);
+            case PARAGRAPH -> new MdParagraph();
+            case HEADING -> new MdHeading(infos[node]);
+            case HTML -> new MdHtml(value);
+            case BLOCKQUOTE -> new MdBlockQuote(value);
+            case TEXT -> valueLengths[node] == NONE ? new MdText(null)
+                    : new MdText(source, valueOffsets[node], valueOffsets[node] + valueLengths[node]);
+            case BREAK -> new MdBreak();
+            case EMPHASIS -> new MdEmphasis(value);
+            default -> throw new IllegalStateException("Invalid node-kind " + kinds[node]);
+        };
+        if (kinds[node] != TEXT && kinds[node] != EMPHASIS)
+            created.setValue(value);
+        return created;
+    }
+
+
+    /**
+     * Walks the document for one accept(...)-call and hands out its flyweight nodes: one per kind and depth, as a
+     * node's visit-call may still use its flyweight after the visits of the children, e.g. for an end-tag.
+     */
+    private final class Walker {
+        private MdNode[][] flyweights = new MdNode[8][];
+
+        void visit(int node, int depth, Visitor visitor) {
+            MdNode flyweight = flyweight(node, depth);
+            // call the visitor directly, instead of the accept(...) of eight classes:
+            switch (kinds[node]) {
+                case DOC -> visitor.visitDoc((FlyDoc) flyweight);
+                case PARAGRAPH -> visitor.visitParagraph((FlyParagraph) flyweight);
+                case HEADING -> visitor.visitHeading((FlyHeading) flyweight);
+                case HTML -> visitor.visitHtml((FlyHtml) flyweight);
+                case BLOCKQUOTE -> visitor.visitBlockQuote((FlyBlockQuote) flyweight);
+                case TEXT -> visitor.visitText((FlyText) flyweight);
+                case BREAK -> visitor.visitBreak((FlyBreak) flyweight);
+                default -> visitor.visitEmphasis((FlyEmphasis) flyweight);
+            }
+        }
+
+        /**
+         * @return the flyweight of the node's kind at the depth, moved to the node
+         */
+        MdNode flyweight(int node, int depth) {
+            if (depth == flyweights.length)
+                flyweights = Arrays.copyOf(flyweights, depth * 2);
+            MdNode[] atDepth = flyweights[depth];
+            if (atDepth == null)
+                atDepth = flyweights[depth] = new MdNode[EMPHASIS + 1];
+            byte kind = kinds[node];
+            MdNode flyweight = atDepth[kind];
+            if (flyweight == null)
+                flyweight = atDepth[kind] = createFlyweight(kind, depth);
+            switch (kind) {
+                case DOC -> ((FlyDoc) flyweight).node = node;
+                case PARAGRAPH -> ((FlyParagraph) flyweight).node = node;
+                case HEADING -> ((FlyHeading) flyweight).node = node;
+                case HTML -> ((FlyHtml) flyweight).node = node;
+                case BLOCKQUOTE -> ((FlyBlockQuote) flyweight).node = node;
+                case TEXT -> ((FlyText) flyweight).node = node;
+                case BREAK -> ((FlyBreak) flyweight).node = node;
+                default -> ((FlyEmphasis) flyweight).node = node;
+            }
+            return flyweight;
+        }
+
+        void visitChildren(int node, int depth, Visitor visitor) {
+            for (int child = firstChildren[node]; child != NONE; child = nextSiblings[child])
+                visit(child, depth + 1, visitor);
+        }
+
+        private MdNode createFlyweight(byte kind, int depth) {
+            return switch (kind) {
+                case DOC -> new FlyDoc(this, depth);
+                case PARAGRAPH -> new FlyParagraph(this, depth);
+                case HEADING -> new FlyHeading(this, depth);
+                case HTML -> new FlyHtml(this, depth);
+                case BLOCKQUOTE -> new FlyBlockQuote(this, depth);
+                case TEXT -> new FlyText(this, depth);
+                case BREAK -> new FlyBreak(this, depth);
+                case EMPHASIS -> new FlyEmphasis(this, depth);
+                default -> throw new IllegalStateException("Invalid node-kind " + kind);
+            };
+        }
+    }
+
+    private final class FlyDoc extends MdDoc {
+        private final Walker walker;
+        private final int depth;
+        private int node;
+
+        FlyDoc(Walker walker, int depth) {
+            super(filePath);
+            this.walker = walker;
+            this.depth = depth;
+        }
+
+        @Override
+        public String getValue() {
+            return value(node);
+        }
+
+        @Override
+        public void acceptChildren(Visitor visitor) {
+            walker.visitChildren(node, depth, visitor);
+        }
+    }
+
+    private final class FlyParagraph extends MdParagraph {
+        private final Walker walker;
+        private final int depth;
+        private int node;
+
+        FlyParagraph(Walker walker, int depth) {
+            this.walker = walker;
+            this.depth = depth;
+        }
+
+        @Override
+        public String getValue() {
+            return value(node);
+        }
+
+        @Override
+        public void acceptChildren(Visitor visitor) {
+            walker.visitChildren(node, depth, visitor);
+        }
+    }
+
+    private final class FlyHeading extends MdHeading {
+        private final Walker walker;
+        private final int depth;
+        private int node;
+
+        FlyHeading(Walker walker, int depth) {
+            super(0);
+            this.walker = walker;
+            this.depth = depth;
+        }
+
+        @Override
+        public int getLevel() {
+            return infos[node];
+        }
+
+        @Override
+        public String getValue() {
+            return value(node);
+        }
+
+        @Override
+        public void acceptChildren(Visitor visitor) {
+            walker.visitChildren(node, depth, visitor);
+        }
+    }
+
+    private final class FlyHtml extends MdHtml {
+        private final Walker walker;
+        private final int depth;
+        private int node;
+
+        FlyHtml(Walker walker, int depth) {
+            super(null);
+            this.walker = walker;
+            this.depth = depth;
+        }
+
+        @Override
+        public String getValue() {
+            return value(node);
+        }
+
+        @Override
+        public void acceptChildren(Visitor visitor) {
+            walker.visitChildren(node, depth, visitor);
+        }
+    }
+
+    private final class FlyBlockQuote extends MdBlockQuote {
+        private final Walker walker;
+        private final int depth;
+        private int node;
+
+        FlyBlockQuote(Walker walker, int depth) {
+            super(null);
+            this.walker = walker;
+            this.depth = depth;
+        }
+
+        @Override
+        public String getValue() {
+            return value(node);
+        }
+
+        @Override
+        public void acceptChildren(Visitor visitor) {
+            walker.visitChildren(node, depth, visitor);
+        }
+    }
+
+    private final class FlyText extends MdText {
+        private final Walker walker;
+        private final int depth;
+        private int node;
+
+        FlyText(Walker walker, int depth) {
+            super(null);
+            this.walker = walker;
+            this.depth = depth;
+        }
+
+        @Override
+        public String getValue() {
+            return value(node);
+        }
+
+        @Override
+        public CharSequence getSource() {
+            return valueLengths[node] == NONE ? null : getValues();
+        }
+
+        @Override
+        public int getStart() {
+            return valueLengths[node] == NONE ? 0 : valueOffsets[node];
+        }
+
+        @Override
+        public int getEnd() {
+            return valueLengths[node] == NONE ? 0 : valueOffsets[node] + valueLengths[node];
+        }
+
+        @Override
+        public void acceptChildren(Visitor visitor) {
+            walker.visitChildren(node, depth, visitor);
+        }
+    }
+
+    private final class FlyBreak extends MdBreak {
+        private final Walker walker;
+        private final int depth;
+        private int node;
+
+        FlyBreak(Walker walker, int depth) {
+            this.walker = walker;
+            this.depth = depth;
+        }
+
+        @Override
+        public String getValue() {
+            return value(node);
+        }
+
+        @Override
+        public void acceptChildren(Visitor visitor) {
+            walker.visitChildren(node, depth, visitor);
+        }
+    }
+
+    private final class FlyEmphasis extends MdEmphasis {
+        private final Walker walker;
+        private final int depth;
+        private int node;
+
+        FlyEmphasis(Walker walker, int depth) {
+            super("*");
+            this.walker = walker;
+            this.depth = depth;
+        }
+
+        @Override
+        public Kind getKind() {
+            return KINDS[infos[node]];
+        }
+
+        @Override
+        public String getValue() {
+            return value(node);
+        }
+
+        @Override
+        public void acceptChildren(Visitor visitor) {
+            walker.visitChildren(node, depth, visitor);
+        }
+    }
+}
@@ -10,6 +10,7 @@ import java.util.ListIterator;
 
 public class MdDoc extends MdNode {
     private File filePath;
+    private int sourceLength = -1;  // a hint for the size of the output, set by the parser
 
     public MdDoc() {
     }
@@ -27,6 +28,17 @@ public class MdDoc extends MdNode {
         this.filePath = filePath;
     }
 
+    /**
+     * @return the number of chars of the markdown the document was parsed from, -1 if it is unknown
+     */
+    public int getSourceLength() {
+        return sourceLength;
+    }
+
+    public void setSourceLength(int sourceLength) {
+        this.sourceLength = sourceLength;
+    }
+
 
     @Override
     public void accept(Visitor visitor) {
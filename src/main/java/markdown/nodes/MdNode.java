@@ -1,14 +1,32 @@
 package markdown.nodes;
 
+import markdown.interpreter.TreeVisitor;
 import markdown.interpreter.Visitor;
 
-import java.util.ArrayList;
+import java.util.AbstractList;
+import java.util.ArrayDeque;
+import java.util.Arrays;
 import java.util.List;
 import java.util.Objects;
+import java.util.RandomAccess;
 
+/**
+ * MdNode
+ * <p>
+ * The children are kept in an array which is only allocated with the first child, so the leaves, which are most
+ * of the nodes of a document, hold no child storage at all. trimToSize() cuts the arrays down to the number of
+ * children once a tree is complete.
+ * <p>
+ * walk(...), equals, hashCode and the toString-methods go through the tree with an explicit stack, so no
+ * nesting of quotes or emphasis can overflow the stack of the thread.
+ */
 public abstract class MdNode implements Composable<MdNode> {
+    private static final MdNode[] NO_CHILDREN = {};
+    private static final int INITIAL_CAPACITY = 2;
+
     private MdNode parent;
-    private List<MdNode> children = new ArrayList<>();
+    private MdNode[] children = NO_CHILDREN;
+    private int childCount;
 
     private String value;
 
@@ -32,26 +50,74 @@ public abstract class MdNode implements Composable<MdNode> {
     }
 
 
+    /**
+     * @return a live view of the children; changing it changes the children of this node, as with addChild(...)
+     */
     @Override
     public List<MdNode> getChildren() {
-        return children;
+        return new Children();
+    }
+
+    public int getChildCount() {
+        return childCount;
+    }
+
+    public MdNode getChild(int index) {
+        Objects.checkIndex(index, childCount);
+        return children[index];
+    }
+
+    @Override
+    public boolean isLeaf() {
+        return childCount == 0;
     }
 
     @Override
     public void addChild(MdNode child) {
-        children.add(child);
+        addChild(childCount, child);
+    }
+
+    @Override
+    public void addChild(int index, MdNode child) {
+        Objects.checkIndex(index, childCount + 1);
+        if (childCount == children.length)
+            children = Arrays.copyOf(children, Math.max(INITIAL_CAPACITY, childCount + (childCount >> 1)));
+        System.arraycopy(children, index, children, index + 1, childCount - index);
+        children[index] = child;
+        childCount++;
         child.setParent(this);
     }
 
     @Override
-    public boolean removeChild(MdNode child) {
-        if (children.remove(child)) {
-            child.setParent(null);
-            return true;
-        } else
-            return false;
+    public MdNode removeChild(int index) {
+        Objects.checkIndex(index, childCount);
+        MdNode child = children[index];
+        System.arraycopy(children, index + 1, children, index, childCount - index - 1);
+        children[--childCount] = null;
+        child.setParent(null);
+        return child;
     }
 
+    @Override
+    public MdNode setChild(int index, MdNode child) {
+        Objects.checkIndex(index, childCount);
+        MdNode previous = children[index];
+        children[index] = child;
+        previous.setParent(null);
+        child.setParent(this);
+        return previous;
+    }
+
+    @Override
+    public boolean removeChild(MdNode child) {
+        for (int i = 0; i < childCount; i++) {
+            if (Objects.equals(children[i], child)) {
+                removeChild(i);
+                return true;
+            }
+        }
+        return false;
+    }
 
     public String getValue() {
         return value;
@@ -64,9 +130,71 @@ public abstract class MdNode implements Composable<MdNode> {
 
     public abstract void accept(Visitor visitor);
 
+    /**
+     * Visit the children with a visitor which recurses through them: every level of the tree takes a few stack
+     * frames, so a deeply nested document is better visited by walk(...).
+     */
     public void acceptChildren(Visitor visitor) {
-        for ( MdNode child : children )
-            child.accept(visitor);
+        for ( int i = 0; i < childCount; i++ )
+            children[i].accept(visitor);
+    }
+
+    /**
+     * Visit this node and all its descendants in document order, with an explicit stack instead of recursion.
+     */
+    public void walk(TreeVisitor visitor) {
+        if (!visitor.enter(this))
+            return;
+        MdNode[] nodes = new MdNode[16];    // the path from this node down to the current one
+        int[] nextChild = new int[16];
+        int top = 0;
+        nodes[0] = this;
+        while (top >= 0) {
+            MdNode node = nodes[top];
+            int i = nextChild[top];
+            if (i == node.childCount) {
+                nodes[top--] = null;
+                visitor.exit(node);
+                continue;
+            }
+            nextChild[top] = i + 1;
+            MdNode child = node.children[i];
+            if (!visitor.enter(child))
+                continue;
+            if (child.childCount == 0) {
+                visitor.exit(child);
+                continue;
+            }
+            if (++top == nodes.length) {
+                nodes = Arrays.copyOf(nodes, top * 2);
+                nextChild = Arrays.copyOf(nextChild, top * 2);
+            }
+            nodes[top] = child;
+            nextChild[top] = 0;
+        }
+    }
+
+    /**
+     * Cut the child arrays of this node and all its descendants down to the number of children.
+     *
+     * @return the number of nodes of the tree, this node included
+     */
+    public int trimToSize() {
+        int[] count = {0};
+        walk(new TreeVisitor() {
+            @Override
+            public boolean enter(MdNode node) {
+                if (node.children.length != node.childCount)
+                    node.children = node.childCount == 0 ? NO_CHILDREN : Arrays.copyOf(node.children, node.childCount);
+                count[0]++;
+                return true;
+            }
+
+            @Override
+            public void exit(MdNode node) {
+            }
+        });
+        return count[0];
     }
 
 
@@ -77,33 +205,126 @@ public abstract class MdNode implements Composable<MdNode> {
 
     public String toStringRecursive(boolean showType) {
         StringBuilder sb = new StringBuilder();
-        if( showType )
-            sb.append( toString() );
-        if( !isLeaf() ) {
-            sb.append("[");
-            boolean isFirst = true;
-            for (MdNode child : children) {
-                if (isFirst)
-                    isFirst = false;
-                else
-                    sb.append(", ");
-                sb.append(child.toStringRecursive(true));
+        MdNode root = this;
+        walk(new TreeVisitor() {
+            private boolean isFirst;
+
+            @Override
+            public boolean enter(MdNode node) {
+                if (node != root) {
+                    if (!isFirst)
+                        sb.append(", ");
+                    sb.append(node.toString());
+                } else if (showType)
+                    sb.append(node.toString());
+                if (!node.isLeaf())
+                    sb.append("[");
+                isFirst = !node.isLeaf();
+                return true;
             }
-            sb.append("] ");
-        }
+
+            @Override
+            public void exit(MdNode node) {
+                if (!node.isLeaf())
+                    sb.append("] ");
+                isFirst = false;
+            }
+        });
         return sb.toString();
     }
 
+    /**
+     * Two nodes are equal when they are of the same class, with equal values and equal children. The trees are
+     * compared node by node with an explicit stack.
+     */
     @Override
     public boolean equals(Object o) {
         if (this == o) return true;
         if (o == null || getClass() != o.getClass()) return false;
-        MdNode mdNode = (MdNode) o;
-        return children.equals(mdNode.children) && Objects.equals(value, mdNode.value);
+        ArrayDeque<MdNode> pending = new ArrayDeque<>();    // pairs of nodes which are yet to be compared
+        pending.push((MdNode) o);
+        pending.push(this);
+        while (!pending.isEmpty()) {
+            MdNode node = pending.pop();
+            MdNode other = pending.pop();
+            if (node == other)
+                continue;
+            if (node.getClass() != other.getClass() || node.childCount != other.childCount
+                    || !Objects.equals(node.getValue(), other.getValue()))
+                return false;
+            for (int i = node.childCount - 1; i >= 0; i--) {
+                pending.push(other.children[i]);
+                pending.push(node.children[i]);
+            }
+        }
+        return true;
     }
 
+    /**
+     * The hash of the children as a list, combined with the hash of the value.
+     */
     @Override
     public int hashCode() {
-        return Objects.hash(children, value);
+        HashVisitor visitor = new HashVisitor();
+        walk(visitor);
+        return visitor.hash;
+    }
+
+
+    // helpers:
+    /**
+     * The view of getChildren(), all changes go through the methods of the node, so the parents stay right.
+     */
+    private final class Children extends AbstractList<MdNode> implements RandomAccess {
+        @Override
+        public MdNode get(int index) {
+            return getChild(index);
+        }
+
+        @Override
+        public int size() {
+            return childCount;
+        }
+
+        @Override
+        public MdNode set(int index, MdNode child) {
+            return setChild(index, child);
+        }
+
+        @Override
+        public void add(int index, MdNode child) {
+            modCount++;
+            addChild(index, child);
+        }
+
+        @Override
+        public MdNode remove(int index) {
+            modCount++;
+            return removeChild(index);
+        }
+    }
+
+    /**
+     * Computes hashCode() bottom-up: every level of the walk sums up the hashes of its children.
+     */
+    private static final class HashVisitor implements TreeVisitor {
+        private int[] childHashes = new int[16];
+        private int depth = -1;
+        private int hash;
+
+        @Override
+        public boolean enter(MdNode node) {
+            if (++depth == childHashes.length)
+                childHashes = Arrays.copyOf(childHashes, depth * 2);
+            childHashes[depth] = 1;
+            return true;
+        }
+
+        @Override
+        public void exit(MdNode node) {
+            hash = Objects.hash(childHashes[depth--], node.getValue());
+            if (depth >= 0)
+                childHashes[depth] = 31 * childHashes[depth] + hash;
+        }
     }
-}
\ No newline at end of file
+}
@@ -7,8 +7,49 @@ import markdown.parser.MarkdownTokenType;
 import java.util.ListIterator;
 
 public class MdText extends MdNode {
+    // the text is the range [start, end) of the source, the value is materialized on demand:
+    private CharSequence source;
+    private int start;
+    private int end;
+
     public MdText(String value) {
         super(value);
+        setRange(value);
+    }
+
+    public MdText(CharSequence source, int start, int end) {
+        this.source = source;
+        this.start = start;
+        this.end = end;
+    }
+
+
+    @Override
+    public String getValue() {
+        String value = super.getValue();
+        if (value == null && source != null) {
+            value = source.subSequence(start, end).toString();
+            super.setValue(value);
+        }
+        return value;
+    }
+
+    @Override
+    public void setValue(String value) {
+        super.setValue(value);
+        setRange(value);
+    }
+
+    public CharSequence getSource() {
+        return source;
+    }
+
+    public int getStart() {
+        return start;
+    }
+
+    public int getEnd() {
+        return end;
     }
 
 
@@ -23,4 +64,12 @@ public class MdText extends MdNode {
                 "value='" + getValue() + '\'' +
                 '}';
     }
+
+
+    // helpers:
+    private void setRange(String value) {
+        source = value;
+        start = 0;
+        end = value != null ? value.length() : 0;
+    }
 }
@@ -0,0 +1,479 @@
+package markdown.parser;
+
+import markdown.nodes.MdDoc;
+import markdown.nodes.MdNode;
+
+import java.util.*;
+
+/**
+ * IncrementalParser
+ * <p>
+ * Keeps the MdDoc of a text up to date while the text is edited, e.g. for a live-preview: an edit only
+ * re-lexes and re-parses the top-level blocks around it and splices the new nodes into the existing
+ * document, the nodes of all the other blocks are reused.
+ * <p>
+ * The text is kept as a list of segments, which are cut behind blank lines, where the lexer is at a line
+ * start again. Per segment the parser remembers the tokens and where the top-level blocks start. After an
+ * edit, the parsing starts at a block in front of the edited segments, which can not have looked into them,
+ * and it stops as soon as it reaches a known block-start behind them: from there on the tokens are the same
+ * as before, so the old blocks are still valid. The document is always the same as the one MarkdownParser
+ * creates out of the whole new text.
+ */
+public class IncrementalParser {
+    // the parser looks at most this many tokens past the end of a block, see MarkdownParser.parseBlock():
+    private static final int LOOKAHEAD = 4;
+
+    private final boolean isCreateCRLFEofToken;
+    private final ArrayList<Segment> segments = new ArrayList<>();
+    private int valid;      // the number of leading segments whose start and childOffset are up to date
+    private MdDoc doc;
+    private int length;     // of the whole text
+
+
+    public IncrementalParser() {
+        this(true);
+    }
+
+    public IncrementalParser(boolean isCreateCRLFEofToken) {
+        this.isCreateCRLFEofToken = isCreateCRLFEofToken;
+    }
+
+
+    // getters:
+    public MdDoc getDoc() {
+        return doc;
+    }
+
+    public int getSegmentCount() {
+        return segments.size();
+    }
+
+    // operations:
+    /**
+     * Parse the whole text, this is the start for the following edits.
+     */
+    public MdDoc parse(CharSequence text) {
+        segments.clear();
+        valid = 0;
+        doc = new MdDoc();
+        length = 0;
+        update(0, -1, text.toString(), (char) -1, text.length());
+        return doc;
+    }
+
+    /**
+     * Apply an edit of the text to its document.
+     *
+     * @param previous      the document of oldText, as returned by the last call to parse(...) or reparse(...)
+     * @param oldText       the text before the edit
+     * @param offset        where the edit starts in oldText
+     * @param removedLength the number of chars removed at offset
+     * @param insertedText  the text inserted at offset
+     * @return the updated document; it is previous itself, whose unchanged blocks are still the same node objects
+     */
+    public MdDoc reparse(MdDoc previous, CharSequence oldText, int offset, int removedLength, CharSequence insertedText) {
+        Objects.checkFromIndexSize(offset, removedLength, oldText.length());
+        if (previous == null || previous != doc || oldText.length() != length) {
+            // not the document of this parser: start over
+            return parse(new StringBuilder(oldText.length() - removedLength + insertedText.length())
+                    .append(oldText, 0, offset)
+                    .append(insertedText)
+                    .append(oldText, offset + removedLength, oldText.length()));
+        }
+
+        // the segments to be lexed again: the one in front of the edit is included, because its last
+        // line-break may form a pair with the first inserted char
+        int first = segmentAt(Math.max(offset - 1, 0));
+        int last = segmentAt(offset + removedLength);
+        while (true) {
+            Segment lastSegment = segment(last);
+            int regionStart = segment(first).start;
+            int regionEnd = lastSegment.start + lastSegment.length;
+            String regionText = new StringBuilder(regionEnd - regionStart - removedLength + insertedText.length())
+                    .append(oldText, regionStart, offset)
+                    .append(insertedText)
+                    .append(oldText, offset + removedLength, regionEnd)
+                    .toString();
+            char nextChar = regionEnd < length ? oldText.charAt(regionEnd) : (char) -1;
+            if (update(first, last, regionText, nextChar, length - removedLength + insertedText.length()))
+                return doc;
+            last++;     // the region does not end at a line-start anymore: take the next segment too
+        }
+    }
+
+
+    // helpers:
+    /**
+     * A part of the text which ends behind a blank line, with its tokens and the blocks which start in it.
+     */
+    private static class Segment {
+        int start;                      // in the whole text
+        int childOffset;                // the index of its first block in the doc
+        final int length;
+        final List<MarkdownToken> tokens;
+        int[] blockStarts;              // the token-index of every block which starts here, one per node of the doc
+        int abortedAt = -1;             // the token-index where the document ended with a parse-error
+
+        Segment(int start, int length, List<MarkdownToken> tokens) {
+            this.start = start;
+            this.length = length;
+            this.tokens = tokens;
+        }
+
+        boolean isBlockStart(int index) {
+            return Arrays.binarySearch(blockStarts, index) >= 0 || abortedAt == index;
+        }
+
+        int countBlocksBefore(int index) {
+            int i = Arrays.binarySearch(blockStarts, index);
+            return i >= 0 ? i : -i - 1;
+        }
+    }
+
+    /**
+     * @return the segment, with its start and childOffset brought up to date
+     */
+    private Segment segment(int index) {
+        for (; valid <= index; valid++) {
+            Segment segment = segments.get(valid);
+            Segment previous = valid > 0 ? segments.get(valid - 1) : null;
+            segment.start = previous != null ? previous.start + previous.length : 0;
+            segment.childOffset = previous != null ? previous.childOffset + previous.blockStarts.length : 0;
+        }
+        return segments.get(index);
+    }
+
+    private int segmentAt(int position) {
+        // the segments behind the last edit are brought up to date only as far as they are needed:
+        while (valid < segments.size() && (valid == 0 || segment(valid - 1).start + segment(valid - 1).length <= position))
+            segment(valid);
+        int low = 0;
+        int high = valid - 1;
+        while (low < high) {
+            int mid = (low + high + 1) >>> 1;
+            if (segments.get(mid).start <= position)
+                low = mid;
+            else
+                high = mid - 1;
+        }
+        return low;
+    }
+
+    /**
+     * Replace the segments first..last with the lexed regionText, parse it and splice the result into the doc.
+     *
+     * @param nextChar  the char behind the region in the new text, (char) -1 at its end
+     * @param newLength the length of the whole new text
+     * @return false when the region does not end at a line-start of the new text; nothing was changed then
+     */
+    private boolean update(int first, int last, String regionText, char nextChar, int newLength) {
+        boolean atEnd = last == segments.size() - 1;
+        int regionStart = first < segments.size() ? segment(first).start : 0;
+        TokenBuffer buffer = new MarkdownLexer(atEnd && isCreateCRLFEofToken).tokenizeToBuffer(regionText);
+        if (!atEnd && !endsAtLineStart(buffer, regionText, nextChar))
+            return false;
+        List<Segment> region = split(buffer, regionText, regionStart);
+
+        // the parsing starts at a block which ended far enough in front of the region:
+        int parseSegment = first;
+        int parseIndex = 0;
+        int distance = 0;
+        for (int i = first - 1; i >= 0 && parseSegment == first; i--) {
+            Segment segment = segments.get(i);
+            int maxIndex = segment.tokens.size() + distance - LOOKAHEAD;
+            for (int j = segment.blockStarts.length - 1; j >= 0; j--) {
+                if (segment.blockStarts[j] <= maxIndex) {
+                    parseSegment = i;
+                    parseIndex = segment.blockStarts[j];
+                    break;
+                }
+            }
+            distance += segment.tokens.size();
+        }
+        if (parseSegment == first && first > 0) {
+            parseSegment = 0;   // no block ended far enough in front: parse from the very beginning
+            parseIndex = 0;
+        }
+
+        // parse until a known block-start behind the region is reached:
+        View view = new View(parseSegment, first, region, last + 1);
+        Cursor it = new Cursor(view, parseIndex);
+        List<MdNode> nodes = new ArrayList<>();
+        List<int[]> starts = new ArrayList<>();     // (view-segment, token-index) of every node
+        int[] aborted = null;
+        int syncSegment = -1;
+        int syncIndex = 0;
+        while (it.hasNext()) {
+            int s = it.segment;
+            int k = it.index;
+            if (view.isOld(s) && s >= view.regionEnd() && view.get(s).isBlockStart(k)) {
+                syncSegment = s;
+                syncIndex = k;
+                break;
+            }
+            try {
+                MdNode node = MarkdownParser.parseBlock(it, doc);
+                node.trimToSize();      // the doc itself keeps room for the next edits
+                nodes.add(node);
+                starts.add(new int[]{s, k});
+            } catch (MarkdownParseException e) {
+                e.printStackTrace();
+                aborted = new int[]{s, k};
+                break;
+            }
+        }
+
+        // splice the new blocks into the doc:
+        int childStart = segments.isEmpty() ? 0
+                : segment(parseSegment).childOffset + segments.get(parseSegment).countBlocksBefore(parseIndex);
+        int childEnd = doc.getChildren().size();
+        if (syncSegment >= 0)
+            childEnd = segment(view.indexOf(syncSegment)).childOffset + view.get(syncSegment).countBlocksBefore(syncIndex);
+        int replacedChildren = Math.min(childEnd - childStart, nodes.size());
+        for (int i = 0; i < replacedChildren; i++)
+            doc.setChild(childStart + i, nodes.get(i));
+        for (int i = childEnd - 1; i >= childStart + replacedChildren; i--)
+            doc.removeChild(i);
+        for (int i = replacedChildren; i < nodes.size(); i++)
+            doc.addChild(childStart + i, nodes.get(i));
+
+        // and remember where they start:
+        int endSegment = syncSegment >= 0 ? syncSegment + 1 : view.size();
+        int next = 0;
+        for (int s = 0; s < endSegment; s++) {
+            Segment segment = view.get(s);
+            IntList blockStarts = new IntList();
+            if (s == 0 && parseIndex > 0) {
+                for (int blockStart : segment.blockStarts)
+                    if (blockStart < parseIndex)
+                        blockStarts.add(blockStart);
+            }
+            while (next < starts.size() && starts.get(next)[0] == s)
+                blockStarts.add(starts.get(next++)[1]);
+            int abortedAt = aborted != null && aborted[0] == s ? aborted[1] : -1;
+            if (s == syncSegment) {
+                for (int blockStart : segment.blockStarts)
+                    if (blockStart >= syncIndex)
+                        blockStarts.add(blockStart);
+                if (segment.abortedAt >= syncIndex)
+                    abortedAt = segment.abortedAt;
+            }
+            segment.blockStarts = blockStarts.toArray();
+            segment.abortedAt = abortedAt;
+        }
+
+        // replace the segments of the region, the ones behind it are brought up to date when they are needed:
+        int replaced = Math.min(last + 1 - first, region.size());
+        for (int i = 0; i < replaced; i++)
+            segments.set(first + i, region.get(i));
+        if (replaced < region.size())
+            segments.addAll(first + replaced, region.subList(replaced, region.size()));
+        else
+            segments.subList(first + replaced, last + 1).clear();
+        valid = Math.min(valid, parseSegment + 1);
+        length = newLength;
+        doc.setSourceLength(newLength);
+        return true;
+    }
+
+    /**
+     * @return true when the last token is a line-break which ends with the region, so the lexer is at a
+     * line-start there, also when it continues with nextChar
+     */
+    private static boolean endsAtLineStart(TokenBuffer buffer, String regionText, char nextChar) {
+        int last = buffer.size() - 1;
+        if (last < 0 || buffer.type(last) != MarkdownTokenType.CRLF)
+            return false;
+        int offset = buffer.offset(last);
+        int end = lineBreakEnd(regionText, offset);
+        if (end != regionText.length())
+            return false;
+        return end - offset == 2 || nextChar != pairOf(regionText.charAt(offset));
+    }
+
+    /**
+     * Cut the lexed region into segments behind its blank lines.
+     */
+    private static List<Segment> split(TokenBuffer buffer, String regionText, int regionStart) {
+        List<Segment> region = new ArrayList<>();
+        int segmentStart = 0;
+        int firstToken = 0;
+        int size = buffer.size();
+        for (int i = 1; i < size; i++) {
+            if (buffer.type(i) != MarkdownTokenType.CRLF || buffer.offset(i) >= regionText.length())
+                continue;
+            MarkdownTokenType previous = buffer.type(i - 1);
+            if (previous != MarkdownTokenType.CRLF && previous != MarkdownTokenType.BR)
+                continue;
+            int end = lineBreakEnd(regionText, buffer.offset(i));
+            if (end < regionText.length()) {
+                region.add(newSegment(buffer, regionText, regionStart, segmentStart, end, firstToken, i + 1));
+                segmentStart = end;
+                firstToken = i + 1;
+            }
+        }
+        region.add(newSegment(buffer, regionText, regionStart, segmentStart, regionText.length(), firstToken, size));
+        return region;
+    }
+
+    private static Segment newSegment(TokenBuffer buffer, String regionText, int regionStart, int start, int end,
+                                   int firstToken, int endToken) {
+        String text = regionText.substring(start, end);    // the nodes reference it, not the whole region
+        List<MarkdownToken> tokens = new ArrayList<>(endToken - firstToken);
+        for (int i = firstToken; i < endToken; i++) {
+            tokens.add(MarkdownTokenFactory.create(buffer.type(i), text,
+                    Math.min(buffer.offset(i) - start, text.length()), buffer.length(i)));
+        }
+        Segment segment = new Segment(regionStart + start, end - start, tokens);
+        segment.blockStarts = new int[0];
+        return segment;
+    }
+
+    private static int lineBreakEnd(CharSequence text, int offset) {
+        if (offset + 1 < text.length() && text.charAt(offset + 1) == pairOf(text.charAt(offset)))
+            return offset + 2;
+        return offset + 1;
+    }
+
+    private static char pairOf(char c) {
+        return c == '\n' ? '\r' : c == '\r' ? '\n' : 0;
+    }
+
+
+    /**
+     * The segments the parser walks over: the old ones in front of the region, the new ones of the region
+     * and the old ones behind it.
+     */
+    private class View {
+        private final int front;        // index of the first segment in front of the region
+        private final int first;        // index of the first segment of the region
+        private final List<Segment> region;
+        private final int behind;       // index of the first segment behind the region
+
+        View(int front, int first, List<Segment> region, int behind) {
+            this.front = front;
+            this.first = first;
+            this.region = region;
+            this.behind = behind;
+        }
+
+        int size() {
+            return first - front + region.size() + segments.size() - behind;
+        }
+
+        Segment get(int i) {
+            if (i < first - front)
+                return segments.get(front + i);
+            i -= first - front;
+            if (i < region.size())
+                return region.get(i);
+            return segments.get(behind + i - region.size());
+        }
+
+        int regionEnd() {
+            return first - front + region.size();
+        }
+
+        boolean isOld(int i) {
+            return i < first - front || i >= regionEnd();
+        }
+
+        /**
+         * @return the index of an old segment in the segments before the update
+         */
+        int indexOf(int i) {
+            return i < first - front ? front + i : behind + i - regionEnd();
+        }
+    }
+
+    /**
+     * A ListIterator over the tokens of all the segments of a view.
+     */
+    private static class Cursor implements ListIterator<MarkdownToken> {
+        private final View view;
+        int segment;
+        int index;      // of the next token in the segment
+        private int nextIndex;
+
+        Cursor(View view, int index) {
+            this.view = view;
+            this.index = index;
+        }
+
+        @Override
+        public boolean hasNext() {
+            while (segment < view.size() && index >= view.get(segment).tokens.size()) {
+                if (segment == view.size() - 1)
+                    return false;
+                segment++;
+                index = 0;
+            }
+            return segment < view.size();
+        }
+
+        @Override
+        public MarkdownToken next() {
+            if (!hasNext())
+                throw new NoSuchElementException();
+            nextIndex++;
+            return view.get(segment).tokens.get(index++);
+        }
+
+        @Override
+        public boolean hasPrevious() {
+            return nextIndex > 0;
+        }
+
+        @Override
+        public MarkdownToken previous() {
+            if (!hasPrevious())
+                throw new NoSuchElementException();
+            while (index == 0) {
+                segment--;
+                index = view.get(segment).tokens.size();
+            }
+            nextIndex--;
+            return view.get(segment).tokens.get(--index);
+        }
+
+        @Override
+        public int nextIndex() {
+            return nextIndex;
+        }
+
+        @Override
+        public int previousIndex() {
+            return nextIndex - 1;
+        }
+
+        @Override
+        public void remove() {
+            throw new UnsupportedOperationException("remove");
+        }
+
+        @Override
+        public void set(MarkdownToken token) {
+            throw new UnsupportedOperationException("set");
+        }
+
+        @Override
+        public void add(MarkdownToken token) {
+            throw new UnsupportedOperationException("add");
+        }
+    }
+
+    private static class IntList {
+        private int[] values = new int[4];
+        private int size;
+
+        void add(int value) {
+            if (size == values.length)
+                values = Arrays.copyOf(values, size * 2);
+            values[size++] = value;
+        }
+
+        int[] toArray() {
+            return Arrays.copyOf(values, size);
+        }
+    }
+}
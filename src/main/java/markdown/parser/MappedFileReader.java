@@ -0,0 +1,108 @@
+package markdown.parser;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.nio.CharBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.CodingErrorAction;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * MappedFileReader
+ * <p>
+ * Reads a local UTF-8 file through a memory-mapping of the file and decodes it on the fly into the
+ * caller's char-buffer, so the bytes are neither copied into a stream-buffer nor into a byte[] first.
+ * <p>
+ * Files larger than the region-size are mapped region by region. Malformed input is replaced like
+ * InputStreamReader does, so both ways of reading a file produce the same chars.
+ */
+class MappedFileReader extends Reader {
+    static final long DEFAULT_REGION_SIZE = 1L << 30;
+
+    private final FileChannel channel;
+    private final long fileSize;
+    private final long regionSize;
+    private final CharsetDecoder decoder = StandardCharsets.UTF_8.newDecoder()
+            .onMalformedInput(CodingErrorAction.REPLACE)
+            .onUnmappableCharacter(CodingErrorAction.REPLACE);
+
+    private MappedByteBuffer region;
+    private long regionStart;
+    private boolean lastRegion;
+    private boolean flushed;
+    private final CharBuffer pair = CharBuffer.allocate(2);   // for a surrogate pair which does not fit into the caller's buffer
+
+    MappedFileReader(Path path) throws IOException {
+        this(path, DEFAULT_REGION_SIZE);
+    }
+
+    MappedFileReader(Path path, long regionSize) throws IOException {
+        if (regionSize < 4)
+            throw new IllegalArgumentException("A region must hold at least one UTF-8 sequence");
+        this.channel = FileChannel.open(path, StandardOpenOption.READ);
+        this.regionSize = regionSize;
+        try {
+            this.fileSize = channel.size();
+            mapRegion(0);
+        } catch (IOException e) {
+            channel.close();
+            throw e;
+        }
+        pair.flip();
+    }
+
+    @Override
+    public int read(char[] cbuf, int off, int len) throws IOException {
+        if (len == 0)
+            return 0;
+        if (pair.hasRemaining()) {
+            cbuf[off] = pair.get();
+            return 1;
+        }
+
+        if (flushed)
+            return -1;
+
+        CharBuffer out = CharBuffer.wrap(cbuf, off, len);
+        while (true) {
+            CoderResult result = decoder.decode(region, out, lastRegion);
+            if (result.isError())
+                result.throwException();
+            if (out.position() > off)
+                return out.position() - off;
+
+            if (result.isOverflow()) {
+                // the next char is a surrogate pair, but there is room for a single char only
+                pair.clear();
+                decoder.decode(region, pair, lastRegion);
+                pair.flip();
+                cbuf[off] = pair.get();
+                return 1;
+            }
+            if (!lastRegion) {
+                mapRegion(regionStart + region.position());   // remaps the incomplete byte-sequence, if any
+            } else {
+                flushed = true;
+                decoder.flush(out);
+                return out.position() > off ? out.position() - off : -1;
+            }
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+
+    private void mapRegion(long start) throws IOException {
+        long size = Math.min(regionSize, fileSize - start);
+        region = channel.map(FileChannel.MapMode.READ_ONLY, start, size);
+        regionStart = start;
+        lastRegion = start + size == fileSize;
+    }
+}
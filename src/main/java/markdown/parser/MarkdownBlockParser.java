@@ -0,0 +1,74 @@
+package markdown.parser;
+
+import markdown.nodes.MdDoc;
+import markdown.nodes.MdNode;
+
+import java.io.Closeable;
+import java.io.File;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+/**
+ * MarkdownBlockParser
+ * <p>
+ * Parses a document lazily, one top-level block per next(): together with a MarkdownTokenStream, only the tokens
+ * and the nodes of the current block exist at once, whatever the size of the document. The blocks are the children
+ * which MarkdownParser.parse(...) adds to the MdDoc, but they are not added to a document here.
+ * <p>
+ * Like parse(...), an invalid token ends the document: the error is reported and hasNext() returns false.
+ */
+public class MarkdownBlockParser implements Iterator<MdNode>, Closeable {
+    private final MarkdownTokenStream tokens;
+    private final TokenCursor cursor;
+    private final MdDoc doc;        // for the messages only
+    private MdNode next;            // the parsed block which next() returns, null if it is not parsed yet
+    private boolean end;
+
+    /**
+     * @param filePath optional; the .md-file the tokens are lexed from
+     * @param tokens   the token-stream at its start, it is closed at the end of the document
+     */
+    public MarkdownBlockParser(File filePath, MarkdownTokenStream tokens) {
+        this.tokens = tokens;
+        this.cursor = TokenCursor.of(tokens);
+        this.doc = new MdDoc(filePath);
+    }
+
+
+    // Iterator:
+    @Override
+    public boolean hasNext() {
+        if (next == null && !end) {
+            try {
+                if (cursor.hasNext())
+                    next = MarkdownParser.parseBlock(cursor, doc);
+            } catch (MarkdownParseException e) {
+                e.printStackTrace();
+            }
+            if (next == null)
+                close();
+        }
+        return next != null;
+    }
+
+    @Override
+    public MdNode next() {
+        if (!hasNext())
+            throw new NoSuchElementException();
+        MdNode block = next;
+        next = null;
+        return block;
+    }
+
+
+    // Closeable:
+    /**
+     * End the document early; the token-stream and its input are closed.
+     */
+    @Override
+    public void close() {
+        end = true;
+        next = null;
+        tokens.close();
+    }
+}
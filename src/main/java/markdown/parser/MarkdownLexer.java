@@ -1,277 +1,162 @@
 package markdown.parser;
 
+import markdown.metrics.LexEvent;
+import markdown.metrics.MarkdownMetrics;
+
 import java.io.*;
 import java.net.URI;
 import java.net.URISyntaxException;
+import java.nio.ByteBuffer;
 import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
 import java.util.ArrayList;
 
 /**
  * MarkdownLexer
  * <p>
  * The Syntax of Markdown see: https://www.markdownguide.org/basic-syntax
+ * <p>
+ * A lexer only holds its configuration, which never changes: every input is scanned by a MarkdownScanner
+ * of its own. So one lexer can be shared by any number of threads without locking.
  */
 public class MarkdownLexer {
-    // lexer configuration:
-    private boolean isCreateCRLFEofToken;
+    static final int BUFFER_SIZE = 1 << 16;
 
-    // intermediate variables during lexing:
-    private BufferedReader reader;
-    private char currentChar;
-    private boolean checkCurrentCharAgain;
-    private StringBuilder currentText;
-    private boolean isNextCharAtLineStart;
-    private boolean eof;
-
-    private ArrayList<MarkdownToken> tokens;
+    // lexer configuration:
+    private final boolean isCreateCRLFEofToken;
 
     // construction:
     public MarkdownLexer() {
-        isCreateCRLFEofToken = true;
+        this(true);
     }
 
     public MarkdownLexer(boolean isCreateCRLFEofToken) {
         this.isCreateCRLFEofToken = isCreateCRLFEofToken;
     }
 
-    // getters & setters:
+    // getters:
     public boolean isCreateCRLFEofToken() {
         return isCreateCRLFEofToken;
     }
 
-    public void setCreateCRLFEofToken(boolean createCRLFEofToken) {
-        isCreateCRLFEofToken = createCRLFEofToken;
-    }
-
-    public ArrayList<MarkdownToken> getTokens() {
-        return tokens;
-    }
-
     // operations:
     public ArrayList<MarkdownToken> tokenize(InputStream input) {
-        doTokenize(input);
-        return tokens;
+        return doTokenize(new InputStreamReader(input, StandardCharsets.UTF_8), null);
     }
 
+    /**
+     * Lex the markdown at the uri; local files are memory-mapped and decoded on the fly,
+     * all the other schemes are read as a stream.
+     */
     public ArrayList<MarkdownToken> tokenize(URI uri) throws IOException {
-        return tokenize(uri.toURL().openStream());
-    }
-
-    public ArrayList<MarkdownToken> tokenize(String text) {
-        return tokenize(new ByteArrayInputStream(text.getBytes()));
-    }
-
-
-    private void doTokenize(InputStream input) {
-        tokens = new ArrayList<>();
-
-        try (BufferedReader reader = new BufferedReader(new InputStreamReader(input, StandardCharsets.UTF_8))) {
-            this.reader = reader;
-            currentText = new StringBuilder();
-            isNextCharAtLineStart = true;
-            boolean isCharAtLineStart = false;
-            eof = false;
-            while (!eof) {
-                currentChar = readChar();
-                isCharAtLineStart = isNextCharAtLineStart;
-                isNextCharAtLineStart = false;
-
-                do {
-                    checkCurrentCharAgain = false;
-
-                    if (tryEOF()) {
-                        break;
-                    } else if (isCharAtLineStart) {
-                        boolean tokenCreated = tryTokenIndent();    // ' '
-                        tokenCreated |= tryToken('#', MarkdownTokenType.H);          // '#'
-                        tokenCreated |= tryTokenUnnumberedList();   // '-', '*'
-                        tokenCreated |= tryToken('>', MarkdownTokenType.QUOTE);            // '>'
-                        if (!tokenCreated)
-                            checkCurrentCharAgain = true;
-                    } else {
-                        // !isCharAtLineStart
-                        boolean tokenCreated = tryTokenBreak();     // ' '
-                        if (!tokenCreated)
-                            checkCurrentCharAgain = true;
-                    }
-                    //
-                    if (checkCurrentCharAgain) {
-                        checkCurrentCharAgain = false;
-                        boolean tokenCreated = tryEOF();
-                        tokenCreated |= tryTokenCRLF();      // '\n', '\r'
-                        tokenCreated |= tryTokenHtmlTag();          // '<'...'>'
-                        tokenCreated |= tryTokenEmphasis();         // '*', '_'
-                        if (!tokenCreated)
-                            currentText.append(currentChar);
-                    }
-                } while (checkCurrentCharAgain && !eof);
-            }
-            tryCreateTextToken(currentText);
-        } catch (IOException e) {
-            e.printStackTrace();
-        }
+        return doTokenize(openReader(uri), uri);
+    }
+
+    /**
+     * Lex the text in memory: the created tokens do not copy their values, they reference their range of the text.
+     */
+    public ArrayList<MarkdownToken> tokenize(CharSequence text) {
+        boolean isRecording = MarkdownMetrics.isRecording();
+        long start = isRecording ? System.nanoTime() : 0;
+        LexEvent event = LexEvent.start();
+        ArrayList<MarkdownToken> tokens = new ArrayList<>();
+        MarkdownScanner scanner = new MarkdownScanner(isCreateCRLFEofToken);
+        scanner.begin(text, tokens);
+        while (scanner.lexNext()) ;
+        event.finish(null, text.length(), tokens.size());
+        if (isRecording)
+            MarkdownMetrics.recordLex(start, text.length(), tokens.size());
+        return tokens;
     }
 
-    private boolean tryCreateTextToken(StringBuilder currentText) {
-        if (!currentText.isEmpty()) {
-            tokens.add(MarkdownTokenFactory.createT(currentText.toString()));
-            currentText.setLength(0);
-            return true;
-        }
-        return false;
+    /**
+     * Lex the text in memory into a packed TokenBuffer, which takes no object per token.
+     */
+    public TokenBuffer tokenizeToBuffer(CharSequence text) {
+        boolean isRecording = MarkdownMetrics.isRecording();
+        long start = isRecording ? System.nanoTime() : 0;
+        LexEvent event = LexEvent.start();
+        TokenBuffer tokenBuffer = new TokenBuffer(text, text.length() / 8 + 16);
+        MarkdownScanner scanner = new MarkdownScanner(isCreateCRLFEofToken);
+        scanner.begin(text, tokenBuffer);
+        while (scanner.lexNext()) ;
+        event.finish(null, text.length(), tokenBuffer.size());
+        if (isRecording)
+            MarkdownMetrics.recordLex(start, text.length(), tokenBuffer.size());
+        return tokenBuffer;
     }
 
-    private boolean tryEOF() {
-        if (currentChar == (char) -1) {
-            eof = true;
-            checkCurrentCharAgain = false;
-            if (isCreateCRLFEofToken)
-                tokens.add(MarkdownTokenFactory.createCRLF());
-            return true;
-        } else
-            return false;
+    /**
+     * Lex UTF-8 encoded markdown in memory without decoding it: the offsets of the tokens count bytes, and the
+     * texts are ranges of a Utf8Source, which a Utf8ChannelWriter copies into its output as they are.
+     *
+     * @param utf8 the bytes between its position and limit are lexed, they are not copied
+     */
+    public TokenBuffer tokenizeToBuffer(ByteBuffer utf8) {
+        return tokenizeToBuffer(new Utf8Source(utf8));
     }
 
-    private boolean tryToken(char findChar, MarkdownTokenType tokenType) {
-        if (currentChar == findChar) {
-            StringBuilder heading = new StringBuilder();
-            do {
-                heading.append(currentChar);
-                currentChar = readChar();
-            } while (currentChar == findChar);
-            tokens.add(new MarkdownToken(tokenType, heading.toString()));
-            checkCurrentCharAgain = (currentChar != ' ');
-            return true;
-        }
-        return false;
+    /**
+     * Lex the input lazily: the tokens are created on demand while the returned stream is iterated,
+     * so the whole token-list never exists at once.
+     *
+     * @param input the markdown input, it is closed when the stream reaches its end or is closed
+     * @return a ListIterator over the tokens which can be passed to MarkdownParser.parse(...)
+     */
+    public MarkdownTokenStream tokenStream(InputStream input) {
+        return new MarkdownTokenStream(this, new InputStreamReader(input, StandardCharsets.UTF_8));
     }
 
-    private boolean tryTokenCRLF() {
-        if (currentChar == '\r') {
-            tryCreateTextToken(currentText);
-            tryReadNextChar('\n');
-            tokens.add(MarkdownTokenFactory.createCRLF());
-            isNextCharAtLineStart = true;
-            return true;
-        } else if (currentChar == '\n') {
-            tryCreateTextToken(currentText);
-            tryReadNextChar('\r');
-            tokens.add(MarkdownTokenFactory.createCRLF());
-            isNextCharAtLineStart = true;
-            return true;
-        }
-        return false;
+    /**
+     * @param input the markdown input, it is closed when the stream reaches its end or is closed
+     */
+    public MarkdownTokenStream tokenStream(Reader input) {
+        return new MarkdownTokenStream(this, input);
     }
 
-    private boolean tryTokenIndent() {
-        if (currentChar == ' ' || currentChar == '\t') {
-            StringBuilder space = new StringBuilder();
-            do {
-                space.append(currentChar);
-                currentChar = readChar();
-            } while (currentChar == ' ' || currentChar == '\t');
-            tokens.add(MarkdownTokenFactory.createINDENT(space.toString()));
-            return true;
-        }
-        return false;
+    public MarkdownTokenStream tokenStream(URI uri) throws IOException {
+        return new MarkdownTokenStream(this, openReader(uri));
     }
 
-    private boolean tryTokenBreak() {
-        if (currentChar == ' ') {
-            StringBuilder space = new StringBuilder();
-            do {
-                space.append(currentChar);
-                currentChar = readChar();
-            } while (currentChar == ' ');
-            if (space.length() > 1 && (currentChar == '\n' || currentChar == '\r')) {
-                tryCreateTextToken(currentText);
-                tokens.add(MarkdownTokenFactory.createBR());
-                if (currentChar == '\r')
-                    tryReadNextChar('\n');
-            } else {
-                currentText.append(space);
-                checkCurrentCharAgain = true;
-            }
-            return true;
-        }
-        return false;
+    public MarkdownTokenStream tokenStream(CharSequence text) {
+        return new MarkdownTokenStream(this, text);
     }
 
-    private boolean tryTokenEmphasis() {
-        if (currentChar == '*' || currentChar == '_') {
-            tryCreateTextToken(currentText);
-            StringBuilder emphasis = new StringBuilder();
-            do {
-                emphasis.append(currentChar);
-                currentChar = readChar();
-            } while (currentChar == '*' || currentChar == '_');
-            tokens.add(MarkdownTokenFactory.createEM(emphasis.toString()));
-            checkCurrentCharAgain = true;
-            return true;
-        }
-        return false;
-    }
 
-    private boolean tryTokenHtmlTag() {
-        if (currentChar == '<') {
+    private static Reader openReader(URI uri) throws IOException {
+        if ("file".equalsIgnoreCase(uri.getScheme())) {
+            Path path;
             try {
-                reader.mark(100);
-                StringBuilder html = new StringBuilder();
-                do {
-                    html.append(currentChar);
-                    currentChar = readChar();
-                } while (currentChar != '>' && currentChar != '\n' && currentChar != '\r' && currentChar != '<' && currentChar != ((char) -1) && html.length() < 100);
-                if (currentChar == '>') {
-                    tryCreateTextToken(currentText);
-                    html.append(currentChar);
-                    tokens.add(MarkdownTokenFactory.createHTML(html.toString()));
-                    return true;
-                } else {
-                    reader.reset();
-                    currentChar = readChar();
-                    currentText.append('<');
-                    return false;
-                }
-            } catch (IOException e) {
-                return false;
+                path = Path.of(uri);
+            } catch (IllegalArgumentException e) {
+                path = null;    // e.g. a file-uri with an authority, let the URL-handler deal with it
             }
-        } else
-            return false;
-    }
-
-    private boolean tryTokenUnnumberedList() {
-        if (currentChar == '-' || currentChar == '*' || currentChar == '+') {
-            if (tryReadNextChar(' '))
-                tokens.add(MarkdownTokenFactory.createUL(String.valueOf(currentChar)));
-            else
-                checkCurrentCharAgain = true;
-            return true;
+            if (path != null)
+                return new MappedFileReader(path);
         }
-        return false;
-    }
-
-
-    // helpers:
-    private char readChar() {
-        try {
-            return (char) reader.read();
+        return new InputStreamReader(uri.toURL().openStream(), StandardCharsets.UTF_8);
+    }
+
+    /**
+     * @param uri the source of the input for the LexEvent, null if unknown
+     */
+    private ArrayList<MarkdownToken> doTokenize(Reader input, URI uri) {
+        boolean isRecording = MarkdownMetrics.isRecording();
+        long start = isRecording ? System.nanoTime() : 0;
+        LexEvent event = LexEvent.start();
+        ArrayList<MarkdownToken> tokens = new ArrayList<>();
+
+        MarkdownScanner scanner = new MarkdownScanner(isCreateCRLFEofToken);
+        try (Reader reader = input) {
+            scanner.begin(reader, tokens, BUFFER_SIZE);
+            while (scanner.lexNext()) ;
         } catch (IOException e) {
-            return (char) -1;
-        }
-    }
-
-    private boolean tryReadNextChar(char c) {
-        try {
-            reader.mark(1);
-            char lineFeed = readChar();
-            if (lineFeed != c) {
-                reader.reset(); // equivalent for peek (in C#)
-                return false;
-            }
-            return true;
-        } catch (IOException e) {
-            return false;
+            e.printStackTrace();
         }
+        event.finish(uri, scanner.getCharsRead(), tokens.size());
+        if (isRecording)
+            MarkdownMetrics.recordLex(start, scanner.getCharsRead(), tokens.size());
+        return tokens;
     }
 
 
@@ -282,11 +167,11 @@ public class MarkdownLexer {
         String filename = "/markdown/basic_samples.md";
         System.out.println("Lexing file: " + filename);
         MarkdownLexer lexer = new MarkdownLexer();
-        lexer.tokenize(lexer.getClass().getResource(filename).toURI());
+        ArrayList<MarkdownToken> tokens = lexer.tokenize(lexer.getClass().getResource(filename).toURI());
         System.out.println();
 
-        System.out.println("Tokens: " + lexer.getTokens().size());
-        lexer.getTokens().forEach(System.out::println);
+        System.out.println("Tokens: " + tokens.size());
+        tokens.forEach(System.out::println);
     }
 
 }
@@ -1,8 +1,12 @@
 package markdown.parser;
 
+import markdown.metrics.MarkdownMetrics;
+import markdown.metrics.ParseEvent;
 import markdown.nodes.*;
 
 import java.io.File;
+import java.util.ArrayDeque;
+import java.util.Arrays;
 import java.util.List;
 import java.util.ListIterator;
 
@@ -11,134 +15,183 @@ import java.util.ListIterator;
  * <p>
  * The grammar rules are shown for documentation at the tryParse(...)-Methods using the BNF notation
  * BNF see https://en.wikipedia.org/wiki/Backus%E2%80%93Naur_form
+ * <p>
+ * The parser keeps no state outside of a parse(...)-call, so it can be used by any number of threads at once.
  */
 public class MarkdownParser {
     // parser:
     public static MdDoc parse(String content) {
         List<MarkdownToken> tokens = new MarkdownLexer(false).tokenize(content);
-        return parse(null, tokens.listIterator());
+        return parse(null, TokenCursor.of(tokens, 0, content.length()));
     }
 
+    /**
+     * Parse the MdDoc root-node out of the tokens of a list, see MarkdownLexer.tokenize(...); the length of their
+     * markdown is unknown then, so the doc's sourceLength is -1.
+     */
+    public static MdDoc parse(File filePath, List<MarkdownToken> tokens) {
+        return parse(filePath, TokenCursor.of(tokens, 0));
+    }
+
+    /**
+     * Parse the MdDoc root-node out of packed tokens, see MarkdownLexer.tokenizeToBuffer(...)
+     */
+    public static MdDoc parse(File filePath, TokenBuffer tokens) {
+        return parse(filePath, TokenCursor.of(tokens));
+    }
 
     /**
      * Parse the MdDoc root-node out of a token-stream where the iterator starts at the begin.
      *
      * @param filePath optional; a filePath to an .md-file where the initial markdown was stored
-     * @param it       the token-stream; it should point to the very head element
+     * @param it       the token-stream; it should point to the very head element,
+     *                 either a list-iterator or a lazy MarkdownTokenStream (the parser steps back at most two tokens)
      * @return the root-node of the markdown-hierarchy; on error it returns null
      * <p>
      * Rule (BNF):
      * document ::= {paragraph | heading}*
      */
     public static MdDoc parse(File filePath, ListIterator<MarkdownToken> it) {
+        return parse(filePath, TokenCursor.of(it));
+    }
+
+    static MdDoc parse(File filePath, TokenCursor cursor) {
+        boolean isRecording = MarkdownMetrics.isRecording();
+        long start = isRecording ? System.nanoTime() : 0;
+        ParseEvent event = ParseEvent.start();
         MdDoc doc = new MdDoc(filePath);
         try {
-            while (it.hasNext()) {
-                MdNode node;
-                if ((node = tryParseParagraph(it, null)) != null) {
-                    doc.addChild(node);
-                } else if ((node = tryParseHeading(it, null)) != null) {
-                    doc.addChild(node);
-                } else if ((node = tryParseHtml(it)) != null) {
-                    doc.addChild(node);
-                } else if ((node = tryParseBlockQuite(it, null)) != null) {
-                    doc.addChild(node);
-                } else {
-                    throw new MarkdownParseException("Invalid token!", doc, it.next());
-                }
-            }
+            while (cursor.hasNext())
+                doc.addChild(parseBlock(cursor, doc));
         } catch (MarkdownParseException e) {
             e.printStackTrace();
         }
 
+        int nodes = doc.trimToSize();
+        long sourceLength = cursor.sourceLength();
+        doc.setSourceLength((int) Math.min(sourceLength, Integer.MAX_VALUE));
+        event.finish(filePath, sourceLength, cursor.index(), nodes);
+        if (isRecording)
+            MarkdownMetrics.recordParse(start, cursor.index(), nodes);
         return doc;
     }
 
+    static MdNode parseBlock(ListIterator<MarkdownToken> it, MdDoc doc) throws MarkdownParseException {
+        return parseBlock(TokenCursor.of(it), doc);
+    }
+
+    /**
+     * Parse the next top-level block of the document, which is one iteration of the document-rule. The block
+     * only depends on the tokens from the current position on: the parser never steps back behind it.
+     * <p>
+     * The type of the next token decides which block is tried; the others are only tried when that block failed
+     * after consuming tokens, in the order paragraph, heading, html, blockquote.
+     *
+     * @param doc the document, for the error message only
+     * @throws MarkdownParseException when no block starts at the current token; this ends the document
+     */
+    static MdNode parseBlock(TokenCursor cursor, MdDoc doc) throws MarkdownParseException {
+        MdNode node;
+        MarkdownTokenType type = cursor.peekType();
+        if (type == MarkdownTokenType.QUOTE) {
+            if ((node = tryParseBlockQuote(cursor, 0)) != null)
+                return node;
+            throw invalidToken(cursor, doc);
+        } else if (type == MarkdownTokenType.H) {
+            if ((node = tryParseHeading(cursor, 0)) != null)
+                return node;
+        } else if (isParagraphContent(type)) {
+            if ((node = tryParseParagraph(cursor, 0)) != null)
+                return node;
+            if ((node = tryParseHeading(cursor, 0)) != null)
+                return node;
+        } else {
+            throw invalidToken(cursor, doc);
+        }
+        if ((node = tryParseHtml(cursor)) != null)
+            return node;
+        if ((node = tryParseBlockQuote(cursor, 0)) != null)
+            return node;
+        throw invalidToken(cursor, doc);
+    }
+
     /**
      * Try to parse an html-tag
      *
-     * @param it
+     * @param cursor
      * @return
      */
-    private static MdNode tryParseHtml(ListIterator<MarkdownToken> it) {
-        if (!it.hasNext())
-            return null;
-
+    private static MdNode tryParseHtml(TokenCursor cursor) {
         MarkdownToken token;
-        if ((token = readToken(MarkdownTokenType.HTML, it)) == null)
+        if ((token = readToken(MarkdownTokenType.HTML, cursor)) == null)
             return null;
 
-        String value = token.getValue().toLowerCase();
-        if (value.equals("<br>") || value.equals("<br/>"))
+        String value = token.getValue();
+        if (value.equalsIgnoreCase("<br>") || value.equalsIgnoreCase("<br/>"))
             return new MdBreak();
         else
-            return new MdHtml(token.getValue());
+            return new MdHtml(value);
     }
 
 
     /**
      * Try to parse an heading element
      *
-     * @param it
+     * @param cursor
+     * @param quoteDepth the depth of the blockquote the heading is in, 0 outside of a blockquote
      * @return
      * @throws MarkdownParseException Rule (BNF):
      *                                heading ::= "#" {"#"}* {text}* crlf
      */
-    private static MdHeading tryParseHeading(ListIterator<MarkdownToken> it, String checkBlockQuote) {
-        if (!it.hasNext())
-            return null;
-
+    private static MdHeading tryParseHeading(TokenCursor cursor, int quoteDepth) {
         // check for start-token MarkdownTokenType.H
         MarkdownToken token;
-        if ((token = readToken(MarkdownTokenType.H, it)) == null)
+        if ((token = readToken(MarkdownTokenType.H, cursor)) == null)
             return null;
-        if (checkBlockQuote != null) {
-            if ((token = readToken(MarkdownTokenType.QUOTE, it)) == null)
+        if (quoteDepth > 0) {
+            if ((token = readToken(MarkdownTokenType.QUOTE, cursor)) == null)
                 return null;    // not a blockquote
-            else if (!token.getValue().equals(checkBlockQuote)) {
-                it.previous();
+            else if (token.getLength() != quoteDepth) {
+                cursor.previous();
                 return null;    // it is a child-blockquote
             }
         }
 
-        MdHeading heading = new MdHeading(token.getValue().length());
+        MdHeading heading = new MdHeading(token.getLength());
 
         // add child-tokens
-        while (it.hasNext()) {
-            MdNode node = null;
-            if ((node = tryParseText(it)) != null) {
-                heading.addChild(node);
-            } else if (tryParseCrLf(it) != null) {
+        MarkdownTokenType type;
+        while ((type = cursor.peekType()) != null) {
+            if (type == MarkdownTokenType.T) {
+                heading.addChild(createText(cursor.next()));
+            } else if (type == MarkdownTokenType.CRLF) {
+                cursor.next();
                 return heading;
             } else
                 return null;    // Heading is invalid, no text-token!
         }
 
-        // check for end-token MarkdownTokenType.CRLF
-        if (it.hasNext() && ((token = readToken(MarkdownTokenType.CRLF, it)) == null))
-            return null;    // Heading is invalid, no CRLF token at the end
-
         return heading;
     }
 
     /**
      * Try to parse a paragraph element
      *
-     * @param it
+     * @param cursor
+     * @param quoteDepth the depth of the blockquote the paragraph is in, 0 outside of a blockquote
      * @return Rule (BNF):
      * paragraph ::= { text | crlf }* crlf
      */
-    private static MdParagraph tryParseParagraph(ListIterator<MarkdownToken> it, String checkBlockQuote) {
-        if (!it.hasNext())
+    private static MdParagraph tryParseParagraph(TokenCursor cursor, int quoteDepth) {
+        if (!cursor.hasNext())
             return null;
 
-
-        if (checkBlockQuote != null) {
-            MarkdownToken token;
-            if ((token = readToken(MarkdownTokenType.QUOTE, it)) == null)
+        MarkdownToken token;
+        if (quoteDepth > 0) {
+            if ((token = readToken(MarkdownTokenType.QUOTE, cursor)) == null)
                 return null;    // not a blockquote
-            else if (!token.getValue().equals(checkBlockQuote)) {
-                it.previous();
+            else if (token.getLength() != quoteDepth) {
+                cursor.previous();
                 return null;    // it is a child-blockquote
             }
         }
@@ -146,30 +199,31 @@ public class MarkdownParser {
 
         // add child-tokens
         MdNode node;
-        while (it.hasNext()) {
-            if ((node = tryParseText(it)) != null) {
-                paragraph.addChild(node);
-            } else if ((node = tryParseBreak(it)) != null) {
-                paragraph.addChild(node);
-            } else if ((node = tryParseHtml(it)) != null) {
-                paragraph.addChild(node);
-            } else if ((node = tryParseEmphasis(it)) != null) {
+        MarkdownTokenType type;
+        while ((type = cursor.peekType()) != null) {
+            if (type == MarkdownTokenType.T) {
+                paragraph.addChild(createText(cursor.next()));
+            } else if (type == MarkdownTokenType.BR) {
+                cursor.next();
+                paragraph.addChild(new MdBreak());
+            } else if (type == MarkdownTokenType.HTML) {
+                paragraph.addChild(tryParseHtml(cursor));
+            } else if (type == MarkdownTokenType.EM && (node = tryParseEmphasis(cursor)) != null) {
                 paragraph.addChild(node);
             } else {
-                MarkdownToken token;
-                if ((token = readToken(MarkdownTokenType.CRLF, it)) != null) {
-                    if (it.hasNext()) {
-                        if ((token = readToken(MarkdownTokenType.CRLF, it)) != null)
+                if (readToken(MarkdownTokenType.CRLF, cursor) != null) {
+                    if (cursor.hasNext()) {
+                        if (readToken(MarkdownTokenType.CRLF, cursor) != null)
                             break;  // double CRLF: end of paragraph
-                        if (checkBlockQuote != null) {
-                            if ((token = readToken(MarkdownTokenType.QUOTE, it)) == null)
+                        if (quoteDepth > 0) {
+                            if ((token = readToken(MarkdownTokenType.QUOTE, cursor)) == null)
                                 break;    // newline is not a blockquote: end of paragraph (and blockquote)
-                            else if (token.getValue().equals(checkBlockQuote)) {
-                                if ((token = readToken(MarkdownTokenType.CRLF, it)) != null)
+                            else if (token.getLength() == quoteDepth) {
+                                if (readToken(MarkdownTokenType.CRLF, cursor) != null)
                                     break;  // CRLF + QUOTE + CRLF: end of paragraph inside quote
-                            } else if (token.getValue().length() < checkBlockQuote.length()) {
+                            } else if (token.getLength() < quoteDepth) {
                                 // this blockquote is done, the parent blockquote takes over
-                                it.previous();
+                                cursor.previous();
                                 break;
                             }
                         }
@@ -187,88 +241,147 @@ public class MarkdownParser {
         return paragraph;
     }
 
-    private static MdBlockQuote tryParseBlockQuite(ListIterator<MarkdownToken> it, String checkParentBlockQuote) {
-        if (!it.hasNext())
-            return null;
+    /**
+     * Parse a blockquote with all the blockquotes nested into it. The open blockquotes are kept on a stack instead
+     * of parsing a nested one recursively, so no nesting depth can overflow the stack of the thread.
+     *
+     * @param parentQuoteDepth the depth of the parent blockquote, 0 for a top-level blockquote
+     */
+    private static MdBlockQuote tryParseBlockQuote(TokenCursor cursor, int parentQuoteDepth) {
         MarkdownToken token;
-        if ((token = readToken(MarkdownTokenType.QUOTE, it)) == null)
-            return null;    // this is not a block-quote
-        if (checkParentBlockQuote != null) {
-            if (checkParentBlockQuote.length() > token.getValue().length()) {
-                it.previous();
-                return null;    // this is a parent block-quote: close the child block-quote
-            }
-        }
+        if ((token = startBlockQuote(cursor, parentQuoteDepth)) == null)
+            return null;
 
-        MdBlockQuote blockQuote = new MdBlockQuote(token.getValue());
-        it.previous();
+        // the open blockquotes, the innermost one on top:
+        MdBlockQuote[] quotes = new MdBlockQuote[4];
+        int[] quoteDepths = new int[4];
+        int top = 0;
+        quotes[0] = new MdBlockQuote(token.getValue());
+        quoteDepths[0] = token.getLength();
 
         // add child-tokens
         MdNode node;
-        while (it.hasNext()) {
-            if ((node = tryParseParagraph(it, blockQuote.getValue())) != null) {
-                blockQuote.addChild(node);
-            } else if ((node = tryParseHeading(it, blockQuote.getValue())) != null) {
+        while (true) {
+            MdBlockQuote blockQuote = quotes[top];
+            int quoteDepth = quoteDepths[top];
+            MdBlockQuote result;    // the innermost blockquote is done, this is what it returns
+            if (!cursor.hasNext()) {
+                result = blockQuote;
+            } else if ((node = tryParseParagraph(cursor, quoteDepth)) != null) {
                 blockQuote.addChild(node);
-            } else if ((node = tryParseBlockQuite(it, blockQuote.getValue())) != null) {
+                continue;
+            } else if ((node = tryParseHeading(cursor, quoteDepth)) != null) {
                 blockQuote.addChild(node);
-            } else if (blockQuote.isLeaf())    // blockquote is empty
-                return null;
-            else
-                break;
+                continue;
+            } else if ((token = startBlockQuote(cursor, quoteDepth)) != null) {
+                if (++top == quotes.length) {
+                    quotes = Arrays.copyOf(quotes, top * 2);
+                    quoteDepths = Arrays.copyOf(quoteDepths, top * 2);
+                }
+                quotes[top] = new MdBlockQuote(token.getValue());
+                quoteDepths[top] = token.getLength();
+                continue;
+            } else {
+                result = blockQuote.isLeaf() ? null : blockQuote;   // null: the blockquote is empty
+            }
+
+            // close the innermost blockquote: its parent adds it, or is done as well when it failed
+            while (true) {
+                if (top == 0)
+                    return result;
+                quotes[top--] = null;
+                if (result != null) {
+                    quotes[top].addChild(result);
+                    break;
+                }
+                result = quotes[top].isLeaf() ? null : quotes[top];
+            }
         }
-        return blockQuote;
     }
 
-    private static MdEmphasis tryParseEmphasis(ListIterator<MarkdownToken> it) {
-        if (!it.hasNext())
-            return null;
+    /**
+     * @return the QUOTE-token of the blockquote which starts at the cursor, without consuming it; null if there
+     * is none, or if it is the quote of a parent, which closes the child blockquote
+     */
+    private static MarkdownToken startBlockQuote(TokenCursor cursor, int parentQuoteDepth) {
         MarkdownToken token;
-        if ((token = readToken(MarkdownTokenType.EM, it)) == null)
+        if ((token = readToken(MarkdownTokenType.QUOTE, cursor)) == null)
+            return null;    // this is not a block-quote
+        cursor.previous();
+        if (parentQuoteDepth > token.getLength())
+            return null;    // this is a parent block-quote: close the child block-quote
+        return token;
+    }
+
+    /**
+     * Parse an emphasis with all the emphasis nested into it. The open emphasis are kept on a stack instead of
+     * parsing a nested one recursively, so no nesting depth can overflow the stack of the thread.
+     */
+    private static MdEmphasis tryParseEmphasis(TokenCursor cursor) {
+        MarkdownToken token;
+        if ((token = readToken(MarkdownTokenType.EM, cursor)) == null)
             return null;
 
         MdEmphasis em = new MdEmphasis(token.getValue());
+        ArrayDeque<MdEmphasis> parents = null;      // the emphasis which em is nested in, the innermost first
         // add child-tokens
-        MdNode node;
-        while (it.hasNext()) {
-            if ((node = tryParseText(it)) != null) {
-                em.addChild(node);
-            } else if ((node = tryParseBreak(it)) != null) {
-                em.addChild(node);
-            } else if ((node = tryParseHtml(it)) != null) {
-                em.addChild(node);
-            } else {
-                if ((token = readToken(MarkdownTokenType.CRLF, it)) != null) {
-                    if (it.hasNext() && ((token = readToken(MarkdownTokenType.CRLF, it)) != null))
-                        return null;  // double CRLF: not a valid em-tag
-                    else
-                        em.addChild(new MdText(" "));
-                } else if ((token = readToken(MarkdownTokenType.EM, it)) != null) {
-                    if (token.getValue().equals(em.getValueReverse())) {
-                        break;  // it's the "end-tag"
-                    } else {
-                        // it's a child em-tag
-                        it.previous();
-                        if ((node = tryParseEmphasis(it)) != null) {
-                            em.addChild(node);
-                        } else {
-                            if (it.hasNext())
-                                it.next();  // failed to parse a child em-tag, skip it.
-                            return null;
-                        }
-                    }
+        MarkdownTokenType type;
+        while ((type = cursor.peekType()) != null) {
+            if (type == MarkdownTokenType.T) {
+                em.addChild(createText(cursor.next()));
+            } else if (type == MarkdownTokenType.BR) {
+                cursor.next();
+                em.addChild(new MdBreak());
+            } else if (type == MarkdownTokenType.HTML) {
+                em.addChild(tryParseHtml(cursor));
+            } else if (type == MarkdownTokenType.CRLF) {
+                cursor.next();
+                if (readToken(MarkdownTokenType.CRLF, cursor) != null)
+                    return failEmphasis(cursor, parents);  // double CRLF: not a valid em-tag
+                else
+                    em.addChild(new MdText(" "));
+            } else if (type == MarkdownTokenType.EM) {
+                token = cursor.next();
+                if (isReverse(token, em.getValue())) {
+                    // it's the "end-tag"
+                    if (parents == null || parents.isEmpty())
+                        return em;
+                    MdEmphasis child = em;
+                    em = parents.pop();
+                    em.addChild(child);
+                } else {
+                    // it's a child em-tag
+                    if (parents == null)
+                        parents = new ArrayDeque<>();
+                    parents.push(em);
+                    em = new MdEmphasis(token.getValue());
                 }
-            }
+            } else
+                return failEmphasis(cursor, parents);    // a token of a line-start (heading, blockquote, ...): not a valid em-tag
         }
 
+        // the end of the tokens closes all the open emphasis:
+        while (parents != null && !parents.isEmpty()) {
+            MdEmphasis child = em;
+            em = parents.pop();
+            em.addChild(child);
+        }
         return em;
     }
 
     /**
-     * Try to parse a simple text
-     *
-     * @param it
-     * @return Rule (BNF):
+     * A nested emphasis is invalid: every emphasis it is nested in skips one token and is invalid as well.
+     */
+    private static MdEmphasis failEmphasis(TokenCursor cursor, ArrayDeque<MdEmphasis> parents) {
+        for (int i = parents != null ? parents.size() : 0; i > 0 && cursor.hasNext(); i--)
+            cursor.next();  // failed to parse a child em-tag, skip it.
+        return null;
+    }
+
+    /**
+     * Create a simple text
+     * <p>
+     * Rule (BNF):
      * text ::= {character}*
      * <p>
      * character       ::= letter | digit | symbol
@@ -278,50 +391,46 @@ public class MarkdownParser {
      * <p>
      * crlf            ::= "\n" | "\r\n"
      */
-    private static MdText tryParseText(ListIterator<MarkdownToken> it) {
-        if (!it.hasNext())
-            return null;
-
-        MarkdownToken token;
-        if ((token = readToken(MarkdownTokenType.T, it)) == null)
-            return null;
-        return new MdText(token.getValue());
+    private static MdText createText(MarkdownToken token) {
+        return new MdText(token.getSource(), token.getStart(), token.getStart() + token.getLength());
     }
 
-    private static MdText tryParseCrLf(ListIterator<MarkdownToken> it) {
-        if (!it.hasNext())
-            return null;
-
-        MarkdownToken token;
-        if ((token = readToken(MarkdownTokenType.CRLF, it)) == null)
-            return null;
-
-        return new MdText("\n");
+    //
+    // Helpers:
+    //
+    private static boolean isParagraphContent(MarkdownTokenType type) {
+        return type == MarkdownTokenType.T || type == MarkdownTokenType.BR || type == MarkdownTokenType.HTML
+                || type == MarkdownTokenType.EM || type == MarkdownTokenType.CRLF;
     }
 
-    private static MdBreak tryParseBreak(ListIterator<MarkdownToken> it) {
-        if (!it.hasNext())
-            return null;
-
-        MarkdownToken token;
-        if ((token = readToken(MarkdownTokenType.BR, it)) == null)
-            return null;
+    /**
+     * @return the error for the token at the cursor, which is consumed; a failed block may also end at the end of the tokens
+     */
+    private static MarkdownParseException invalidToken(TokenCursor cursor, MdDoc doc) {
+        if (!cursor.hasNext())
+            return new MarkdownParseException("Unexpected end of the document!", doc, null);
+        return new MarkdownParseException("Invalid token!", doc, cursor.next());
+    }
 
-        return new MdBreak();
+    private static MarkdownToken readToken(MarkdownTokenType tokenType, TokenCursor cursor) {
+        if (cursor.peekType() != tokenType)
+            return null;    // not the correct tokenType
+        return cursor.next();
     }
 
-    //
-    // Helpers:
-    //
-    private static MarkdownToken readToken(MarkdownTokenType tokenType, ListIterator<MarkdownToken> it) {
-        if (!it.hasNext())
-            return null;
-        MarkdownToken token = it.next();
-        if (token.getType() != tokenType) {
-            // not the correct tokenType
-            it.previous();
-            return null;
+    /**
+     * @return true when the value of the token is the reverse of value, e.g. the end-tag "_*" of "*_"
+     */
+    private static boolean isReverse(MarkdownToken token, String value) {
+        int length = value.length();
+        if (token.getLength() != length)
+            return false;
+        CharSequence source = token.getSource();
+        int start = token.getStart();
+        for (int i = 0; i < length; i++) {
+            if (source.charAt(start + i) != value.charAt(length - 1 - i))
+                return false;
         }
-        return token;
+        return true;
     }
 }
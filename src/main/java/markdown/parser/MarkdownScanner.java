@@ -0,0 +1,442 @@
+package markdown.parser;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.nio.CharBuffer;
+import java.util.Arrays;
+import java.util.Collection;
+
+/**
+ * MarkdownScanner
+ * <p>
+ * A single run of the lexer over one input: it holds the scanned window of the input and all the intermediate
+ * state of the lexing. A scanner is used by one thread only, the MarkdownLexer creates a new one per input.
+ */
+final class MarkdownScanner {
+    private final boolean isCreateCRLFEofToken;
+
+    // intermediate variables during lexing:
+    private Reader reader;
+    private CharSequence source;    // the whole input when it is lexed in memory, the tokens then reference it
+    private boolean isUtf8;     // the source is a Utf8Source, so every char in buffer is a byte of UTF-8
+    private char[] buffer;      // the window of the input which is scanned, refilled block by block from the reader
+    private int position;       // index of the next char to read in buffer
+    private int limit;          // number of valid chars in buffer
+    private int mark;           // index in buffer which must survive a refill (lookahead, runs), -1 if none
+    private char currentChar;
+    private boolean checkCurrentCharAgain;
+    private int textStart;      // the current text is the range [textStart, textEnd) in buffer, -1 if there is none
+    private int textEnd;
+    private boolean isNextCharAtLineStart;
+    private boolean eof;
+    private long charsRead;     // the number of chars of the input which were read so far
+
+    private Collection<MarkdownToken> output;   // where the created tokens go, either tokens or a token-stream
+    private TokenBuffer tokenBuffer;            // instead of output: the packed tokens of an in-memory input
+
+    MarkdownScanner(boolean isCreateCRLFEofToken) {
+        this.isCreateCRLFEofToken = isCreateCRLFEofToken;
+    }
+
+    /**
+     * Prepare the scanner for a new input, the created tokens are added to output.
+     *
+     * @param bufferSize the initial size of the window, it grows when a lookahead does not fit
+     */
+    void begin(Reader reader, Collection<MarkdownToken> output, int bufferSize) {
+        this.reader = reader;
+        this.source = null;
+        this.isUtf8 = false;
+        this.output = output;
+        this.tokenBuffer = null;
+        buffer = new char[Math.max(bufferSize, 128)];
+        limit = 0;
+        charsRead = 0;
+        reset();
+    }
+
+    /**
+     * Prepare the scanner for an input which is completely in memory, the created tokens are added to output.
+     * The buffer then holds the whole text, so the tokens can reference their range of the text.
+     */
+    void begin(CharSequence text, Collection<MarkdownToken> output) {
+        this.reader = null;
+        this.source = text;
+        this.isUtf8 = text instanceof Utf8Source;
+        this.output = output;
+        this.tokenBuffer = null;
+        buffer = new char[text.length()];
+        if (text instanceof String)
+            ((String) text).getChars(0, buffer.length, buffer, 0);
+        else if (text instanceof Utf8Source)
+            ((Utf8Source) text).getChars(0, buffer.length, buffer, 0);
+        else
+            CharBuffer.wrap(text).get(buffer);
+        limit = buffer.length;
+        charsRead = limit;
+        reset();
+    }
+
+    /**
+     * Prepare the scanner for an input which is completely in memory, the created tokens are packed into tokenBuffer.
+     */
+    void begin(CharSequence text, TokenBuffer tokenBuffer) {
+        begin(text, (Collection<MarkdownToken>) null);
+        this.tokenBuffer = tokenBuffer;
+    }
+
+    private void reset() {
+        position = 0;
+        mark = -1;
+        textStart = -1;
+        textEnd = -1;
+        isNextCharAtLineStart = true;
+        eof = false;
+    }
+
+    long getCharsRead() {
+        return charsRead;
+    }
+
+    /**
+     * Lex the next character of the input, which creates zero, one or more tokens.
+     *
+     * @return false when the end of the input has been reached
+     */
+    boolean lexNext() {
+        if (eof)
+            return false;
+
+        currentChar = readChar();
+        boolean isCharAtLineStart = isNextCharAtLineStart;
+        isNextCharAtLineStart = false;
+
+        do {
+            checkCurrentCharAgain = false;
+
+            if (tryEOF()) {
+                break;
+            } else if (isCharAtLineStart) {
+                boolean tokenCreated = tryTokenIndent();    // ' '
+                tokenCreated |= tryToken('#', MarkdownTokenType.H);          // '#'
+                tokenCreated |= tryTokenUnnumberedList();   // '-', '*'
+                tokenCreated |= tryToken('>', MarkdownTokenType.QUOTE);            // '>'
+                if (!tokenCreated)
+                    checkCurrentCharAgain = true;
+                else if (!checkCurrentCharAgain)
+                    skipRestOfCodePoint();      // the currentChar is dropped, e.g. the one behind an indent
+            } else {
+                // !isCharAtLineStart
+                boolean tokenCreated = tryTokenBreak();     // ' '
+                if (!tokenCreated)
+                    checkCurrentCharAgain = true;
+            }
+            //
+            if (checkCurrentCharAgain) {
+                checkCurrentCharAgain = false;
+                boolean tokenCreated = tryEOF();
+                tokenCreated |= tryTokenCRLF();      // '\n', '\r'
+                tokenCreated |= tryTokenHtmlTag();          // '<'...'>'
+                tokenCreated |= tryTokenEmphasis();         // '*', '_'
+                if (!tokenCreated) {
+                    appendText(position - 1, position);     // the currentChar
+                    if (!isNextCharAtLineStart)
+                        appendPlainText();
+                }
+            }
+        } while (checkCurrentCharAgain && !eof);
+
+        if (eof)
+            tryCreateTextToken();
+        return !eof;
+    }
+
+    private boolean tryCreateTextToken() {
+        if (textStart >= 0) {
+            addToken(MarkdownTokenType.T, textStart, textEnd - textStart);
+            textStart = -1;
+            return true;
+        }
+        return false;
+    }
+
+    private boolean tryEOF() {
+        if (currentChar == (char) -1) {
+            eof = true;
+            checkCurrentCharAgain = false;
+            if (isCreateCRLFEofToken)
+                addToken(MarkdownTokenFactory.createCRLF(), position);
+            return true;
+        } else
+            return false;
+    }
+
+    private boolean tryToken(char findChar, MarkdownTokenType tokenType) {
+        if (currentChar == findChar) {
+            mark = position - 1;
+            int length = 0;
+            do {
+                length++;
+                currentChar = readChar();
+            } while (currentChar == findChar);
+            addRun(tokenType, findChar, mark, length);
+            mark = -1;
+            checkCurrentCharAgain = (currentChar != ' ');
+            return true;
+        }
+        return false;
+    }
+
+    private boolean tryTokenCRLF() {
+        if (currentChar == '\r') {
+            tryCreateTextToken();
+            addToken(MarkdownTokenFactory.createCRLF(), position - 1);
+            tryReadNextChar('\n');
+            isNextCharAtLineStart = true;
+            return true;
+        } else if (currentChar == '\n') {
+            tryCreateTextToken();
+            addToken(MarkdownTokenFactory.createCRLF(), position - 1);
+            tryReadNextChar('\r');
+            isNextCharAtLineStart = true;
+            return true;
+        }
+        return false;
+    }
+
+    private boolean tryTokenIndent() {
+        if (currentChar == ' ' || currentChar == '\t') {
+            readRun(MarkdownTokenType.INDENT, ' ', '\t');
+            return true;
+        }
+        return false;
+    }
+
+    private boolean tryTokenBreak() {
+        if (currentChar == ' ') {
+            mark = position - 1;
+            int spaces = 0;
+            do {
+                spaces++;
+                currentChar = readChar();
+            } while (currentChar == ' ');
+            if (spaces > 1 && (currentChar == '\n' || currentChar == '\r')) {
+                int at = mark;
+                mark = -1;
+                tryCreateTextToken();
+                addToken(MarkdownTokenFactory.createBR(), at);
+                if (currentChar == '\r')
+                    tryReadNextChar('\n');
+            } else {
+                appendText(mark, mark + spaces);
+                mark = -1;
+                checkCurrentCharAgain = true;
+            }
+            return true;
+        }
+        return false;
+    }
+
+    private boolean tryTokenEmphasis() {
+        if (currentChar == '*' || currentChar == '_') {
+            tryCreateTextToken();
+            readRun(MarkdownTokenType.EM, '*', '_');
+            checkCurrentCharAgain = true;
+            return true;
+        }
+        return false;
+    }
+
+    private boolean tryTokenHtmlTag() {
+        if (currentChar == '<') {
+            mark = position - 1;    // at the '<'
+            do {
+                currentChar = readChar();
+            } while (currentChar != '>' && currentChar != '\n' && currentChar != '\r' && currentChar != '<' && currentChar != ((char) -1) && position - mark - 1 < 100);
+            if (currentChar == '>') {
+                tryCreateTextToken();
+                addToken(MarkdownTokenType.HTML, mark, position - mark);
+                mark = -1;
+                return true;
+            } else {
+                // not a tag: the '<' is text, continue behind it
+                appendText(mark, mark + 1);
+                position = mark + 1;
+                mark = -1;
+                if (position == limit && !fill()) {
+                    currentChar = (char) -1;
+                    return true;    // the '<' was the last char, there is nothing left to check
+                }
+                currentChar = buffer[position++];
+                return false;
+            }
+        } else
+            return false;
+    }
+
+    private boolean tryTokenUnnumberedList() {
+        if (currentChar == '-' || currentChar == '*' || currentChar == '+') {
+            if (tryReadNextChar(' ')) {
+                addRun(MarkdownTokenType.UL, currentChar, position - 2, 1);
+                checkCurrentCharAgain = false;  // the item-marker consumed the currentChar, also behind a heading
+            } else
+                checkCurrentCharAgain = true;
+            return true;
+        }
+        return false;
+    }
+
+
+    /**
+     * Fast path for the text inside a line: the chars without any special meaning there are appended
+     * directly out of the buffer, instead of going through lexNext() one by one.
+     */
+    private void appendPlainText() {
+        do {
+            while (position < limit && isPlainChar(buffer[position]))
+                position++;
+            textEnd = position;
+        } while (position == limit && fill());
+    }
+
+    private static boolean isPlainChar(char c) {
+        return c != ' ' && c != '\n' && c != '\r' && c != '<' && c != '*' && c != '_' && c != (char) -1;
+    }
+
+
+    // helpers:
+    /**
+     * Read the run of the chars c1 and c2 starting at the currentChar into a token. The value is only built
+     * when both chars are mixed, the plain runs are shared instances of the MarkdownTokenFactory.
+     */
+    private void readRun(MarkdownTokenType tokenType, char c1, char c2) {
+        char first = currentChar;
+        boolean mixed = false;
+        mark = position - 1;
+        int length = 0;
+        do {
+            mixed |= currentChar != first;
+            length++;
+            currentChar = readChar();
+        } while (currentChar == c1 || currentChar == c2);
+
+        if (mixed)
+            addToken(tokenType, mark, length);
+        else
+            addRun(tokenType, first, mark, length);
+        mark = -1;
+    }
+
+    // the tokens go either as objects into the output or packed into the tokenBuffer; start is an index in buffer:
+    private void addToken(MarkdownTokenType tokenType, int start, int length) {
+        if (tokenBuffer != null)
+            tokenBuffer.add(tokenType, start, length);
+        else
+            output.add(createToken(tokenType, start, length));
+    }
+
+    private void addRun(MarkdownTokenType tokenType, char c, int start, int length) {
+        if (tokenBuffer != null)
+            tokenBuffer.add(tokenType, start, length);
+        else
+            output.add(MarkdownTokenFactory.createRun(tokenType, c, length));
+    }
+
+    private void addToken(MarkdownToken valuelessToken, int at) {
+        if (tokenBuffer != null)
+            tokenBuffer.add(valuelessToken.getType(), at, 0);
+        else
+            output.add(valuelessToken);
+    }
+
+    /**
+     * Create a token out of the range of the buffer. An in-memory input is referenced by the token,
+     * otherwise the value is copied because the buffer is going to be refilled.
+     */
+    private MarkdownToken createToken(MarkdownTokenType tokenType, int start, int length) {
+        if (source != null)
+            return new MarkdownToken(tokenType, source, start, length);
+        return new MarkdownToken(tokenType, new String(buffer, start, length));
+    }
+
+    /**
+     * Append the range [from, to) of the buffer to the current text, which always continues right behind it.
+     */
+    private void appendText(int from, int to) {
+        if (textStart < 0)
+            textStart = from;
+        textEnd = to;
+    }
+
+    private char readChar() {
+        if (position == limit && !fill())
+            return (char) -1;
+        return buffer[position++];
+    }
+
+    /**
+     * The currentChar is dropped: drop the rest of its code point as well, i.e. the continuation bytes of a UTF-8
+     * sequence or the low-surrogate of a pair, so no half of a char remains in the output.
+     */
+    private void skipRestOfCodePoint() {
+        if (isUtf8) {
+            if (currentChar < 0xc0 || currentChar > 0xff)
+                return;     // ASCII, a stray continuation byte or the end of the input
+            for (int i = 0; i < 3 && (position < limit || fill()) && (buffer[position] & 0xc0) == 0x80; i++)
+                position++;
+        } else if (Character.isHighSurrogate(currentChar) && (position < limit || fill())
+                && Character.isLowSurrogate(buffer[position])) {
+            position++;
+        }
+    }
+
+    private boolean tryReadNextChar(char c) {
+        if (position == limit && !fill())
+            return false;
+        if (buffer[position] != c)
+            return false;   // just peeked
+        position++;
+        return true;
+    }
+
+    /**
+     * Read the next block of the input into the buffer. The already consumed chars are dropped, except the
+     * ones behind the mark, the current text and the currentChar; the buffer only grows when it is full of chars which must be kept.
+     *
+     * @return false when the end of the input is reached
+     */
+    private boolean fill() {
+        if (reader == null)
+            return false;   // the whole input is in the buffer
+
+        int keep = Math.max(position - 1, 0);     // the currentChar may still become text
+        if (mark >= 0)
+            keep = Math.min(keep, mark);
+        if (textStart >= 0)
+            keep = Math.min(keep, textStart);
+        if (keep > 0) {
+            System.arraycopy(buffer, keep, buffer, 0, limit - keep);
+            limit -= keep;
+            position -= keep;
+            if (mark >= 0)
+                mark -= keep;
+            if (textStart >= 0) {
+                textStart -= keep;
+                textEnd -= keep;
+            }
+        }
+        if (limit == buffer.length)
+            buffer = Arrays.copyOf(buffer, buffer.length * 2);
+
+        try {
+            int count = reader.read(buffer, limit, buffer.length - limit);
+            if (count <= 0)
+                return false;
+            limit += count;
+            charsRead += count;
+            return true;
+        } catch (IOException e) {
+            return false;
+        }
+    }
+}
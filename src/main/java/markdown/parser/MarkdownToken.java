@@ -1,24 +1,39 @@
 package markdown.parser;
 
-import java.util.Objects;
-
+/**
+ * MarkdownToken
+ * <p>
+ * The value of a token is the range [start, start + length) of its source. Tokens lexed in memory
+ * reference the input itself, their value is only materialized as a String when getValue() is called.
+ */
 public class MarkdownToken {
     private final MarkdownTokenType type;
-    private final String value;
+    private final CharSequence source;
+    private final int start;
+    private final int length;
+    private String value;   // materialized on demand
 
     public MarkdownToken(MarkdownTokenType type) {
-        this.type = type;
-        this.value = "";
+        this(type, "");
     }
 
     public MarkdownToken(MarkdownTokenType type, String value) {
         this.type = type;
+        this.source = value;
+        this.start = 0;
+        this.length = value.length();
         this.value = value;
     }
 
     public MarkdownToken(MarkdownTokenType type, char value) {
+        this(type, String.valueOf(value));
+    }
+
+    public MarkdownToken(MarkdownTokenType type, CharSequence source, int start, int length) {
         this.type = type;
-        this.value = String.valueOf(value);
+        this.source = source;
+        this.start = start;
+        this.length = length;
     }
 
     public MarkdownTokenType getType() {
@@ -26,14 +41,29 @@ public class MarkdownToken {
     }
 
     public String getValue() {
+        String value = this.value;
+        if (value == null)
+            this.value = value = source.subSequence(start, start + length).toString();
         return value;
     }
 
+    public CharSequence getSource() {
+        return source;
+    }
+
+    public int getStart() {
+        return start;
+    }
+
+    public int getLength() {
+        return length;
+    }
+
     @Override
     public String toString() {
         return "MarkdownToken{" +
                 "type=" + type +
-                ", value='" + value + '\'' +
+                ", value='" + getValue() + '\'' +
                 '}';
     }
 
@@ -42,11 +72,21 @@ public class MarkdownToken {
         if (this == o) return true;
         if (o == null || getClass() != o.getClass()) return false;
         MarkdownToken that = (MarkdownToken) o;
-        return type == that.type && value.equals(that.value);
+        if (type != that.type || length != that.length)
+            return false;
+        for (int i = 0; i < length; i++) {
+            if (source.charAt(start + i) != that.source.charAt(that.start + i))
+                return false;
+        }
+        return true;
     }
 
     @Override
     public int hashCode() {
-        return Objects.hash(type, value);
+        // the same as Objects.hash(type, getValue()), without materializing the value
+        int h = 0;
+        for (int i = 0; i < length; i++)
+            h = 31 * h + source.charAt(start + i);
+        return 31 * (31 + type.hashCode()) + h;
     }
 }
@@ -1,24 +1,45 @@
 package markdown.parser;
 
+/**
+ * MarkdownTokenFactory
+ * <p>
+ * MarkdownTokens are immutable, so the factory hands out shared instances (flyweights) wherever the
+ * tokens can not be told apart: the valueless CRLF and BR tokens, and the short runs of the same
+ * char like "#", "##", "**", ">" or "    ", which repeat over and over in a document.
+ */
 public class MarkdownTokenFactory {
+    private static final MarkdownToken CRLF = new MarkdownToken(MarkdownTokenType.CRLF);
+    private static final MarkdownToken BR = new MarkdownToken(MarkdownTokenType.BR);
+
+    // the cached runs, indexed by the length of the run:
+    private static final MarkdownToken[] H_RUNS = createRuns(MarkdownTokenType.H, '#', 6);
+    private static final MarkdownToken[] QUOTE_RUNS = createRuns(MarkdownTokenType.QUOTE, '>', 8);
+    private static final MarkdownToken[] STAR_RUNS = createRuns(MarkdownTokenType.EM, '*', 3);
+    private static final MarkdownToken[] UNDERSCORE_RUNS = createRuns(MarkdownTokenType.EM, '_', 3);
+    private static final MarkdownToken[] SPACE_RUNS = createRuns(MarkdownTokenType.INDENT, ' ', 16);
+    private static final MarkdownToken[] TAB_RUNS = createRuns(MarkdownTokenType.INDENT, '\t', 4);
+    private static final MarkdownToken[] MINUS_RUNS = createRuns(MarkdownTokenType.UL, '-', 1);
+    private static final MarkdownToken[] STAR_ITEM_RUNS = createRuns(MarkdownTokenType.UL, '*', 1);
+    private static final MarkdownToken[] PLUS_RUNS = createRuns(MarkdownTokenType.UL, '+', 1);
+
     public static MarkdownToken createT(String text) {
         return new MarkdownToken(MarkdownTokenType.T, text);
     }
 
     public static MarkdownToken createCRLF() {
-        return new MarkdownToken(MarkdownTokenType.CRLF);
+        return CRLF;
     }
 
     public static MarkdownToken createINDENT(String indent) {
-        return new MarkdownToken(MarkdownTokenType.INDENT, indent);
+        return create(MarkdownTokenType.INDENT, indent);
     }
 
     public static MarkdownToken createBR() {
-        return new MarkdownToken(MarkdownTokenType.BR);
+        return BR;
     }
 
     public static MarkdownToken createH(String heading) {
-        return new MarkdownToken(MarkdownTokenType.H, heading);
+        return create(MarkdownTokenType.H, heading);
     }
 
     public static MarkdownToken createHTML(String html) {
@@ -26,15 +47,15 @@ public class MarkdownTokenFactory {
     }
 
     public static MarkdownToken createEM(String emphasis) {
-        return new MarkdownToken(MarkdownTokenType.EM, emphasis);
+        return create(MarkdownTokenType.EM, emphasis);
     }
 
     public static MarkdownToken createQUOTE(String quote) {
-        return new MarkdownToken(MarkdownTokenType.QUOTE, quote);
+        return create(MarkdownTokenType.QUOTE, quote);
     }
 
     public static MarkdownToken createUL(String unnumberedListItem) {
-        return new MarkdownToken(MarkdownTokenType.UL, unnumberedListItem);
+        return create(MarkdownTokenType.UL, unnumberedListItem);
     }
 
     public static MarkdownToken createNL(String numberedListItem) {
@@ -44,4 +65,71 @@ public class MarkdownTokenFactory {
     public static MarkdownToken createCODE(String code) {
         return new MarkdownToken(MarkdownTokenType.CODE, code);
     }
+
+    /**
+     * Create a token whose value is a run of the same char, without building the value first.
+     *
+     * @param tokenType the type of the token
+     * @param c         the repeated char
+     * @param length    the length of the run, at least 1
+     * @return the shared instance of the run, or a new token when the run is not cached
+     */
+    public static MarkdownToken createRun(MarkdownTokenType tokenType, char c, int length) {
+        MarkdownToken[] runs = runs(tokenType, c);
+        if (runs != null && length > 0 && length < runs.length)
+            return runs[length];
+        return new MarkdownToken(tokenType, String.valueOf(c).repeat(length));
+    }
+
+    /**
+     * Create a token whose value is the range [start, start + length) of the source, the shared instances
+     * are handed out where possible.
+     */
+    public static MarkdownToken create(MarkdownTokenType tokenType, CharSequence source, int start, int length) {
+        if (tokenType == MarkdownTokenType.CRLF)
+            return CRLF;
+        if (tokenType == MarkdownTokenType.BR)
+            return BR;
+        if (length > 0 && runs(tokenType, source.charAt(start)) != null) {
+            char c = source.charAt(start);
+            int i = 1;
+            while (i < length && source.charAt(start + i) == c)
+                i++;
+            if (i == length)
+                return createRun(tokenType, c, length);
+        }
+        return new MarkdownToken(tokenType, source, start, length);
+    }
+
+    // helpers:
+    private static MarkdownToken create(MarkdownTokenType tokenType, String value) {
+        int length = value.length();
+        if (length > 0 && length <= 16) {
+            char c = value.charAt(0);
+            int i = 1;
+            while (i < length && value.charAt(i) == c)
+                i++;
+            if (i == length)
+                return createRun(tokenType, c, length);
+        }
+        return new MarkdownToken(tokenType, value);
+    }
+
+    private static MarkdownToken[] runs(MarkdownTokenType tokenType, char c) {
+        return switch (tokenType) {
+            case H -> c == '#' ? H_RUNS : null;
+            case QUOTE -> c == '>' ? QUOTE_RUNS : null;
+            case EM -> c == '*' ? STAR_RUNS : c == '_' ? UNDERSCORE_RUNS : null;
+            case INDENT -> c == ' ' ? SPACE_RUNS : c == '\t' ? TAB_RUNS : null;
+            case UL -> c == '-' ? MINUS_RUNS : c == '*' ? STAR_ITEM_RUNS : c == '+' ? PLUS_RUNS : null;
+            default -> null;
+        };
+    }
+
+    private static MarkdownToken[] createRuns(MarkdownTokenType tokenType, char c, int maxLength) {
+        MarkdownToken[] runs = new MarkdownToken[maxLength + 1];
+        for (int length = 1; length <= maxLength; length++)
+            runs[length] = new MarkdownToken(tokenType, String.valueOf(c).repeat(length));
+        return runs;
+    }
 }
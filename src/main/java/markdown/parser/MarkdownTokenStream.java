@@ -0,0 +1,177 @@
+package markdown.parser;
+
+import markdown.metrics.LexEvent;
+import markdown.metrics.MarkdownMetrics;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.Reader;
+import java.util.ArrayDeque;
+import java.util.ListIterator;
+import java.util.NoSuchElementException;
+
+/**
+ * MarkdownTokenStream
+ * <p>
+ * A pull-based token-stream: the underlying lexer only runs when the next token is requested, so the
+ * parser can consume the tokens without the whole token-list being materialized.
+ * <p>
+ * The stream remembers the last tokens in a ring-buffer, so previous() can step back a bounded number of
+ * tokens, which is all the parser needs for its lookahead (it never steps back more than two tokens).
+ * <p>
+ * The lexing is recorded in the MarkdownMetrics when the stream reaches its end or is closed. Its latency is the
+ * time spent in the lexer only, while the LexEvent spans the whole stream, including the consumer's time.
+ */
+public class MarkdownTokenStream implements ListIterator<MarkdownToken>, Closeable {
+    public static final int DEFAULT_LOOKBEHIND = 16;
+
+    private final MarkdownScanner scanner;
+    private final Reader reader;
+    private final ArrayDeque<MarkdownToken> pending = new ArrayDeque<>();   // lexed, but not yet in the ring
+    private final MarkdownToken[] ring;
+
+    private int cursor;         // index of the token returned by next()
+    private int available;      // number of tokens which were moved into the ring so far
+    private boolean closed;
+
+    private final boolean isRecording;
+    private final LexEvent event;
+    private long lexNanos;      // the time spent in the lexer so far, when isRecording
+
+    MarkdownTokenStream(MarkdownLexer lexer, Reader reader) {
+        this(lexer, reader, DEFAULT_LOOKBEHIND);
+    }
+
+    MarkdownTokenStream(MarkdownLexer lexer, Reader reader, int lookbehind) {
+        this(lexer, reader, lookbehind, null);
+    }
+
+    MarkdownTokenStream(MarkdownLexer lexer, CharSequence text) {
+        this(lexer, null, DEFAULT_LOOKBEHIND, text);
+    }
+
+    private MarkdownTokenStream(MarkdownLexer lexer, Reader reader, int lookbehind, CharSequence text) {
+        if (lookbehind < 1)
+            throw new IllegalArgumentException("lookbehind must be at least 1");
+        this.scanner = new MarkdownScanner(lexer.isCreateCRLFEofToken());
+        this.reader = reader;
+        this.ring = new MarkdownToken[lookbehind];
+        this.isRecording = MarkdownMetrics.isRecording();
+        this.event = LexEvent.start();
+        if (reader != null)
+            scanner.begin(reader, pending, MarkdownLexer.BUFFER_SIZE);
+        else
+            scanner.begin(text, pending);
+    }
+
+
+    // getters:
+    /**
+     * @return the number of chars of the input which were lexed so far
+     */
+    long getCharsRead() {
+        return scanner.getCharsRead();
+    }
+
+
+    // ListIterator:
+    @Override
+    public boolean hasNext() {
+        return cursor < available || fetch();
+    }
+
+    @Override
+    public MarkdownToken next() {
+        if (!hasNext())
+            throw new NoSuchElementException();
+        return ring[cursor++ % ring.length];
+    }
+
+    /**
+     * @return the type of the next token without consuming it, null at the end
+     */
+    MarkdownTokenType peekType() {
+        return hasNext() ? ring[cursor % ring.length].getType() : null;
+    }
+
+    @Override
+    public boolean hasPrevious() {
+        return cursor > 0 && available - cursor < ring.length;
+    }
+
+    @Override
+    public MarkdownToken previous() {
+        if (cursor == 0)
+            throw new NoSuchElementException();
+        if (available - cursor >= ring.length)
+            throw new IllegalStateException("Stepped back more than " + ring.length + " tokens");
+        return ring[--cursor % ring.length];
+    }
+
+    @Override
+    public int nextIndex() {
+        return cursor;
+    }
+
+    @Override
+    public int previousIndex() {
+        return cursor - 1;
+    }
+
+    @Override
+    public void remove() {
+        throw new UnsupportedOperationException("remove");
+    }
+
+    @Override
+    public void set(MarkdownToken token) {
+        throw new UnsupportedOperationException("set");
+    }
+
+    @Override
+    public void add(MarkdownToken token) {
+        throw new UnsupportedOperationException("add");
+    }
+
+
+    // Closeable:
+    @Override
+    public void close() {
+        if (closed)
+            return;
+        closed = true;
+        long tokens = available + pending.size();
+        event.finish(null, scanner.getCharsRead(), tokens);
+        if (isRecording)
+            MarkdownMetrics.recordLex(System.nanoTime() - lexNanos, scanner.getCharsRead(), tokens);
+        if (reader == null)
+            return;
+        try {
+            reader.close();
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+
+
+    // helpers:
+    /**
+     * Run the lexer until it created at least one more token and move it into the ring.
+     *
+     * @return false when the end of the input was reached and there are no more tokens
+     */
+    private boolean fetch() {
+        long start = isRecording ? System.nanoTime() : 0;
+        boolean isEnd = false;
+        while (pending.isEmpty() && !closed && !isEnd)
+            isEnd = !scanner.lexNext();
+        if (isRecording)
+            lexNanos += System.nanoTime() - start;
+        if (isEnd)
+            close();
+        if (pending.isEmpty())
+            return false;
+        ring[available++ % ring.length] = pending.poll();
+        return true;
+    }
+}
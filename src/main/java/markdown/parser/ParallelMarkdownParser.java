@@ -0,0 +1,226 @@
+package markdown.parser;
+
+import markdown.metrics.MarkdownMetrics;
+import markdown.metrics.ParseEvent;
+import markdown.nodes.MdDoc;
+import markdown.nodes.MdNode;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+
+/**
+ * ParallelMarkdownParser
+ * <p>
+ * Lexes and parses a single big document on the cores of a fork-join pool: the text is cut into chunks at blank
+ * lines, where the lexer is at a line start again, so the chunks can be lexed independently. Then every chunk
+ * is parsed on its own, as if a top-level block started at its beginning, which is true for nearly all of them.
+ * <p>
+ * The parsed chunks are stitched together in order: a chunk whose blocks start where the blocks of the chunk
+ * before it end is taken over as it is. Otherwise, e.g. when a block of the chunk before runs into it, its blocks
+ * are parsed again from the real block-start on, until they are in step with the chunk again. So the MdDoc is
+ * always the same as the one MarkdownParser creates sequentially.
+ */
+public class ParallelMarkdownParser {
+    public static final int DEFAULT_CHUNK_SIZE = 1 << 18;
+
+    private final boolean isCreateCRLFEofToken;
+    private final ForkJoinPool pool;
+    private final int chunkSize;
+
+    public ParallelMarkdownParser(boolean isCreateCRLFEofToken) {
+        this(isCreateCRLFEofToken, ForkJoinPool.commonPool(), DEFAULT_CHUNK_SIZE);
+    }
+
+    /**
+     * @param chunkSize the minimum number of chars of a chunk; a smaller text is parsed in one piece
+     */
+    public ParallelMarkdownParser(boolean isCreateCRLFEofToken, ForkJoinPool pool, int chunkSize) {
+        if (chunkSize < 1)
+            throw new IllegalArgumentException("The chunk size must be positive");
+        this.isCreateCRLFEofToken = isCreateCRLFEofToken;
+        this.pool = pool;
+        this.chunkSize = chunkSize;
+    }
+
+
+    // getters:
+    public ForkJoinPool getPool() {
+        return pool;
+    }
+
+    public int getChunkSize() {
+        return chunkSize;
+    }
+
+    // operations:
+    public MdDoc parse(File filePath, CharSequence text) {
+        boolean isRecording = MarkdownMetrics.isRecording();
+        long startNanos = isRecording ? System.nanoTime() : 0;
+        ParseEvent event = ParseEvent.start();
+        String source = text.toString();
+        int[] cuts = cuts(source);
+        int chunkCount = cuts.length - 1;
+
+        // lex the chunks:
+        List<Callable<List<MarkdownToken>>> lexers = new ArrayList<>(chunkCount);
+        for (int i = 0; i < chunkCount; i++) {
+            boolean isLast = i == chunkCount - 1;
+            String chunkText = source.substring(cuts[i], cuts[i + 1]);
+            lexers.add(() -> new MarkdownLexer(isLast && isCreateCRLFEofToken).tokenize(chunkText));
+        }
+        int[] tokenStarts = new int[chunkCount + 1];
+        ArrayList<MarkdownToken> tokens = new ArrayList<>();
+        List<Future<List<MarkdownToken>>> lexed = pool.invokeAll(lexers);
+        for (int i = 0; i < chunkCount; i++) {
+            tokens.addAll(join(lexed.get(i)));
+            tokenStarts[i + 1] = tokens.size();
+        }
+
+        // parse the chunks as if a block started at each of them:
+        List<Callable<Chunk>> parsers = new ArrayList<>(chunkCount);
+        for (int i = 0; i < chunkCount; i++) {
+            int start = tokenStarts[i];
+            int end = tokenStarts[i + 1];
+            parsers.add(() -> Chunk.parse(tokens, start, end));
+        }
+        List<Future<Chunk>> parsed = pool.invokeAll(parsers);
+
+        // and stitch them together:
+        MdDoc doc = new MdDoc(filePath);
+        int position = 0;
+        try {
+            for (Future<Chunk> result : parsed) {
+                Chunk chunk = join(result);
+                while (position < chunk.end) {
+                    int block = Arrays.binarySearch(chunk.blockStarts, position);
+                    if (block >= 0) {
+                        for (int i = block; i < chunk.blockStarts.length; i++)
+                            doc.addChild(chunk.nodes.get(i));
+                        position = chunk.stop;
+                        if (chunk.stop >= chunk.end)
+                            break;
+                    }
+                    // the chunk is not in step with the document here: parse the block again
+                    TokenCursor cursor = TokenCursor.of(tokens, position);
+                    doc.addChild(MarkdownParser.parseBlock(cursor, doc));
+                    position = cursor.index();
+                }
+            }
+        } catch (MarkdownParseException e) {
+            e.printStackTrace();
+        }
+        int nodes = doc.trimToSize();
+        doc.setSourceLength(source.length());
+        event.finish(filePath, source.length(), tokens.size(), nodes);
+        if (isRecording)
+            MarkdownMetrics.recordParse(startNanos, tokens.size(), nodes);
+        return doc;
+    }
+
+
+    // helpers:
+    /**
+     * The top-level blocks parsed from the start of a chunk, up to the first block which starts behind it.
+     */
+    private static class Chunk {
+        final int end;                  // the index of the first token behind the chunk
+        final int[] blockStarts;        // the token-index of every block
+        final List<MdNode> nodes;
+        final int stop;                 // where the parsing stopped: at the next block-start or at an invalid token
+
+        private Chunk(int end, int[] blockStarts, List<MdNode> nodes, int stop) {
+            this.end = end;
+            this.blockStarts = blockStarts;
+            this.nodes = nodes;
+            this.stop = stop;
+        }
+
+        static Chunk parse(List<MarkdownToken> tokens, int start, int end) {
+            MdDoc doc = new MdDoc();    // only for the messages, the nodes are added to the real doc later
+            TokenCursor cursor = TokenCursor.of(tokens, start);
+            List<MdNode> nodes = new ArrayList<>();
+            int[] blockStarts = new int[8];
+            while (cursor.index() < end) {
+                int blockStart = cursor.index();
+                try {
+                    nodes.add(MarkdownParser.parseBlock(cursor, doc));
+                } catch (MarkdownParseException | RuntimeException e) {
+                    // the chunk stops here; reported again by the stitching, if the document really gets here
+                    return new Chunk(end, Arrays.copyOf(blockStarts, nodes.size()), nodes, blockStart);
+                }
+                if (nodes.size() > blockStarts.length)
+                    blockStarts = Arrays.copyOf(blockStarts, blockStarts.length * 2);
+                blockStarts[nodes.size() - 1] = blockStart;
+            }
+            return new Chunk(end, Arrays.copyOf(blockStarts, nodes.size()), nodes, cursor.index());
+        }
+    }
+
+    /**
+     * @return the offsets where the text is cut into chunks, starting with 0 and ending with its length
+     */
+    private int[] cuts(String text) {
+        List<Integer> cuts = new ArrayList<>();
+        cuts.add(0);
+        int next = chunkSize;
+        while (next < text.length()) {
+            int cut = nextBlankLineEnd(text, next);
+            if (cut < 0)
+                break;
+            cuts.add(cut);
+            next = cut + chunkSize;
+        }
+        cuts.add(text.length());
+        return cuts.stream().mapToInt(Integer::intValue).toArray();
+    }
+
+    /**
+     * Find the end of the next blank line, which is a run of line-break chars which holds at least two
+     * line-breaks, followed by another char. There the lexer has created a CRLF token and is at a line start,
+     * just as it is at the beginning of a text.
+     *
+     * @return the offset behind the run, -1 if there is none
+     */
+    static int nextBlankLineEnd(String text, int from) {
+        int length = text.length();
+        for (int i = from; i < length; i++) {
+            if (!isLineBreak(text.charAt(i)))
+                continue;
+            int runStart = i;
+            while (i < length && isLineBreak(text.charAt(i)))
+                i++;
+            if (i == length)
+                return -1;
+            // a pair "\r\n" or "\n\r" alone is a single line-break, and may be a BR-token at the end of a line:
+            int run = i - runStart;
+            if (run > 2 || (run == 2 && text.charAt(runStart) == text.charAt(runStart + 1)))
+                return i;
+        }
+        return -1;
+    }
+
+    private static boolean isLineBreak(char c) {
+        return c == '\n' || c == '\r';
+    }
+
+    private static <T> T join(Future<T> future) {
+        try {
+            return future.get();
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof RuntimeException)
+                throw (RuntimeException) e.getCause();
+            if (e.getCause() instanceof Error)
+                throw (Error) e.getCause();
+            throw new IllegalStateException(e.getCause());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while parsing", e);
+        }
+    }
+}
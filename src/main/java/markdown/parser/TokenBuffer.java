@@ -0,0 +1,160 @@
+package markdown.parser;
+
+import java.util.AbstractList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.Objects;
+
+/**
+ * TokenBuffer
+ * <p>
+ * The tokens of an in-memory source, packed into parallel primitive arrays (a struct of arrays): the
+ * ordinal of the MarkdownTokenType as byte, the offset and the length of the token's value in the source.
+ * Lexing a document thereby fills a few arrays instead of creating an object per token.
+ * <p>
+ * The valueless tokens (CRLF, BR) have a length of 0, their offset is the position of the line-break.
+ * The arrays grow by doubling, so adding a token is amortized O(1).
+ */
+public class TokenBuffer {
+    private static final MarkdownTokenType[] TYPES = MarkdownTokenType.values();
+
+    private final CharSequence source;
+    private byte[] types;
+    private int[] offsets;
+    private int[] lengths;
+    private int size;
+
+    public TokenBuffer(CharSequence source) {
+        this(source, 16);
+    }
+
+    public TokenBuffer(CharSequence source, int initialCapacity) {
+        this.source = source;
+        int capacity = Math.max(initialCapacity, 1);
+        types = new byte[capacity];
+        offsets = new int[capacity];
+        lengths = new int[capacity];
+    }
+
+
+    // getters:
+    public CharSequence getSource() {
+        return source;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public MarkdownTokenType type(int index) {
+        return TYPES[types[Objects.checkIndex(index, size)]];
+    }
+
+    public int offset(int index) {
+        return offsets[Objects.checkIndex(index, size)];
+    }
+
+    public int length(int index) {
+        return lengths[Objects.checkIndex(index, size)];
+    }
+
+    /**
+     * @return the value of the token, materialized as a new String
+     */
+    public String value(int index) {
+        int offset = offset(index);
+        return source.subSequence(offset, offset + lengths[index]).toString();
+    }
+
+    /**
+     * @return the token at the index as an object, for the code which works on MarkdownTokens
+     */
+    public MarkdownToken token(int index) {
+        return MarkdownTokenFactory.create(type(index), source, offsets[index], lengths[index]);
+    }
+
+
+    // operations:
+    public void add(MarkdownTokenType type, int offset, int length) {
+        if (size == types.length) {
+            int capacity = size * 2;
+            types = Arrays.copyOf(types, capacity);
+            offsets = Arrays.copyOf(offsets, capacity);
+            lengths = Arrays.copyOf(lengths, capacity);
+        }
+        types[size] = (byte) type.ordinal();
+        offsets[size] = offset;
+        lengths[size] = length;
+        size++;
+    }
+
+    public void clear() {
+        size = 0;
+    }
+
+    public Cursor cursor() {
+        return new Cursor();
+    }
+
+    /**
+     * @return a read-only list-view, whose tokens are created on access; its listIterator() can be passed to
+     * MarkdownParser.parse(...)
+     */
+    public List<MarkdownToken> asList() {
+        return new AbstractList<>() {
+            @Override
+            public MarkdownToken get(int index) {
+                return token(index);
+            }
+
+            @Override
+            public int size() {
+                return size;
+            }
+        };
+    }
+
+
+    /**
+     * A position in the buffer, which walks the tokens by their index. The type of the next token can be
+     * peeked, so a parser can decide where to go without consuming the token first.
+     */
+    public class Cursor {
+        private int index;  // index of the next token
+
+        public boolean hasNext() {
+            return index < size;
+        }
+
+        /**
+         * @return the type of the next token without consuming it, null at the end
+         */
+        public MarkdownTokenType peekType() {
+            return index < size ? TYPES[types[index]] : null;
+        }
+
+        /**
+         * @return the index of the consumed token, to be passed to the getters of the buffer
+         */
+        public int next() {
+            if (index >= size)
+                throw new NoSuchElementException();
+            return index++;
+        }
+
+        public void previous() {
+            if (index == 0)
+                throw new NoSuchElementException();
+            index--;
+        }
+
+        public int index() {
+            return index;
+        }
+
+        public void reset(int index) {
+            this.index = Objects.checkIndex(index, size + 1);
+        }
+    }
+}
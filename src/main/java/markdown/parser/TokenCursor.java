@@ -0,0 +1,233 @@
+package markdown.parser;
+
+import java.util.List;
+import java.util.ListIterator;
+import java.util.NoSuchElementException;
+import java.util.RandomAccess;
+
+/**
+ * TokenCursor
+ * <p>
+ * The parser's view of the tokens: an int position into them, the type of the next token without consuming it,
+ * and stepping back by moving the position. On a list or a TokenBuffer the parser decides by the peeked type,
+ * so it reads every token only once, instead of taking it with next() and putting it back with previous().
+ */
+abstract class TokenCursor {
+    /**
+     * @return the type of the next token without consuming it, null at the end
+     */
+    abstract MarkdownTokenType peekType();
+
+    abstract MarkdownToken next();
+
+    /**
+     * @return the index of the next token
+     */
+    abstract int index();
+
+    abstract void reset(int index);
+
+    /**
+     * @return the number of chars the tokens were lexed from, as far as it is known by now; -1 if it is unknown
+     */
+    long sourceLength() {
+        return -1;
+    }
+
+    final boolean hasNext() {
+        return peekType() != null;
+    }
+
+    final void previous() {
+        reset(index() - 1);
+    }
+
+
+    // construction:
+    static TokenCursor of(List<MarkdownToken> tokens, int index) {
+        return of(tokens, index, -1);
+    }
+
+    /**
+     * @param sourceLength the length of the text the tokens were lexed from, -1 if it is unknown
+     */
+    static TokenCursor of(List<MarkdownToken> tokens, int index, long sourceLength) {
+        if (tokens instanceof RandomAccess) {
+            ListCursor cursor = new ListCursor(tokens, sourceLength);
+            cursor.reset(index);
+            return cursor;
+        }
+        return of(tokens.listIterator(index));
+    }
+
+    static TokenCursor of(TokenBuffer tokens) {
+        return new BufferCursor(tokens);
+    }
+
+    /**
+     * @return a cursor which moves the iterator itself, so the iterator stays at the position of the cursor
+     */
+    static TokenCursor of(ListIterator<MarkdownToken> it) {
+        if (it instanceof MarkdownTokenStream)
+            return new StreamCursor((MarkdownTokenStream) it);
+        return new IteratorCursor(it);
+    }
+
+
+    // implementations:
+    private static final class ListCursor extends TokenCursor {
+        private final List<MarkdownToken> tokens;
+        private final int size;
+        private final long sourceLength;
+        private int index;
+
+        ListCursor(List<MarkdownToken> tokens, long sourceLength) {
+            this.tokens = tokens;
+            this.size = tokens.size();
+            this.sourceLength = sourceLength;
+        }
+
+        @Override
+        MarkdownTokenType peekType() {
+            return index < size ? tokens.get(index).getType() : null;
+        }
+
+        @Override
+        MarkdownToken next() {
+            if (index >= size)
+                throw new NoSuchElementException();
+            return tokens.get(index++);
+        }
+
+        @Override
+        int index() {
+            return index;
+        }
+
+        @Override
+        void reset(int index) {
+            if (index < 0 || index > size)
+                throw new NoSuchElementException();
+            this.index = index;
+        }
+
+        /**
+         * A list does not know its text, only the caller which lexed it may tell.
+         */
+        @Override
+        long sourceLength() {
+            return sourceLength;
+        }
+    }
+
+    private static final class BufferCursor extends TokenCursor {
+        private final TokenBuffer tokens;
+        private final TokenBuffer.Cursor cursor;
+
+        BufferCursor(TokenBuffer tokens) {
+            this.tokens = tokens;
+            this.cursor = tokens.cursor();
+        }
+
+        @Override
+        MarkdownTokenType peekType() {
+            return cursor.peekType();
+        }
+
+        @Override
+        MarkdownToken next() {
+            return tokens.token(cursor.next());
+        }
+
+        @Override
+        int index() {
+            return cursor.index();
+        }
+
+        @Override
+        void reset(int index) {
+            if (index < 0 || index > tokens.size())
+                throw new NoSuchElementException();
+            cursor.reset(index);
+        }
+
+        @Override
+        long sourceLength() {
+            return tokens.getSource().length();
+        }
+    }
+
+    private static final class StreamCursor extends TokenCursor {
+        private final MarkdownTokenStream stream;
+
+        StreamCursor(MarkdownTokenStream stream) {
+            this.stream = stream;
+        }
+
+        @Override
+        MarkdownTokenType peekType() {
+            return stream.peekType();
+        }
+
+        @Override
+        MarkdownToken next() {
+            return stream.next();
+        }
+
+        @Override
+        int index() {
+            return stream.nextIndex();
+        }
+
+        @Override
+        void reset(int index) {
+            while (stream.nextIndex() > index)
+                stream.previous();
+            while (stream.nextIndex() < index)
+                stream.next();
+        }
+
+        @Override
+        long sourceLength() {
+            return stream.getCharsRead();
+        }
+    }
+
+    /**
+     * Any other iterator can only be peeked by stepping forward and back again.
+     */
+    private static final class IteratorCursor extends TokenCursor {
+        private final ListIterator<MarkdownToken> it;
+
+        IteratorCursor(ListIterator<MarkdownToken> it) {
+            this.it = it;
+        }
+
+        @Override
+        MarkdownTokenType peekType() {
+            if (!it.hasNext())
+                return null;
+            MarkdownTokenType type = it.next().getType();
+            it.previous();
+            return type;
+        }
+
+        @Override
+        MarkdownToken next() {
+            return it.next();
+        }
+
+        @Override
+        int index() {
+            return it.nextIndex();
+        }
+
+        @Override
+        void reset(int index) {
+            while (it.nextIndex() > index)
+                it.previous();
+            while (it.nextIndex() < index)
+                it.next();
+        }
+    }
+}
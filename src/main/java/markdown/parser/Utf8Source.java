@@ -0,0 +1,102 @@
+package markdown.parser;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Utf8Source
+ * <p>
+ * UTF-8 encoded markdown, lexed as it is: all the chars with a meaning in markdown are ASCII, and every byte of a
+ * multibyte UTF-8 sequence is at least 0x80, so a token never starts or ends inside a sequence. The one place where
+ * the lexer drops an arbitrary char, the one behind an indent, skips the whole sequence. Therefore this
+ * CharSequence is indexed by bytes: charAt(...) returns a byte, widened to a char without decoding it, and the
+ * tokens and texts reference ranges of bytes.
+ * <p>
+ * The ranges are only decoded when a value is materialized with toString(); a Utf8ChannelWriter copies them into
+ * its output as bytes. Malformed UTF-8 is copied as it is then, while toString() replaces it.
+ */
+public final class Utf8Source implements CharSequence {
+    private final ByteBuffer bytes;     // absolute access only, its position and limit are never changed
+    private final int offset;
+    private final int length;
+
+    /**
+     * @param utf8 the bytes between its position and limit are the markdown, they are not copied
+     */
+    public Utf8Source(ByteBuffer utf8) {
+        this(utf8.slice(), 0, utf8.remaining());
+    }
+
+    private Utf8Source(ByteBuffer bytes, int offset, int length) {
+        this.bytes = bytes;
+        this.offset = offset;
+        this.length = length;
+    }
+
+
+    // CharSequence:
+    @Override
+    public int length() {
+        return length;
+    }
+
+    /**
+     * @return the byte at the index, not the char
+     */
+    @Override
+    public char charAt(int index) {
+        if (index < 0 || index >= length)
+            throw new IndexOutOfBoundsException(index);
+        return (char) (bytes.get(offset + index) & 0xff);
+    }
+
+    @Override
+    public Utf8Source subSequence(int start, int end) {
+        checkRange(start, end);
+        return new Utf8Source(bytes, offset + start, end - start);
+    }
+
+    /**
+     * @return the decoded text
+     */
+    @Override
+    public String toString() {
+        byte[] value = new byte[length];
+        bytes.get(offset, value);
+        return new String(value, StandardCharsets.UTF_8);
+    }
+
+
+    // operations:
+    /**
+     * Widen the bytes [start, end) into dst, like charAt(...) does.
+     */
+    public void getChars(int start, int end, char[] dst, int dstBegin) {
+        checkRange(start, end);
+        if (bytes.hasArray()) {
+            byte[] array = bytes.array();
+            int from = bytes.arrayOffset() + offset + start;
+            for (int i = 0; i < end - start; i++)
+                dst[dstBegin + i] = (char) (array[from + i] & 0xff);
+        } else {
+            for (int i = start; i < end; i++)
+                dst[dstBegin + i - start] = (char) (bytes.get(offset + i) & 0xff);
+        }
+    }
+
+    /**
+     * Copy the bytes [start, end) to the position of dst, which must have room for them.
+     */
+    public void copyTo(int start, int end, ByteBuffer dst) {
+        checkRange(start, end);
+        dst.put(dst.position(), bytes, offset + start, end - start);
+        dst.position(dst.position() + end - start);
+    }
+
+
+    // helpers:
+    private void checkRange(int start, int end) {
+        if (start < 0 || start > end || end > length)
+            throw new IndexOutOfBoundsException("[" + start + ", " + end + ") of " + length);
+    }
+}
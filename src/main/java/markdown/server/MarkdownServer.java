@@ -0,0 +1,190 @@
+package markdown.server;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import markdown.MarkdownProcessor;
+import markdown.interpreter.Utf8ChannelWriter;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.Writer;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.channels.Channels;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * MarkdownServer
+ * <p>
+ * A small HTTP service on the JDK's built-in server: a POST with markdown as its body is answered with the
+ * generated html, which is streamed into the response while it is generated. The markdown is lexed and rendered
+ * as UTF-8 bytes, without decoding it into chars and encoding its texts again. Every request runs on a virtual
+ * thread of its own, so a request which waits, e.g. for a slow reader of its response, only parks its thread.
+ * <p>
+ * A request body bigger than maxRequestBytes is refused with 413, without being read. shutdown(...) drains the
+ * server: the new requests are refused with 503 while the running ones are completed, up to a timeout, then the
+ * server is stopped.
+ * <p>
+ * The JDK 21 server reads a request body within synchronized blocks, which pin the virtual thread to its carrier
+ * while it waits for a slow client. So the carriers (by default one per core) bound the number of uploads which can
+ * stall at once; -Dsun.net.httpserver.maxReqTime=&lt;seconds&gt; cuts off the clients which take too long to send.
+ */
+public class MarkdownServer {
+    public static final String CONTEXT_PATH = "/";
+    public static final long DEFAULT_MAX_REQUEST_BYTES = 1 << 20;
+
+    private final MarkdownProcessor processor;
+    private final long maxRequestBytes;
+    private final HttpServer server;
+    private final ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor();
+
+    private final AtomicInteger activeRequests = new AtomicInteger();
+    private final ReentrantLock lock = new ReentrantLock();    // not synchronized: it would pin the virtual threads
+    private final Condition idle = lock.newCondition();
+    private volatile boolean draining;
+
+    /**
+     * Create a server on the loopback address, at any free port.
+     */
+    public MarkdownServer() throws IOException {
+        this(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), new MarkdownProcessor(), DEFAULT_MAX_REQUEST_BYTES);
+    }
+
+    /**
+     * @param address         where to listen, with port 0 any free port is taken
+     * @param processor       renders the requests, e.g. with a RenderCache; it is shared by all the requests
+     * @param maxRequestBytes the biggest markdown which is accepted, in bytes
+     * @throws IOException when the address can not be bound
+     */
+    public MarkdownServer(InetSocketAddress address, MarkdownProcessor processor, long maxRequestBytes) throws IOException {
+        if (maxRequestBytes < 0 || maxRequestBytes > Integer.MAX_VALUE - 8)
+            throw new IllegalArgumentException("The request size limit must be between 0 and 2 GB");
+        this.processor = processor;
+        this.maxRequestBytes = maxRequestBytes;
+        this.server = HttpServer.create(address, 0);
+        server.createContext(CONTEXT_PATH, this::handle);
+        server.setExecutor(executor);
+    }
+
+
+    // getters:
+    public InetSocketAddress getAddress() {
+        return server.getAddress();
+    }
+
+    public long getMaxRequestBytes() {
+        return maxRequestBytes;
+    }
+
+    /**
+     * @return the number of requests which are being handled right now
+     */
+    public int getActiveRequests() {
+        return activeRequests.get();
+    }
+
+    public boolean isDraining() {
+        return draining;
+    }
+
+
+    // operations:
+    public void start() {
+        server.start();
+    }
+
+    /**
+     * Refuse the new requests and wait for the running ones to complete, then stop the server.
+     *
+     * @param drainTimeout how long to wait for the running requests; the ones still running then are cut off
+     * @return true if all the running requests completed in time
+     */
+    public boolean shutdown(Duration drainTimeout) throws InterruptedException {
+        draining = true;
+        boolean drained;
+        lock.lock();
+        try {
+            long nanos = drainTimeout.toNanos();
+            while (activeRequests.get() > 0 && nanos > 0)
+                nanos = idle.awaitNanos(nanos);
+            drained = activeRequests.get() == 0;
+        } finally {
+            lock.unlock();
+        }
+        server.stop(0);
+        executor.shutdownNow();
+        executor.awaitTermination(1, TimeUnit.SECONDS);
+        return drained;
+    }
+
+
+    // helpers:
+    private void handle(HttpExchange exchange) throws IOException {
+        activeRequests.incrementAndGet();
+        try (exchange) {
+            if (draining) {
+                exchange.getResponseHeaders().set("Connection", "close");
+                sendError(exchange, 503, "The server is shutting down");
+            } else if (!"POST".equals(exchange.getRequestMethod())) {
+                exchange.getResponseHeaders().set("Allow", "POST");
+                sendError(exchange, 405, "Only POST is supported");
+            } else {
+                render(exchange);
+            }
+        } finally {
+            if (activeRequests.decrementAndGet() == 0 && draining)
+                signalIdle();
+        }
+    }
+
+    private void render(HttpExchange exchange) throws IOException {
+        String contentLength = exchange.getRequestHeaders().getFirst("Content-Length");
+        try {
+            if (contentLength != null && Long.parseLong(contentLength) > maxRequestBytes) {
+                sendError(exchange, 413, "The markdown is bigger than " + maxRequestBytes + " bytes");
+                return;
+            }
+        } catch (NumberFormatException e) {
+            sendError(exchange, 400, "Invalid Content-Length");
+            return;
+        }
+        // a chunked body has no Content-Length, so the limit is checked while reading, too:
+        byte[] markdown;
+        try (InputStream body = exchange.getRequestBody()) {
+            markdown = body.readNBytes((int) maxRequestBytes + 1);
+        }
+        if (markdown.length > maxRequestBytes) {
+            sendError(exchange, 413, "The markdown is bigger than " + maxRequestBytes + " bytes");
+            return;
+        }
+
+        exchange.getResponseHeaders().set("Content-Type", "text/html; charset=utf-8");
+        exchange.sendResponseHeaders(200, 0);   // chunked: the length is not known before the html is generated
+        try (Writer writer = new Utf8ChannelWriter(Channels.newChannel(exchange.getResponseBody()))) {
+            processor.process(markdown, writer);
+        }
+    }
+
+    private static void sendError(HttpExchange exchange, int status, String message) throws IOException {
+        byte[] body = (message + "\n").getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().set("Content-Type", "text/plain; charset=utf-8");
+        exchange.sendResponseHeaders(status, body.length);
+        exchange.getResponseBody().write(body);
+    }
+
+    private void signalIdle() {
+        lock.lock();
+        try {
+            idle.signalAll();
+        } finally {
+            lock.unlock();
+        }
+    }
+}
@@ -0,0 +1,109 @@
+package markdown;
+
+import markdown.interpreter.HtmlGeneratorVisitor;
+import markdown.nodes.MdDoc;
+import markdown.parser.MarkdownLexer;
+import markdown.parser.MarkdownParser;
+import markdown.parser.MarkdownToken;
+import markdown.parser.MarkdownTokenStream;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.*;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * One lexer, html-generator and processor are shared by many threads, which all must get the same results
+ * as a single thread.
+ */
+class ConcurrencyStressTest {
+    private static final String[] RESOURCES = {"basic01_text.md", "basic02_headings.md", "basic03_paragraphs.md",
+            "basic04_linebreaks.md", "basic05_emphasis.md", "basic06_blockquotes.md"};
+    private static final int THREADS = 16;
+    private static final int ITERATIONS = 200;
+
+    private final MarkdownLexer lexer = new MarkdownLexer(true);
+    private final HtmlGeneratorVisitor htmlGenerator = new HtmlGeneratorVisitor();
+    private final MarkdownProcessor processor = new MarkdownProcessor();
+
+    @Test
+    void test_SharedInstances() throws Exception {
+        // the inputs and their results of a single thread:
+        List<String> texts = new ArrayList<>();
+        List<URL> urls = new ArrayList<>();
+        for (String resource : RESOURCES) {
+            URL url = getClass().getClassLoader().getResource(resource);
+            assertNotNull(url, resource);
+            urls.add(url);
+            texts.add(read(resource));
+        }
+        StringBuilder all = new StringBuilder();
+        texts.forEach(text -> all.append(text).append('\n'));
+        texts.add(all.toString());
+
+        List<List<MarkdownToken>> expectedTokens = new ArrayList<>();
+        List<String> expectedHtml = new ArrayList<>();
+        for (String text : texts) {
+            List<MarkdownToken> tokens = new MarkdownLexer(true).tokenize(text);
+            expectedTokens.add(tokens);
+            expectedHtml.add(new HtmlGeneratorVisitor().generate(MarkdownParser.parse(null, tokens.listIterator())));
+        }
+        List<String> expectedProcessed = new ArrayList<>();
+        for (URL url : urls)
+            expectedProcessed.add(new MarkdownProcessor().process(url.toURI()));
+
+        ExecutorService executor = Executors.newFixedThreadPool(THREADS);
+        CountDownLatch start = new CountDownLatch(1);
+        try {
+            List<Future<?>> results = new ArrayList<>();
+            for (int t = 0; t < THREADS; t++) {
+                long seed = t;
+                results.add(executor.submit(() -> {
+                    start.await();
+                    Random random = new Random(seed);
+                    for (int i = 0; i < ITERATIONS; i++) {
+                        int n = random.nextInt(texts.size());
+                        String text = texts.get(n);
+                        switch (random.nextInt(4)) {
+                            case 0:
+                                assertEquals(expectedTokens.get(n), lexer.tokenize(text));
+                                break;
+                            case 1:
+                                assertEquals(expectedTokens.get(n), lexer.tokenizeToBuffer(text).asList());
+                                break;
+                            case 2:
+                                try (MarkdownTokenStream tokens = lexer.tokenStream(text)) {
+                                    MdDoc doc = MarkdownParser.parse(null, tokens);
+                                    assertEquals(expectedHtml.get(n), htmlGenerator.generate(doc));
+                                }
+                                break;
+                            default:
+                                int r = n % urls.size();
+                                assertEquals(expectedProcessed.get(r), processor.process(urls.get(r).toURI()));
+                        }
+                    }
+                    return null;
+                }));
+            }
+            start.countDown();
+            for (Future<?> result : results)
+                result.get(60, TimeUnit.SECONDS);
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    private String read(String resource) throws IOException {
+        try (InputStream input = getClass().getClassLoader().getResourceAsStream(resource)) {
+            assertNotNull(input, resource);
+            return new String(input.readAllBytes(), StandardCharsets.UTF_8);
+        }
+    }
+}
@@ -0,0 +1,178 @@
+package markdown;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.net.URISyntaxException;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Flow;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class HtmlPublisherTest {
+    private static final String MARKDOWN = "# Title\n\nSome *emphasized* text\n> a quote\n\nThe end\n";
+    private static final Executor DIRECT = Runnable::run;     // the signals come right away, on the calling thread
+
+    /**
+     * Records the signals; it requests initialRequest items on subscribe, and nothing more by itself.
+     */
+    private static class Recorder implements Flow.Subscriber<CharSequence> {
+        final long initialRequest;
+        final List<String> items = new ArrayList<>();
+        Flow.Subscription subscription;
+        boolean completed;
+        Throwable error;
+
+        Recorder(long initialRequest) {
+            this.initialRequest = initialRequest;
+        }
+
+        @Override
+        public void onSubscribe(Flow.Subscription subscription) {
+            assertNull(this.subscription);
+            this.subscription = subscription;
+            subscription.request(initialRequest);
+        }
+
+        @Override
+        public void onNext(CharSequence item) {
+            assertFalse(completed);
+            items.add(item.toString());
+        }
+
+        @Override
+        public void onError(Throwable error) {
+            this.error = error;
+        }
+
+        @Override
+        public void onComplete() {
+            completed = true;
+        }
+
+        String html() {
+            return String.join("", items);
+        }
+    }
+
+    private static String render(String markdown) throws IOException {
+        StringBuilder html = new StringBuilder();
+        new MarkdownProcessor().process(markdown.getBytes(StandardCharsets.UTF_8), html);
+        return html.toString();
+    }
+
+    @Test
+    void test_publishesAllBlocks() throws IOException, URISyntaxException {
+        Recorder recorder = new Recorder(Long.MAX_VALUE);
+        new HtmlPublisher(MARKDOWN, DIRECT).subscribe(recorder);
+        assertTrue(recorder.completed);
+        assertNull(recorder.error);
+        assertEquals(render(MARKDOWN), recorder.html());
+        assertEquals(5, recorder.items.size());     // 4 blocks and the end
+        assertTrue(recorder.items.get(0).startsWith("<!DOCTYPE html>"));
+        assertTrue(recorder.items.get(0).contains("<h1>Title"));
+
+        for (String markdownFile : new String[]{"basic01_text.md", "basic05_emphasis.md", "basic06_blockquotes.md"}) {
+            URL resourceMd = Thread.currentThread().getContextClassLoader().getResource(markdownFile);
+            assertNotNull(resourceMd);
+            recorder = new Recorder(Long.MAX_VALUE);
+            new HtmlPublisher(resourceMd.toURI(), DIRECT).subscribe(recorder);
+            assertTrue(recorder.completed, markdownFile);
+            assertEquals(new MarkdownProcessor().process(resourceMd.toURI()), recorder.html(), markdownFile);
+        }
+    }
+
+    @Test
+    void test_emptyDocument() throws IOException {
+        Recorder recorder = new Recorder(Long.MAX_VALUE);
+        new HtmlPublisher("", DIRECT).subscribe(recorder);
+        assertTrue(recorder.completed);
+        assertEquals(render(""), recorder.html());
+        assertEquals(2, recorder.items.size());     // the CRLF at the end of the input is an empty paragraph
+    }
+
+    @Test
+    void test_backpressure() {
+        Recorder recorder = new Recorder(1);
+        new HtmlPublisher(MARKDOWN, DIRECT).subscribe(recorder);
+        assertEquals(1, recorder.items.size());
+        recorder.subscription.request(2);
+        assertEquals(3, recorder.items.size());
+        assertFalse(recorder.completed);
+        recorder.subscription.request(1);
+        assertEquals(4, recorder.items.size());
+        assertFalse(recorder.completed);
+        recorder.subscription.request(1);
+        assertEquals(5, recorder.items.size());
+        assertTrue(recorder.completed);
+    }
+
+    @Test
+    void test_cancel() {
+        Recorder recorder = new Recorder(1);
+        new HtmlPublisher(MARKDOWN, DIRECT).subscribe(recorder);
+        recorder.subscription.cancel();
+        recorder.subscription.request(10);
+        assertEquals(1, recorder.items.size());
+        assertFalse(recorder.completed);
+        assertNull(recorder.error);
+    }
+
+    @Test
+    void test_invalidRequest() {
+        Recorder recorder = new Recorder(0);
+        new HtmlPublisher(MARKDOWN, DIRECT).subscribe(recorder);
+        assertTrue(recorder.error instanceof IllegalArgumentException);
+        assertTrue(recorder.items.isEmpty());
+    }
+
+    @Test
+    void test_missingInput() {
+        Recorder recorder = new Recorder(1);
+        new HtmlPublisher(new File("missing-" + System.nanoTime() + ".md").toURI(), DIRECT).subscribe(recorder);
+        assertNotNull(recorder.subscription);
+        assertNotNull(recorder.error);
+        assertFalse(recorder.completed);
+    }
+
+    @Test
+    void test_asynchronous() throws Exception {
+        String markdown = MARKDOWN.repeat(200);
+        CompletableFuture<String> html = new CompletableFuture<>();
+        new HtmlPublisher(markdown).subscribe(new Flow.Subscriber<>() {
+            private final StringBuilder received = new StringBuilder();
+            private Flow.Subscription subscription;
+
+            @Override
+            public void onSubscribe(Flow.Subscription subscription) {
+                this.subscription = subscription;
+                subscription.request(1);
+            }
+
+            @Override
+            public void onNext(CharSequence item) {
+                received.append(item);
+                subscription.request(1);    // one at a time, from within onNext
+            }
+
+            @Override
+            public void onError(Throwable error) {
+                html.completeExceptionally(error);
+            }
+
+            @Override
+            public void onComplete() {
+                html.complete(received.toString());
+            }
+        });
+        assertEquals(render(markdown),
+                html.get(10, TimeUnit.SECONDS));
+    }
+}
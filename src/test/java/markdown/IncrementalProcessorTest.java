@@ -0,0 +1,161 @@
+package markdown;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.FileSystems;
+import java.nio.file.attribute.FileTime;
+import java.util.Comparator;
+import java.util.List;
+import java.util.stream.Stream;
+
+import static markdown.IncrementalProcessor.Outcome.*;
+import static org.junit.jupiter.api.Assertions.*;
+import static org.junit.jupiter.api.Assumptions.assumeTrue;
+
+class IncrementalProcessorTest {
+    private Path dir;
+    private Path inputFile;
+    private Path outputFile;
+    private Path manifestFile;
+
+    @BeforeEach
+    void setUp() throws IOException {
+        dir = Files.createTempDirectory("markdown-incremental-");
+        inputFile = dir.resolve("doc.md");
+        outputFile = dir.resolve("out").resolve("doc.html");
+        manifestFile = dir.resolve("out").resolve(BuildManifest.FILE_NAME);
+        Files.writeString(inputFile, "# Heading\n\nSome *text*\n");
+    }
+
+    @AfterEach
+    void tearDown() throws IOException {
+        try (Stream<Path> paths = Files.walk(dir)) {
+            for (Path path : (Iterable<Path>) paths.sorted(Comparator.reverseOrder())::iterator)
+                Files.delete(path);
+        }
+    }
+
+    @Test
+    void test_SkipsUnchangedInputs() throws IOException {
+        var processor = new IncrementalProcessor(BuildManifest.load(manifestFile));
+        assertEquals(WRITTEN, processor.process(inputFile, outputFile));
+        assertEquals(new MarkdownProcessor().process(inputFile.toUri()) + System.lineSeparator(), Files.readString(outputFile));
+        assertEquals(SKIPPED, processor.process(inputFile, outputFile));
+
+        processor.getManifest().save();
+        assertEquals(SKIPPED, new IncrementalProcessor(BuildManifest.load(manifestFile)).process(inputFile, outputFile));
+
+        Files.writeString(inputFile, "# Other heading\n");
+        assertEquals(WRITTEN, processor.process(inputFile, outputFile));
+        assertTrue(Files.readString(outputFile).contains("Other heading"));
+
+        Files.delete(outputFile);
+        assertEquals(WRITTEN, processor.process(inputFile, outputFile));
+    }
+
+    @Test
+    void test_DoesNotRewriteIdenticalOutputs() throws IOException {
+        assertEquals(WRITTEN, new IncrementalProcessor(BuildManifest.load(manifestFile)).process(inputFile, outputFile));
+        FileTime lastModified = FileTime.fromMillis(1_000_000_000_000L);
+        Files.setLastModifiedTime(outputFile, lastModified);
+
+        // without a manifest the input is converted again, but the output is the same:
+        assertEquals(UNCHANGED, new IncrementalProcessor(BuildManifest.load(manifestFile)).process(inputFile, outputFile));
+        assertEquals(lastModified, Files.getLastModifiedTime(outputFile));
+        try (Stream<Path> files = Files.list(outputFile.getParent())) {
+            assertEquals(1, files.count(), "no temporary file is left behind");
+        }
+    }
+
+    @Test
+    void test_ManifestRoundTrip() throws IOException {
+        var manifest = BuildManifest.load(manifestFile);
+        String hash = BuildManifest.hash(inputFile);
+        assertEquals(64, hash.length());
+        manifest.put("a b\tc.md", hash);
+        manifest.put("other.md", "0");
+        manifest.save();
+
+        var loaded = BuildManifest.load(manifestFile);
+        assertEquals(2, loaded.size());
+        assertTrue(loaded.isUpToDate("a b\tc.md", hash));
+        assertFalse(loaded.isUpToDate("other.md", hash));
+        assertFalse(loaded.isUpToDate("missing.md", hash));
+    }
+
+    @Test
+    void test_RendererVersionCoversAllRendererClasses() throws Exception {
+        List<String> rendererClasses = BuildManifest.rendererClasses();
+        for (String rendererClass : new String[]{"markdown/MarkdownProcessor.class", "markdown/parser/MarkdownLexer.class",
+                "markdown/parser/TokenCursor.class", "markdown/parser/MarkdownToken.class",
+                "markdown/parser/MarkdownTokenStream.class", "markdown/parser/MappedFileReader.class",
+                "markdown/nodes/MdEmphasis.class", "markdown/interpreter/HtmlGeneratorVisitor.class"})
+            assertTrue(rendererClasses.contains(rendererClass), rendererClass);
+
+        // every class of the renderer packages, also the ones which are added later:
+        Path classes = Path.of(MarkdownProcessor.class.getProtectionDomain().getCodeSource().getLocation().toURI());
+        for (String rendererPackage : new String[]{"markdown/parser", "markdown/nodes", "markdown/interpreter"}) {
+            try (Stream<Path> files = Files.list(classes.resolve(rendererPackage))) {
+                for (Path file : (Iterable<Path>) files::iterator)
+                    assertTrue(rendererClasses.contains(rendererPackage + "/" + file.getFileName()), file.toString());
+            }
+        }
+        assertEquals(16, BuildManifest.rendererVersion().length());
+    }
+
+    @Test
+    void test_IncrementalBatch() throws IOException {
+        Path inputDir = dir.resolve("in");
+        Files.createDirectories(inputDir.resolve("sub"));
+        Files.writeString(inputDir.resolve("one.md"), "One\n");
+        Files.writeString(inputDir.resolve("sub").resolve("two.md"), "Two\n");
+        Path outputDir = dir.resolve("out");
+
+        var first = new MarkdownBatchProcessor(2, true).process(inputDir, outputDir);
+        assertEquals(2, first.getWritten());
+        assertTrue(Files.exists(outputDir.resolve(BuildManifest.FILE_NAME)));
+
+        Files.writeString(inputDir.resolve("one.md"), "One changed\n");
+        var second = new MarkdownBatchProcessor(2, true).process(inputDir, outputDir);
+        assertEquals(1, second.getWritten());
+        assertEquals(1, second.getSkipped());
+        assertEquals(Files.size(inputDir.resolve("one.md")), second.getBytes());
+    }
+
+    @Test
+    void test_OutputHasDefaultPermissions() throws IOException {
+        assumeTrue(FileSystems.getDefault().supportedFileAttributeViews().contains("posix"));
+        Path plain = Files.createFile(dir.resolve("plain.html"));
+
+        // like a file of the non-incremental batch, not the owner-only one of a temporary file:
+        assertEquals(WRITTEN, new IncrementalProcessor(BuildManifest.load(manifestFile)).process(inputFile, outputFile));
+        assertEquals(Files.getPosixFilePermissions(plain), Files.getPosixFilePermissions(outputFile));
+        var manifest = BuildManifest.load(manifestFile);
+        manifest.save();
+        assertEquals(Files.getPosixFilePermissions(plain), Files.getPosixFilePermissions(manifestFile));
+    }
+
+    @Test
+    void test_BatchForgetsDeletedInputs() throws IOException {
+        Path inputDir = dir.resolve("in");
+        Files.createDirectories(inputDir);
+        Files.writeString(inputDir.resolve("one.md"), "One\n");
+        Files.writeString(inputDir.resolve("two.md"), "Two\n");
+        Path outputDir = dir.resolve("out");
+
+        new MarkdownBatchProcessor(2, true).process(inputDir, outputDir);
+        assertEquals(2, BuildManifest.load(outputDir.resolve(BuildManifest.FILE_NAME)).size());
+
+        Files.delete(inputDir.resolve("two.md"));
+        new MarkdownBatchProcessor(2, true).process(inputDir, outputDir);
+        var manifest = BuildManifest.load(outputDir.resolve(BuildManifest.FILE_NAME));
+        assertEquals(1, manifest.size());
+        assertTrue(manifest.isUpToDate(IncrementalProcessor.manifestKey(inputDir.resolve("one.md")),
+                BuildManifest.hash(inputDir.resolve("one.md"))));
+    }
+}
@@ -0,0 +1,79 @@
+package markdown;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.List;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class MarkdownBatchProcessorTest {
+    private static final String[] MARKDOWN_FILES = {"basic01_text.md", "basic02_headings.md", "basic03_paragraphs.md",
+            "basic04_linebreaks.md", "basic05_emphasis.md", "basic06_blockquotes.md"};
+
+    private Path inputDir;
+    private Path outputDir;
+
+    @BeforeEach
+    void setUp() throws IOException {
+        inputDir = Files.createTempDirectory("markdown-batch-in-");
+        outputDir = Files.createTempDirectory("markdown-batch-out-");
+        for (int i = 0; i < MARKDOWN_FILES.length; i++) {
+            Path dir = i % 2 == 0 ? inputDir : inputDir.resolve("sub").resolve("dir");
+            Files.createDirectories(dir);
+            try (InputStream input = getClass().getClassLoader().getResourceAsStream(MARKDOWN_FILES[i])) {
+                assertNotNull(input, MARKDOWN_FILES[i]);
+                Files.copy(input, dir.resolve(MARKDOWN_FILES[i]));
+            }
+        }
+        Files.writeString(inputDir.resolve("notes.txt"), "not markdown");
+    }
+
+    @AfterEach
+    void tearDown() throws IOException {
+        for (Path dir : List.of(inputDir, outputDir)) {
+            try (Stream<Path> paths = Files.walk(dir)) {
+                for (Path path : (Iterable<Path>) paths.sorted(Comparator.reverseOrder())::iterator)
+                    Files.delete(path);
+            }
+        }
+    }
+
+    @Test
+    void test_ConvertsTheTree() throws IOException {
+        var summary = new MarkdownBatchProcessor(3).process(inputDir, outputDir);
+        assertEquals(MARKDOWN_FILES.length, summary.getFiles());
+        assertTrue(summary.getFailedFiles().isEmpty());
+
+        var processor = new MarkdownProcessor();
+        long bytes = 0;
+        for (int i = 0; i < MARKDOWN_FILES.length; i++) {
+            String relative = (i % 2 == 0 ? "" : "sub/dir/") + MARKDOWN_FILES[i];
+            Path inputFile = inputDir.resolve(relative);
+            Path outputFile = outputDir.resolve(relative.replace(".md", ".html"));
+            assertEquals(processor.process(inputFile.toUri()) + System.lineSeparator(), Files.readString(outputFile));
+            bytes += Files.size(inputFile);
+        }
+        assertEquals(bytes, summary.getBytes());
+        assertFalse(Files.exists(outputDir.resolve("notes.html")));
+    }
+
+    @Test
+    void test_OneFailureDoesNotAbortTheRest() throws IOException {
+        Files.createDirectories(outputDir.resolve("basic01_text.html"));   // can not be written as file
+
+        var summary = new MarkdownBatchProcessor(2).process(inputDir, outputDir);
+        assertEquals(List.of(inputDir.resolve("basic01_text.md")), summary.getFailedFiles());
+        assertTrue(Files.isRegularFile(outputDir.resolve("basic03_paragraphs.html")));
+        assertTrue(Files.isRegularFile(outputDir.resolve("sub/dir/basic06_blockquotes.html")));
+        assertEquals(5, summary.getWritten());
+        assertTrue(summary.toString().startsWith("6 files: 5 written, 0 unchanged, 0 skipped, 1 failed"), summary.toString());
+    }
+}
@@ -1,13 +1,25 @@
 package markdown;
 
+import markdown.interpreter.HtmlGeneratorVisitor;
+import markdown.parser.MarkdownLexer;
+import markdown.parser.MarkdownParser;
+import markdown.parser.ParallelMarkdownParser;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 
+import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.net.URISyntaxException;
 import java.net.URL;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.charset.CodingErrorAction;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
+import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
 
 import static org.junit.jupiter.api.Assertions.*;
 
@@ -68,4 +80,135 @@ class MarkdownProcessorTest {
     void test_basic06_blockquotes() {
         test_file( "basic06_blockquotes.md", "basic06_blockquotes.html");
     }
-}
\ No newline at end of file
+
+    @Test
+    void test_processToFile() throws IOException, URISyntaxException {
+        URL resourceMd = Thread.currentThread().getContextClassLoader().getResource("basic06_blockquotes.md");
+        assertNotNull(resourceMd);
+        Path outputFile = Files.createTempFile("markdown-processor-", ".html");
+        try {
+            assertEquals(0, mdp.process(resourceMd.toURI(), outputFile.toFile()));
+            String expected = mdp.process(resourceMd.toURI()) + System.lineSeparator();
+            assertEquals(expected, Files.readString(outputFile, StandardCharsets.UTF_8));
+        } finally {
+            Files.deleteIfExists(outputFile);
+        }
+    }
+
+    @Test
+    void test_processParallel() throws URISyntaxException {
+        ForkJoinPool pool = new ForkJoinPool(4);
+        try {
+            var parallel = new MarkdownProcessor(new ParallelMarkdownParser(true, pool, 16));
+            for (String markdownFile : new String[]{"basic01_text.md", "basic02_headings.md", "basic03_paragraphs.md",
+                    "basic04_linebreaks.md", "basic05_emphasis.md", "basic06_blockquotes.md"}) {
+                URL resourceMd = Thread.currentThread().getContextClassLoader().getResource(markdownFile);
+                assertNotNull(resourceMd);
+                assertEquals(mdp.process(resourceMd.toURI()), parallel.process(resourceMd.toURI()), markdownFile);
+            }
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    @Test
+    void test_processBytes() throws IOException, URISyntaxException {
+        for (String markdownFile : new String[]{"basic01_text.md", "basic02_headings.md", "basic03_paragraphs.md",
+                "basic04_linebreaks.md", "basic05_emphasis.md", "basic06_blockquotes.md"}) {
+            URL resourceMd = Thread.currentThread().getContextClassLoader().getResource(markdownFile);
+            assertNotNull(resourceMd);
+            byte[] markdown = Files.readAllBytes(Paths.get(resourceMd.toURI()));
+            assertEquals(mdp.process(resourceMd.toURI()), processBytes(markdown), markdownFile);
+        }
+
+        // not ascii, also into an output which takes chars:
+        String markdown = "# Grüße\n\n*schön* 😀 <b>€</b>  \n> ñ\n";
+        byte[] bytes = markdown.getBytes(StandardCharsets.UTF_8);
+        Path copy = Files.createTempFile("markdown-processor-", ".md");
+        try {
+            Files.write(copy, bytes);
+            String expected = mdp.process(copy.toUri());
+            assertEquals(expected, processBytes(bytes));
+            var html = new StringBuilder();
+            mdp.process(bytes, html);
+            assertEquals(expected, html.toString());
+        } finally {
+            Files.deleteIfExists(copy);
+        }
+    }
+
+    @Test
+    void test_processBytesLikeChars() throws IOException {
+        // a multibyte char where the lexer drops one, behind an indent, is dropped as a whole:
+        for (String markdown : new String[]{"x\n\n\tä€", "x\n\n\t€y", "x\n\n  😀z\n", "ä\n_ ñ<b>€\t>ä*",
+                "*ä\n€😀x_\nñxx\n\n ä> word#", "- ä\n  € *ñ*\n> \t😀\n"})
+            assertBytesLikeChars(markdown);
+
+        String[] atoms = {"#", "##", " ", "  ", "\t", "\n", "\r\n", ">", "> ", "*", "_", "**", "-", "- ", "<b>", "<",
+                "x", "word", "ä", "€", "😀", "ñ"};
+        Random random = new Random(24);
+        for (int i = 0; i < 300; i++) {
+            var markdown = new StringBuilder();
+            for (int n = random.nextInt(30); n > 0; n--)
+                markdown.append(atoms[random.nextInt(atoms.length)]);
+            assertBytesLikeChars(markdown.toString());
+        }
+    }
+
+    /**
+     * The html of the byte pipeline must be the html of the char pipeline, and valid UTF-8.
+     */
+    private void assertBytesLikeChars(String markdown) throws IOException {
+        String expected = new HtmlGeneratorVisitor().generate(
+                MarkdownParser.parse(null, new MarkdownLexer(true).tokenizeToBuffer(markdown)));
+        byte[] bytes = markdown.getBytes(StandardCharsets.UTF_8);
+
+        var html = new ByteArrayOutputStream();
+        mdp.process(ByteBuffer.wrap(bytes), Channels.newChannel(html));
+        assertEquals(expected, StandardCharsets.UTF_8.newDecoder()
+                .onMalformedInput(CodingErrorAction.REPORT)
+                .decode(ByteBuffer.wrap(html.toByteArray())).toString(), markdown);
+
+        var chars = new StringBuilder();
+        mdp.process(bytes, chars);
+        assertEquals(expected, chars.toString(), markdown);
+    }
+
+    private String processBytes(byte[] markdown) throws IOException {
+        var html = new ByteArrayOutputStream();
+        ByteBuffer direct = ByteBuffer.allocateDirect(markdown.length).put(markdown).flip();
+        mdp.process(direct, Channels.newChannel(html));
+        assertEquals(0, direct.position());
+        return html.toString(StandardCharsets.UTF_8);
+    }
+
+    @Test
+    void test_processCached() throws IOException, URISyntaxException {
+        var cached = new MarkdownProcessor(null, new RenderCache(1 << 20));
+        for (String markdownFile : new String[]{"basic01_text.md", "basic05_emphasis.md", "basic06_blockquotes.md"}) {
+            URL resourceMd = Thread.currentThread().getContextClassLoader().getResource(markdownFile);
+            assertNotNull(resourceMd);
+            String expected = mdp.process(resourceMd.toURI());
+            assertEquals(expected, cached.process(resourceMd.toURI()), markdownFile);
+            assertEquals(expected, cached.process(resourceMd.toURI()), markdownFile);
+        }
+        assertEquals(3, cached.getRenderCache().getMisses());
+        assertEquals(3, cached.getRenderCache().getHits());
+
+        // the same content under another name is a hit, changed content is a miss:
+        Path copy = Files.createTempFile("markdown-processor-", ".md");
+        try {
+            URL resourceMd = Thread.currentThread().getContextClassLoader().getResource("basic01_text.md");
+            assertNotNull(resourceMd);
+            Files.write(copy, Files.readAllBytes(Paths.get(resourceMd.toURI())));
+            assertEquals(mdp.process(resourceMd.toURI()), cached.process(copy.toUri()));
+            assertEquals(4, cached.getRenderCache().getHits());
+
+            Files.writeString(copy, "Changed *text*", StandardCharsets.UTF_8);
+            assertEquals(mdp.process(copy.toUri()), cached.process(copy.toUri()));
+            assertEquals(4, cached.getRenderCache().getMisses());
+        } finally {
+            Files.deleteIfExists(copy);
+        }
+    }
+}
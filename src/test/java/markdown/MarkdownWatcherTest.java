@@ -0,0 +1,117 @@
+package markdown;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class MarkdownWatcherTest {
+    private static final Duration DEBOUNCE = Duration.ofMillis(200);
+
+    private final BlockingQueue<MarkdownWatcher.Update> updates = new LinkedBlockingQueue<>();
+    private final BlockingQueue<MarkdownBatchProcessor.Summary> summaries = new LinkedBlockingQueue<>();
+    private Path inputDir;
+    private Path outputDir;
+    private MarkdownWatcher watcher;
+    private Thread watching;
+
+    @BeforeEach
+    void setUp() throws Exception {
+        inputDir = Files.createTempDirectory("markdown-watch-in-");
+        outputDir = Files.createTempDirectory("markdown-watch-out-");
+        Files.writeString(inputDir.resolve("before.md"), "# Before\n");
+        watcher = new MarkdownWatcher(inputDir, outputDir, 2, DEBOUNCE, updates::add);
+        watching = new Thread(() -> {
+            try {
+                watcher.run(summaries::add);
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+        });
+        watching.start();
+        // the batch at the start converts the existing files:
+        MarkdownBatchProcessor.Summary summary = summaries.poll(10, TimeUnit.SECONDS);
+        assertNotNull(summary, "no summary of the batch");
+        assertEquals(1, summary.getWritten());
+        assertTrue(Files.exists(outputDir.resolve("before.html")));
+    }
+
+    @AfterEach
+    void tearDown() throws Exception {
+        watcher.close();
+        watching.join(10_000);
+        assertFalse(watching.isAlive());
+        for (Path dir : List.of(inputDir, outputDir)) {
+            try (Stream<Path> paths = Files.walk(dir)) {
+                for (Path path : (Iterable<Path>) paths.sorted(Comparator.reverseOrder())::iterator)
+                    Files.delete(path);
+            }
+        }
+    }
+
+    private MarkdownWatcher.Update nextUpdate() throws InterruptedException {
+        MarkdownWatcher.Update update = updates.poll(10, TimeUnit.SECONDS);
+        assertNotNull(update, "no update");
+        return update;
+    }
+
+    private static String render(Path inputFile) {
+        return new MarkdownProcessor().process(inputFile.toUri()) + System.lineSeparator();
+    }
+
+    @Test
+    void test_rendersChangedFiles() throws Exception {
+        Path inputFile = inputDir.resolve("doc.md");
+        Files.writeString(inputFile, "# Doc\n");
+        MarkdownWatcher.Update update = nextUpdate();
+        assertEquals(inputFile, update.getInputFile());
+        assertEquals(IncrementalProcessor.Outcome.WRITTEN, update.getOutcome());
+        assertTrue(update.getElapsedNanos() > 0);
+        assertEquals(render(inputFile), Files.readString(outputDir.resolve("doc.html")));
+
+        Files.writeString(inputFile, "# Doc\n\nchanged\n");
+        assertEquals(IncrementalProcessor.Outcome.WRITTEN, nextUpdate().getOutcome());
+        assertEquals(render(inputFile), Files.readString(outputDir.resolve("doc.html")));
+
+        // saved again without a change:
+        Files.writeString(inputFile, "# Doc\n\nchanged\n");
+        assertEquals(IncrementalProcessor.Outcome.SKIPPED, nextUpdate().getOutcome());
+    }
+
+    @Test
+    void test_coalescesBursts() throws Exception {
+        Path inputFile = inputDir.resolve("burst.md");
+        for (int i = 0; i < 20; i++)
+            Files.writeString(inputFile, "# Burst " + i + "\n");
+        assertEquals(IncrementalProcessor.Outcome.WRITTEN, nextUpdate().getOutcome());
+        assertNull(updates.poll(3 * DEBOUNCE.toMillis(), TimeUnit.MILLISECONDS));
+        assertEquals(render(inputFile), Files.readString(outputDir.resolve("burst.html")));
+    }
+
+    @Test
+    void test_newDirectoryAndDelete() throws Exception {
+        Path dir = Files.createDirectories(inputDir.resolve("sub").resolve("dir"));
+        Path inputFile = dir.resolve("nested.md");
+        Files.writeString(inputFile, "nested *text*\n");
+        Path outputFile = outputDir.resolve("sub").resolve("dir").resolve("nested.html");
+        assertEquals(inputFile, nextUpdate().getInputFile());
+        assertEquals(render(inputFile), Files.readString(outputFile));
+
+        Files.delete(inputFile);
+        MarkdownWatcher.Update update = nextUpdate();
+        assertTrue(update.isDeleted());
+        assertFalse(Files.exists(outputFile));
+    }
+}
@@ -0,0 +1,117 @@
+package markdown;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class RenderCacheTest {
+
+    private static String html(int i) {
+        return "<p>" + "x".repeat(100) + i + "</p>";
+    }
+
+    @Test
+    void test_getAndPut() {
+        RenderCache cache = new RenderCache(1 << 16);
+        assertNull(cache.get("a"));
+        cache.put("a", "<p>a</p>");
+        assertEquals("<p>a</p>", cache.get("a"));
+        cache.put("a", "<p>b</p>");
+        assertEquals("<p>b</p>", cache.get("a"));
+        assertEquals(1, cache.size());
+        assertEquals(RenderCache.weigh("a", "<p>b</p>"), cache.getBytes());
+        assertEquals(2, cache.getHits());
+        assertEquals(1, cache.getMisses());
+        assertEquals(0, cache.getEvictions());
+
+        cache.clear();
+        assertEquals(0, cache.size());
+        assertEquals(0, cache.getBytes());
+        assertNull(cache.get("a"));
+    }
+
+    @Test
+    void test_boundedByBytes() {
+        long weight = RenderCache.weigh("key0", html(0));
+        RenderCache cache = new RenderCache(10 * weight, 1);
+        for (int i = 0; i < 100; i++) {
+            cache.put("key" + (i % 10), html(i % 10));     // same weight for all keys 0..9
+            cache.put("other" + i, html(i));
+            assertTrue(cache.getBytes() <= cache.getMaxBytes(), cache.toString());
+        }
+        assertTrue(cache.getEvictions() > 0);
+        assertTrue(cache.size() <= 10);
+    }
+
+    @Test
+    void test_oversizedEntryIsNotCached() {
+        RenderCache cache = new RenderCache(1000, 1);
+        cache.put("small", "<p>small</p>");
+        cache.put("big", "x".repeat(1000));
+        assertNull(cache.get("big"));
+        assertEquals("<p>small</p>", cache.get("small"));
+        assertEquals(0, cache.getEvictions());
+    }
+
+    @Test
+    void test_scanResistant() {
+        long weight = RenderCache.weigh("hot0", html(0));
+        RenderCache cache = new RenderCache(20 * weight, 1);
+        // a hot set which is requested again and again:
+        for (int round = 0; round < 2; round++)
+            for (int i = 0; i < 10; i++)
+                cache.computeIfAbsent("hot" + i, key -> html(0));
+        // a crawler requests many pages once:
+        for (int i = 0; i < 1000; i++)
+            cache.computeIfAbsent("scan" + i, key -> html(0));
+        for (int i = 0; i < 10; i++)
+            assertNotNull(cache.get("hot" + i), "hot" + i);
+        assertTrue(cache.getBytes() <= cache.getMaxBytes());
+    }
+
+    @Test
+    void test_computeIfAbsent() {
+        RenderCache cache = new RenderCache(1 << 16);
+        AtomicInteger renders = new AtomicInteger();
+        for (int i = 0; i < 5; i++)
+            assertEquals("<p>a</p>", cache.computeIfAbsent("a", key -> {
+                renders.incrementAndGet();
+                return "<p>a</p>";
+            }));
+        assertEquals(1, renders.get());
+        assertNull(cache.computeIfAbsent("failed", key -> null));
+        assertEquals(1, cache.size());
+    }
+
+    @Test
+    void test_concurrent() throws Exception {
+        RenderCache cache = new RenderCache(200 * RenderCache.weigh("key000", html(0)));
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        try {
+            List<Future<?>> futures = new ArrayList<>();
+            for (int t = 0; t < 8; t++) {
+                int seed = t;
+                futures.add(executor.submit(() -> {
+                    for (int i = 0; i < 5000; i++) {
+                        int k = (i * 31 + seed * 7) % 400;
+                        String html = cache.computeIfAbsent(String.format("key%03d", k), key -> html(k));
+                        assertEquals(html(k), html);
+                    }
+                }));
+            }
+            for (Future<?> future : futures)
+                future.get();
+        } finally {
+            executor.shutdown();
+        }
+        assertEquals(8 * 5000, cache.getHits() + cache.getMisses());
+        assertTrue(cache.getBytes() <= cache.getMaxBytes(), cache.toString());
+    }
+}
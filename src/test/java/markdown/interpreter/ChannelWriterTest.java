@@ -0,0 +1,65 @@
+package markdown.interpreter;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.channels.Channels;
+import java.nio.charset.StandardCharsets;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ChannelWriterTest {
+    private static final String TEXT = "<p>Grüße aus Wien 😀 — schön €</p>\n";
+
+    private static byte[] write(String text, int bufferSize) throws IOException {
+        var bytes = new ByteArrayOutputStream();
+        try (var writer = new ChannelWriter(Channels.newChannel(bytes), bufferSize)) {
+            int third = text.length() / 3;
+            writer.write(text, 0, third);
+            writer.append(new StringBuilder(text), third, 2 * third);
+            writer.write(text.substring(2 * third).toCharArray());
+        }
+        return bytes.toByteArray();
+    }
+
+    @Test
+    void test_Utf8() throws IOException {
+        assertArrayEquals(TEXT.getBytes(StandardCharsets.UTF_8), write(TEXT, ChannelWriter.DEFAULT_BUFFER_SIZE));
+    }
+
+    @Test
+    void test_SmallBuffers() throws IOException {
+        String text = TEXT.repeat(20);
+        for (int bufferSize = 2; bufferSize < 10; bufferSize++)
+            assertArrayEquals(text.getBytes(StandardCharsets.UTF_8), write(text, bufferSize), "bufferSize=" + bufferSize);
+    }
+
+    @Test
+    void test_PooledBytes() throws IOException {
+        // the encoded chunk of chars is larger than the pooled buffer, which is written out whenever it is full:
+        var pool = new DirectBufferPool(4, 1);
+        String text = TEXT.repeat(20);
+        for (int bufferSize = 2; bufferSize < 40; bufferSize += 7) {
+            var out = new ByteArrayOutputStream();
+            try (var writer = new ChannelWriter(Channels.newChannel(out), bufferSize, pool)) {
+                writer.write(text);
+            }
+            assertArrayEquals(text.getBytes(StandardCharsets.UTF_8), out.toByteArray(), "bufferSize=" + bufferSize);
+            assertEquals(1, pool.size(), "the buffer is given back");
+        }
+    }
+
+    @Test
+    void test_UnpairedSurrogateIsReplaced() throws IOException {
+        String text = "a\ud83d";
+        assertArrayEquals(text.getBytes(StandardCharsets.UTF_8), write(text, 4));
+    }
+
+    @Test
+    void test_WriteAfterClose() throws IOException {
+        var writer = new ChannelWriter(Channels.newChannel(new ByteArrayOutputStream()));
+        writer.close();
+        assertThrows(IOException.class, () -> writer.write('x'));
+    }
+}
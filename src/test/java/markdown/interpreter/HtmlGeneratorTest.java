@@ -1,12 +1,16 @@
 package markdown.interpreter;
 
 import markdown.nodes.MdDoc;
+import markdown.nodes.MdEmphasis;
 import markdown.nodes.MdHeading;
 import markdown.nodes.MdParagraph;
 import markdown.nodes.MdText;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 
+import java.io.IOException;
+import java.io.StringWriter;
+
 import static org.junit.jupiter.api.Assertions.*;
 
 class HtmlGeneratorTest {
@@ -176,4 +180,70 @@ class HtmlGeneratorTest {
         assertEquals( actual, expected );
     }
 
-}
\ No newline at end of file
+    @Test
+    void test_HeadingBeyondTable() {
+        var doc = new MdDoc();
+        doc.addChild(new MdHeading(7, "Heading 7"));
+        var expected = DOCTYPE_HTML_BODY_BEGIN + """
+            <h7>Heading 7 </h7>
+            """+ BODY_HTML_END;
+        assertEquals( expected, htmlGenerator.generate(doc) );
+    }
+
+    @Test
+    void test_Emphasis() {
+        var doc = new MdDoc();
+        var paragraph = new MdParagraph();
+        for (String kind : new String[] { "*", "**", "***" }) {
+            var emphasis = new MdEmphasis(kind);
+            emphasis.addChild(new MdText(kind.length() + ""));
+            paragraph.addChild(emphasis);
+        }
+        doc.addChild(paragraph);
+        var expected = DOCTYPE_HTML_BODY_BEGIN + """
+            <p><i>1 </i><b>2 </b><b><i>3 </i></b></p>
+            """+ BODY_HTML_END;
+        assertEquals( expected, htmlGenerator.generate(doc) );
+    }
+
+    @Test
+    void test_EstimateLength() {
+        assertEquals( 256, HtmlGeneratorVisitor.estimateLength(-1) );
+        assertEquals( 64 + 1000 + 250, HtmlGeneratorVisitor.estimateLength(1000) );
+        assertEquals( Integer.MAX_VALUE - 8, HtmlGeneratorVisitor.estimateLength(Integer.MAX_VALUE) );
+    }
+
+    @Test
+    void test_GenerateIntoAppendable() throws IOException {
+        var doc = new MdDoc();
+        doc.addChild(new MdHeading(1, "Heading 1"));
+        var paragraph = new MdParagraph();
+        paragraph.addChild(new MdText("Text"));
+        doc.addChild(paragraph);
+        var writer = new StringWriter();
+        htmlGenerator.generate(doc, writer);
+        assertEquals( htmlGenerator.generate(doc), writer.toString() );
+    }
+
+    @Test
+    void test_GenerateIntoFailingAppendable() {
+        Appendable failing = new Appendable() {
+            @Override
+            public Appendable append(CharSequence csq) throws IOException {
+                throw new IOException("disk full");
+            }
+
+            @Override
+            public Appendable append(CharSequence csq, int start, int end) throws IOException {
+                throw new IOException("disk full");
+            }
+
+            @Override
+            public Appendable append(char c) throws IOException {
+                throw new IOException("disk full");
+            }
+        };
+        var e = assertThrows(IOException.class, () -> htmlGenerator.generate(new MdDoc(), failing));
+        assertEquals("disk full", e.getMessage());
+    }
+}
@@ -0,0 +1,67 @@
+package markdown.interpreter;
+
+import markdown.parser.Utf8Source;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.charset.StandardCharsets;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class Utf8ChannelWriterTest {
+    private static final String TEXT = "<p>Grüße aus Wien 😀 — schön €</p>\n";
+
+    private static byte[] write(String text, DirectBufferPool pool) throws IOException {
+        var bytes = new ByteArrayOutputStream();
+        var source = new Utf8Source(ByteBuffer.wrap(text.getBytes(StandardCharsets.UTF_8)));
+        try (var writer = new Utf8ChannelWriter(Channels.newChannel(bytes), pool)) {
+            int third = text.length() / 3;
+            writer.write(text, 0, third);
+            writer.append(new StringBuilder(text), third, 2 * third);
+            writer.write(text.substring(2 * third).toCharArray());
+            // the same again, copied as bytes:
+            writer.append(source, 0, source.length());
+        }
+        return bytes.toByteArray();
+    }
+
+    @Test
+    void test_Utf8() throws IOException {
+        assertArrayEquals((TEXT + TEXT).getBytes(StandardCharsets.UTF_8), write(TEXT, DirectBufferPool.SHARED));
+    }
+
+    @Test
+    void test_SmallBuffers() throws IOException {
+        String text = TEXT.repeat(20);
+        for (int bufferSize = 4; bufferSize < 10; bufferSize++) {
+            assertArrayEquals((text + text).getBytes(StandardCharsets.UTF_8),
+                    write(text, new DirectBufferPool(bufferSize, 1)), "bufferSize=" + bufferSize);
+        }
+    }
+
+    @Test
+    void test_UnpairedSurrogateIsReplaced() throws IOException {
+        for (String text : new String[] { "a\ud83d", "a\ud83db", "a\ude00b", "\ud83d😀" }) {
+            var bytes = new ByteArrayOutputStream();
+            try (var writer = new Utf8ChannelWriter(Channels.newChannel(bytes))) {
+                writer.write(text);
+            }
+            assertArrayEquals(text.getBytes(StandardCharsets.UTF_8), bytes.toByteArray(), text);
+        }
+    }
+
+    @Test
+    void test_BufferIsPooled() throws IOException {
+        var pool = new DirectBufferPool(16, 2);
+        var writer = new Utf8ChannelWriter(Channels.newChannel(new ByteArrayOutputStream()), pool);
+        assertEquals(0, pool.size());
+        writer.close();
+        assertEquals(1, pool.size());
+        writer.close();
+        assertEquals(1, pool.size());
+        assertThrows(IOException.class, () -> writer.write('x'));
+    }
+}
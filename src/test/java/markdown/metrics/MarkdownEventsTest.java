@@ -0,0 +1,91 @@
+package markdown.metrics;
+
+import jdk.jfr.Recording;
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordingFile;
+import markdown.interpreter.HtmlGeneratorVisitor;
+import markdown.nodes.MdDoc;
+import markdown.parser.MarkdownLexer;
+import markdown.parser.MarkdownParser;
+import org.junit.jupiter.api.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.StringWriter;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class MarkdownEventsTest {
+    private static final String MARKDOWN = "# Title\n\nSome *emphasized* text\n> a quote\n";
+    private static final String[] EVENTS = {"markdown.Lex", "markdown.Parse", "markdown.Render"};
+
+    private static List<RecordedEvent> record(Duration threshold, Runnable work) throws IOException {
+        Path file = Files.createTempFile("markdown", ".jfr");
+        try (Recording recording = new Recording()) {
+            for (String event : EVENTS)
+                recording.enable(event).withThreshold(threshold);
+            recording.start();
+            work.run();
+            recording.stop();
+            recording.dump(file);
+            return RecordingFile.readAllEvents(file).stream()
+                    .filter(event -> event.getEventType().getName().startsWith("markdown."))
+                    .collect(Collectors.toList());
+        } finally {
+            Files.deleteIfExists(file);
+        }
+    }
+
+    private static RecordedEvent single(List<RecordedEvent> events, String name) {
+        List<RecordedEvent> named = events.stream()
+                .filter(event -> event.getEventType().getName().equals(name))
+                .collect(Collectors.toList());
+        assertEquals(1, named.size(), name);
+        return named.get(0);
+    }
+
+    @Test
+    void test_events() throws IOException {
+        File path = new File("doc.md");
+        StringWriter html = new StringWriter();
+        List<RecordedEvent> events = record(Duration.ZERO, () -> {
+            MdDoc doc = MarkdownParser.parse(path, new MarkdownLexer(false).tokenizeToBuffer(MARKDOWN));
+            try {
+                new HtmlGeneratorVisitor().generate(doc, html);
+            } catch (IOException e) {
+                throw new AssertionError(e);
+            }
+        });
+        assertEquals(3, events.size());
+
+        RecordedEvent lex = single(events, "markdown.Lex");
+        assertNull(lex.getString("path"));
+        assertEquals(MARKDOWN.length(), lex.getLong("inputLength"));
+        long tokens = lex.getLong("tokenCount");
+        assertTrue(tokens > 0);
+
+        RecordedEvent parse = single(events, "markdown.Parse");
+        assertEquals(path.getPath(), parse.getString("path"));
+        assertEquals(MARKDOWN.length(), parse.getLong("inputLength"));
+        assertEquals(tokens, parse.getLong("tokenCount"));
+        long nodes = parse.getLong("nodeCount");
+        assertTrue(nodes > 1);
+
+        RecordedEvent render = single(events, "markdown.Render");
+        assertEquals(path.getPath(), render.getString("path"));
+        assertEquals(nodes, render.getLong("nodeCount"));
+        assertEquals(html.toString().length(), render.getLong("outputLength"));
+    }
+
+    @Test
+    void test_threshold() throws IOException {
+        List<RecordedEvent> events = record(Duration.ofHours(1),
+                () -> new HtmlGeneratorVisitor().generate(MarkdownParser.parse(MARKDOWN)));
+        assertTrue(events.isEmpty());
+    }
+}
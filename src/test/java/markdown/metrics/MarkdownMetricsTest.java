@@ -0,0 +1,152 @@
+package markdown.metrics;
+
+import markdown.MarkdownProcessor;
+import markdown.interpreter.HtmlGeneratorVisitor;
+import markdown.nodes.MdDoc;
+import markdown.parser.MarkdownLexer;
+import markdown.parser.MarkdownParser;
+import markdown.parser.MarkdownTokenStream;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import javax.management.Attribute;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.lang.management.ManagementFactory;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class MarkdownMetricsTest {
+    private static final String MARKDOWN = "# Title\n\nSome *emphasized* text\n> a quote\n";
+
+    @AfterEach
+    void tearDown() {
+        MarkdownMetrics.disable();
+        MarkdownMetrics.getInstance().reset();
+    }
+
+    @Test
+    void test_disabled() {
+        MarkdownMetrics metrics = MarkdownMetrics.getInstance();
+        MarkdownMetrics.disable();
+        metrics.reset();
+        new HtmlGeneratorVisitor().generate(MarkdownParser.parse(MARKDOWN));
+        assertEquals(0, metrics.getDocuments());
+        assertEquals(0, metrics.getInputChars());
+        assertTrue(metrics.getLatencies().isEmpty());
+    }
+
+    @Test
+    void test_recording() throws Exception {
+        MarkdownMetrics metrics = MarkdownMetrics.getInstance();
+        MarkdownMetrics.enable();
+        metrics.reset();
+        MdDoc doc = MarkdownParser.parse(MARKDOWN);
+        String html = new HtmlGeneratorVisitor().generate(doc);
+        StringWriter out = new StringWriter();
+        new HtmlGeneratorVisitor().generate(doc, out);
+
+        assertEquals(1, metrics.getDocuments());
+        assertEquals(MARKDOWN.length(), metrics.getInputChars());
+        assertTrue(metrics.getTokens() > 0);
+        assertTrue(metrics.getNodes() > 1);
+        assertEquals(2L * html.length(), metrics.getOutputChars());
+
+        List<PhaseLatency> latencies = metrics.getLatencies();
+        assertEquals(3, latencies.size());
+        assertEquals("lex", latencies.get(0).getPhase());
+        assertEquals("<1K chars", latencies.get(0).getInputSize());
+        assertEquals("parse", latencies.get(1).getPhase());
+        assertEquals("<1K tokens", latencies.get(1).getInputSize());
+        assertEquals("generate", latencies.get(2).getPhase());
+        assertEquals(2, latencies.get(2).getCount());
+    }
+
+    @Test
+    void test_mbean() throws Exception {
+        MarkdownMetrics.enable();
+        MarkdownMetrics.getInstance().reset();
+        MarkdownParser.parse(MARKDOWN);
+
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        ObjectName name = new ObjectName(MarkdownMetrics.OBJECT_NAME);
+        assertTrue(server.isRegistered(name));
+        assertEquals(1L, server.getAttribute(name, "Documents"));
+        assertEquals(true, server.getAttribute(name, "Enabled"));
+        server.invoke(name, "reset", null, null);
+        assertEquals(0L, server.getAttribute(name, "Documents"));
+    }
+
+    @Test
+    void test_enableOverJmx() throws Exception {
+        MarkdownMetrics.getInstance();
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        ObjectName name = new ObjectName(MarkdownMetrics.OBJECT_NAME);
+        assertTrue(server.isRegistered(name), "registered while the recording is off");
+        assertEquals(false, server.getAttribute(name, "Enabled"));
+
+        server.setAttribute(name, new Attribute("Enabled", true));
+        assertTrue(MarkdownMetrics.isRecording());
+    }
+
+    @Test
+    void test_recordingStream() throws Exception {
+        MarkdownMetrics metrics = MarkdownMetrics.getInstance();
+        MarkdownMetrics.enable();
+        metrics.reset();
+        Path file = Files.createTempFile("markdown-metrics-", ".md");
+        try {
+            Files.writeString(file, MARKDOWN);
+            new MarkdownProcessor().process(file.toUri());
+        } finally {
+            Files.delete(file);
+        }
+
+        assertEquals(1, metrics.getDocuments());
+        assertEquals(MARKDOWN.length(), metrics.getInputChars());
+        assertTrue(metrics.getTokens() > 0);
+        assertEquals(1, metrics.getLexLatency().getCount(0));
+
+        // a stream which is closed early records what it lexed up to there:
+        metrics.reset();
+        try (MarkdownTokenStream tokens = new MarkdownLexer(true).tokenStream(new StringReader(MARKDOWN))) {
+            tokens.next();
+        }
+        assertEquals(1, metrics.getLexLatency().getCount(0));
+        assertTrue(metrics.getTokens() >= 1);
+    }
+
+    @Test
+    void test_histogram() {
+        LatencyHistogram histogram = new LatencyHistogram("test", "chars");
+        for (int i = 0; i < 99; i++)
+            histogram.record(100, 1000);
+        histogram.record(100, 1_000_000);
+        histogram.record(1 << 20, 5);
+
+        assertEquals(0, LatencyHistogram.sizeClass(0));
+        assertEquals(1, LatencyHistogram.sizeClass(1 << 10));
+        assertEquals(4, LatencyHistogram.sizeClass(Long.MAX_VALUE));
+        assertEquals(100, histogram.getCount(0));
+        assertEquals(99 * 1000 + 1_000_000, histogram.getTotalNanos(0));
+        assertEquals(1_000_000, histogram.getMaxNanos(0));
+        assertEquals(1023, histogram.getPercentileNanos(0, 50));
+        assertEquals(1023, histogram.getPercentileNanos(0, 99));
+        assertEquals((1 << 20) - 1, histogram.getPercentileNanos(0, 100));
+        assertEquals(7, histogram.getPercentileNanos(3, 50));
+        assertEquals(0, histogram.getPercentileNanos(1, 50));
+
+        PhaseLatency[] summaries = histogram.summarize();
+        assertEquals(2, summaries.length);
+        assertEquals("<4M chars", summaries[1].getInputSize());
+
+        histogram.reset();
+        assertEquals(0, histogram.getCount(0));
+        assertEquals(0, histogram.summarize().length);
+    }
+}
@@ -0,0 +1,182 @@
+package markdown.nodes;
+
+import markdown.interpreter.HtmlGeneratorVisitor;
+import markdown.interpreter.Visitor;
+import markdown.parser.MarkdownLexer;
+import markdown.parser.MarkdownParser;
+import org.junit.jupiter.api.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class FlatDocTest {
+    private static final String[] SAMPLES = {"basic01_text.md", "basic02_headings.md", "basic03_paragraphs.md",
+            "basic04_linebreaks.md", "basic05_emphasis.md", "basic06_blockquotes.md"};
+
+    private static String read(String resource) throws IOException {
+        try (InputStream in = FlatDocTest.class.getResourceAsStream("/" + resource)) {
+            assertNotNull(in, resource);
+            return new String(in.readAllBytes(), StandardCharsets.UTF_8);
+        }
+    }
+
+    @Test
+    void test_roundTrip() throws IOException {
+        for (String sample : SAMPLES) {
+            MdDoc doc = MarkdownParser.parse(new File(sample), new MarkdownLexer(true).tokenize(read(sample)));
+            FlatDoc flat = FlatDoc.of(doc);
+            MdDoc back = flat.toDoc();
+            assertEquals(doc, back, sample);
+            assertEquals(doc.toString(), back.toString(), sample);
+            assertEquals(doc.getFilePath(), back.getFilePath());
+        }
+    }
+
+    @Test
+    void test_utf8Source() {
+        String markdown = "# Grüße\n\n*schön* 😀\n";
+        MdDoc doc = MarkdownParser.parse(null, new MarkdownLexer(true).tokenizeToBuffer(
+                ByteBuffer.wrap(markdown.getBytes(StandardCharsets.UTF_8))));
+        FlatDoc flat = FlatDoc.of(doc);
+        assertEquals(MarkdownParser.parse(markdown), flat.toDoc());
+        assertEquals(new HtmlGeneratorVisitor().generate(doc), new HtmlGeneratorVisitor().generate(flat));
+    }
+
+    @Test
+    void test_visitor() throws IOException {
+        HtmlGeneratorVisitor generator = new HtmlGeneratorVisitor();
+        for (String sample : SAMPLES) {
+            MdDoc doc = MarkdownParser.parse(null, new MarkdownLexer(true).tokenize(read(sample)));
+            FlatDoc flat = FlatDoc.of(doc);
+            flat.trimToSize();
+            assertEquals(generator.generate(doc), generator.generate(flat), sample);
+        }
+    }
+
+    @Test
+    void test_nestedEmphasis() {
+        // the end-tag of the outer emphasis is written after the inner one was visited:
+        FlatDoc flat = new FlatDoc(null);
+        int paragraph = flat.addChild(0, FlatDoc.PARAGRAPH, null, 0);
+        int bold = flat.addChild(paragraph, FlatDoc.EMPHASIS, "**", MdEmphasis.Kind.BOLD.ordinal());
+        int italic = flat.addChild(bold, FlatDoc.EMPHASIS, "_", MdEmphasis.Kind.ITALIC.ordinal());
+        flat.addChild(italic, FlatDoc.TEXT, "a", 0);
+        flat.addChild(bold, FlatDoc.TEXT, "b", 0);
+
+        HtmlGeneratorVisitor generator = new HtmlGeneratorVisitor();
+        assertEquals(generator.generate(flat.toDoc()), generator.generate(flat));
+        assertTrue(generator.generate(flat).contains("<p><b><i>a </i>b </b></p>"));
+    }
+
+    @Test
+    void test_structure() {
+        FlatDoc flat = new FlatDoc(null);
+        int heading = flat.addChild(0, FlatDoc.HEADING, null, 2);
+        int text = flat.addChild(heading, FlatDoc.TEXT, "xtitlex", 1, 6, 0);
+        int html = flat.addChild(0, FlatDoc.HTML, "<hr>", 0);
+
+        assertEquals(4, flat.size());
+        assertEquals(heading, flat.firstChild(0));
+        assertEquals(html, flat.nextSibling(heading));
+        assertEquals(FlatDoc.NONE, flat.nextSibling(html));
+        assertEquals(heading, flat.parent(text));
+        assertEquals("title", flat.value(text));
+        assertNull(flat.value(heading));
+        assertEquals(2, flat.info(heading));
+        assertThrows(IllegalArgumentException.class, () -> flat.addChild(0, FlatDoc.DOC, null, 0));
+        assertThrows(IndexOutOfBoundsException.class, () -> flat.addChild(9, FlatDoc.TEXT, "x", 0));
+
+        MdDoc doc = flat.toDoc();
+        assertEquals(2, doc.getChildCount());
+        assertEquals(2, ((MdHeading) doc.getChild(0)).getLevel());
+        assertEquals("title", doc.getChild(0).getChild(0).getValue());
+        assertEquals("<hr>", doc.getChild(1).getValue());
+    }
+
+    @Test
+    void test_addAfterTrim() {
+        FlatDoc flat = new FlatDoc(null);
+        int paragraph = flat.addChild(0, FlatDoc.PARAGRAPH, null, 0);
+        flat.addChild(paragraph, FlatDoc.TEXT, "a", 0);
+        flat.trimToSize();
+        flat.addChild(paragraph, FlatDoc.TEXT, "b", 0);
+        flat.addChild(0, FlatDoc.BREAK, null, 0);
+
+        MdDoc expected = new MdDoc();
+        MdParagraph expectedParagraph = new MdParagraph("a");
+        expectedParagraph.addChild(new MdText("b"));
+        expected.addChild(expectedParagraph);
+        expected.addChild(new MdBreak());
+        assertEquals(expected, flat.toDoc());
+        assertEquals("ab", flat.getValues());
+    }
+
+    @Test
+    void test_accept() throws IOException {
+        MdDoc doc = MarkdownParser.parse(null, new MarkdownLexer(true).tokenize(read("basic06_blockquotes.md")));
+        TracingVisitor expected = new TracingVisitor();
+        doc.accept(expected);
+        TracingVisitor actual = new TracingVisitor();
+        FlatDoc.of(doc).accept(actual);
+        assertEquals(expected.trace.toString(), actual.trace.toString());
+    }
+
+
+    /**
+     * Records the visited nodes with their values, and the ends of their children.
+     */
+    private static class TracingVisitor implements Visitor {
+        final StringBuilder trace = new StringBuilder();
+
+        private void visit(String name, MdNode node) {
+            trace.append(name).append('(').append(node.getValue()).append(")[");
+            node.acceptChildren(this);
+            trace.append(']');
+        }
+
+        @Override
+        public void visitDoc(MdDoc doc) {
+            visit("doc", doc);
+        }
+
+        @Override
+        public void visitParagraph(MdParagraph paragraph) {
+            visit("p", paragraph);
+        }
+
+        @Override
+        public void visitHeading(MdHeading heading) {
+            visit("h" + heading.getLevel(), heading);
+        }
+
+        @Override
+        public void visitHtml(MdHtml html) {
+            visit("html", html);
+        }
+
+        @Override
+        public void visitBlockQuote(MdBlockQuote mdBlockQuote) {
+            visit("quote", mdBlockQuote);
+        }
+
+        @Override
+        public void visitText(MdText text) {
+            visit("text", text);
+        }
+
+        @Override
+        public void visitBreak(MdBreak lineBreak) {
+            visit("br", lineBreak);
+        }
+
+        @Override
+        public void visitEmphasis(MdEmphasis mdEmphasis) {
+            visit("em" + mdEmphasis.getKind(), mdEmphasis);
+        }
+    }
+}
@@ -0,0 +1,123 @@
+package markdown.nodes;
+
+import markdown.interpreter.HtmlGeneratorVisitor;
+import markdown.interpreter.TreeVisitor;
+import markdown.parser.MarkdownParser;
+import org.junit.jupiter.api.Test;
+
+import java.util.Iterator;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class MdNodeTest {
+
+    @Test
+    void test_leaf() {
+        MdText text = new MdText("a");
+        assertTrue(text.isLeaf());
+        assertEquals(0, text.getChildCount());
+        assertTrue(text.getChildren().isEmpty());
+        assertThrows(IndexOutOfBoundsException.class, () -> text.getChild(0));
+    }
+
+    @Test
+    void test_addAndRemoveChildren() {
+        MdParagraph paragraph = new MdParagraph();
+        for (int i = 0; i < 10; i++)
+            paragraph.addChild(new MdText("t" + i));
+        paragraph.addChild(0, new MdBreak());
+        assertEquals(11, paragraph.getChildCount());
+        assertTrue(paragraph.getChild(0) instanceof MdBreak);
+        assertEquals("t9", paragraph.getChild(10).getValue());
+        assertSame(paragraph, paragraph.getChild(5).getParent());
+
+        MdNode removed = paragraph.removeChild(0);
+        assertNull(removed.getParent());
+        assertFalse(paragraph.removeChild(removed));
+        assertTrue(paragraph.removeChild(new MdText("t3")));
+        assertEquals(9, paragraph.getChildCount());
+        assertEquals("t4", paragraph.getChild(3).getValue());
+
+        MdNode replaced = paragraph.setChild(0, new MdText("x"));
+        assertNull(replaced.getParent());
+        assertEquals("x", paragraph.getChild(0).getValue());
+        assertThrows(IndexOutOfBoundsException.class, () -> paragraph.addChild(11, new MdBreak()));
+    }
+
+    @Test
+    void test_childrenView() {
+        MdParagraph paragraph = new MdParagraph("a");
+        List<MdNode> children = paragraph.getChildren();
+        children.add(new MdBreak());
+        assertEquals(2, paragraph.getChildCount());
+        assertSame(paragraph, paragraph.getChild(1).getParent());
+        paragraph.addChild(new MdText("b"));
+        assertEquals(3, children.size());       // the view is live
+
+        Iterator<MdNode> it = children.iterator();
+        it.next();
+        it.next();
+        it.remove();
+        assertEquals(List.of(new MdText("a"), new MdText("b")), paragraph.getChildren());
+    }
+
+    @Test
+    void test_trimToSize() {
+        MdDoc doc = MarkdownParser.parse("# Heading\n\nSome *emphasis* and text\n\n> a quote\n");
+        MdDoc copy = MarkdownParser.parse("# Heading\n\nSome *emphasis* and text\n\n> a quote\n");
+        doc.trimToSize();
+        assertEquals(copy, doc);
+        assertEquals(copy.hashCode(), doc.hashCode());
+        doc.addChild(new MdParagraph("more"));
+        assertNotEquals(copy, doc);
+        assertEquals(copy.getChildCount() + 1, doc.getChildCount());
+    }
+
+    @Test
+    void test_walk() {
+        MdDoc doc = MarkdownParser.parse("# Heading\n\nSome *emphasis*\n");
+        StringBuilder trace = new StringBuilder();
+        doc.walk(new TreeVisitor() {
+            @Override
+            public boolean enter(MdNode node) {
+                trace.append('<').append(node.getClass().getSimpleName());
+                return !(node instanceof MdHeading);    // skip the heading's text and its exit
+            }
+
+            @Override
+            public void exit(MdNode node) {
+                trace.append('>');
+            }
+        });
+        assertEquals("<MdDoc<MdHeading<MdParagraph<MdText><MdEmphasis<MdText>>>>", trace.toString());
+    }
+
+    @Test
+    void test_deepTree() {
+        // a chain deeper than any thread-stack could recurse into:
+        int depth = 200_000;
+        MdDoc doc = new MdDoc();
+        MdDoc copy = new MdDoc();
+        MdNode node = doc;
+        MdNode copyNode = copy;
+        for (int i = 0; i < depth; i++) {
+            node.addChild(new MdEmphasis("*"));
+            node = node.getChild(0);
+            copyNode.addChild(new MdEmphasis("*"));
+            copyNode = copyNode.getChild(0);
+        }
+        node.addChild(new MdText("x"));
+        copyNode.addChild(new MdText("x"));
+
+        assertEquals(copy, doc);
+        assertEquals(copy.hashCode(), doc.hashCode());
+        assertEquals(copy.toString(), doc.toString());
+        doc.trimToSize();
+        String html = new HtmlGeneratorVisitor().generate(doc);
+        assertTrue(html.contains("<i>".repeat(depth) + "x " + "</i>".repeat(depth)));
+
+        copyNode.setValue("_");
+        assertNotEquals(copy, doc);
+    }
+}
@@ -0,0 +1,120 @@
+package markdown.parser;
+
+import markdown.nodes.MdBlockQuote;
+import markdown.nodes.MdDoc;
+import markdown.nodes.MdNode;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class IncrementalParserTest {
+    private static final String TEXT = "# Heading\n\nFirst *line*  \nSecond <br> line\r\n\n> Quote\n>> Nested\n\nLast _one_\n";
+
+    @Test
+    void test_ParseIsFullParse() {
+        var parser = new IncrementalParser();
+        assertEquals(fullParse(TEXT), parser.parse(TEXT));
+    }
+
+    @Test
+    void test_EditReusesTheOtherBlocks() {
+        var parser = new IncrementalParser();
+        MdDoc doc = parser.parse(TEXT);
+        List<MdNode> before = new ArrayList<>(doc.getChildren());
+
+        int offset = TEXT.indexOf("Quote");
+        String text = edit(TEXT, offset, 5, "Citation");
+        assertSame(doc, parser.reparse(doc, TEXT, offset, 5, "Citation"));
+        assertEquals(fullParse(text), doc);
+
+        List<MdNode> after = doc.getChildren();
+        assertEquals(before.size(), after.size());
+        // only the blocks next to the edit are parsed again:
+        assertSame(before.get(0), after.get(0));
+        assertSame(before.get(after.size() - 1), after.get(after.size() - 1));
+        int quote = after.size() - 2;
+        assertTrue(after.get(quote) instanceof MdBlockQuote);
+        assertNotSame(before.get(quote), after.get(quote));
+    }
+
+    @Test
+    void test_Edits() {
+        var parser = new IncrementalParser();
+        String text = TEXT;
+        MdDoc doc = parser.parse(text);
+        String[][] edits = {
+                {"0", "1", ""},             // "# Heading" becomes a paragraph
+                {"0", "0", "## "},
+                {"9", "1", ""},             // join the heading and the blank line
+                {"9", "0", "\n"},
+                {"20", "0", "\n\n"},        // split a paragraph
+                {"0", "0", "\r"},
+        };
+        for (String[] e : edits) {
+            int offset = Integer.parseInt(e[0]);
+            int removed = Integer.parseInt(e[1]);
+            String newText = edit(text, offset, removed, e[2]);
+            assertSame(doc, parser.reparse(doc, text, offset, removed, e[2]));
+            assertEquals(fullParse(newText), doc, newText);
+            text = newText;
+        }
+        // remove everything and start again
+        parser.reparse(doc, text, 0, text.length(), "");
+        assertEquals(fullParse(""), doc);
+        parser.reparse(doc, "", 0, 0, TEXT);
+        assertEquals(fullParse(TEXT), doc);
+    }
+
+    @Test
+    void test_RandomEdits() {
+        // no emphasis here: an edit may leave it unclosed, which the parser does not handle
+        String[] pieces = {"a", "text", " ", "  ", "\n", "\n", "\r\n", "\r", "# ", "## ", "> ", ">> ", "<b>", "</b>", "-"};
+        for (boolean isCreateCRLFEofToken : new boolean[]{false, true}) {
+            Random random = new Random(isCreateCRLFEofToken ? 42 : 7);
+            var parser = new IncrementalParser(isCreateCRLFEofToken);
+            String text = randomText(random, pieces, 200);
+            MdDoc doc = parser.parse(text);
+            for (int i = 0; i < 1000; i++) {
+                int offset = random.nextInt(text.length() + 1);
+                int removed = random.nextInt(Math.min(text.length() - offset, 8) + 1);
+                String inserted = randomText(random, pieces, random.nextInt(4));
+                String newText = edit(text, offset, removed, inserted);
+                parser.reparse(doc, text, offset, removed, inserted);
+                assertEquals(MarkdownParser.parse(null, new MarkdownLexer(isCreateCRLFEofToken).tokenize(newText).listIterator()),
+                        doc, newText);
+                text = newText.length() < 4000 ? newText : randomText(random, pieces, 200);
+                if (text != newText)
+                    doc = parser.parse(text);
+            }
+        }
+    }
+
+    @Test
+    void test_ForeignDocIsParsedAgain() {
+        var parser = new IncrementalParser();
+        parser.parse(TEXT);
+        MdDoc doc = parser.reparse(fullParse(TEXT), TEXT, 0, 0, "x");
+        assertSame(parser.getDoc(), doc);
+        assertEquals(fullParse("x" + TEXT), doc);
+    }
+
+
+    private static MdDoc fullParse(String text) {
+        return MarkdownParser.parse(null, new MarkdownLexer(true).tokenize(text).listIterator());
+    }
+
+    private static String edit(String text, int offset, int removed, String inserted) {
+        return text.substring(0, offset) + inserted + text.substring(offset + removed);
+    }
+
+    private static String randomText(Random random, String[] pieces, int count) {
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < count; i++)
+            sb.append(pieces[random.nextInt(pieces.length)]);
+        return sb.toString();
+    }
+}
@@ -0,0 +1,91 @@
+package markdown.parser;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class MappedFileReaderTest {
+    private static final String TEXT = "# Überschrift\n\nGrüße aus Wien 😀 — *schön*  \n> Zitat €\n";
+
+    private Path file;
+
+    @BeforeEach
+    void setUp() throws IOException {
+        file = Files.createTempFile("mapped-file-reader-", ".md");
+    }
+
+    @AfterEach
+    void tearDown() throws IOException {
+        Files.deleteIfExists(file);
+    }
+
+    private static String readAll(Reader reader, int chunk) throws IOException {
+        StringBuilder sb = new StringBuilder();
+        char[] buffer = new char[chunk];
+        int count;
+        while ((count = reader.read(buffer, 0, chunk)) >= 0)
+            sb.append(buffer, 0, count);
+        return sb.toString();
+    }
+
+    @Test
+    void test_Empty() throws IOException {
+        try (var reader = new MappedFileReader(file)) {
+            assertEquals(-1, reader.read(new char[16], 0, 16));
+        }
+    }
+
+    @Test
+    void test_Utf8() throws IOException {
+        Files.writeString(file, TEXT, StandardCharsets.UTF_8);
+        try (var reader = new MappedFileReader(file)) {
+            assertEquals(TEXT, readAll(reader, 1024));
+        }
+    }
+
+    @Test
+    void test_SmallRegionsAndChunks() throws IOException {
+        Files.writeString(file, TEXT.repeat(10), StandardCharsets.UTF_8);
+        for (int regionSize = 4; regionSize < 12; regionSize++) {
+            for (int chunk = 1; chunk < 4; chunk++) {
+                try (var reader = new MappedFileReader(file, regionSize)) {
+                    assertEquals(TEXT.repeat(10), readAll(reader, chunk), "regionSize=" + regionSize + ", chunk=" + chunk);
+                }
+            }
+        }
+    }
+
+    @Test
+    void test_MalformedLikeInputStreamReader() throws IOException {
+        byte[] bytes = {'a', (byte) 0xC3, 'b', (byte) 0xE2, (byte) 0x82};
+        Files.write(file, bytes);
+        String expected;
+        try (var reader = new InputStreamReader(Files.newInputStream(file), StandardCharsets.UTF_8)) {
+            expected = readAll(reader, 16);
+        }
+        try (var reader = new MappedFileReader(file, 4)) {
+            assertEquals(expected, readAll(reader, 16));
+        }
+    }
+
+    @Test
+    void test_LexerFileUri() throws IOException {
+        Files.writeString(file, TEXT, StandardCharsets.UTF_8);
+        var expected = new MarkdownLexer(true).tokenize(TEXT);
+        assertEquals(expected, new MarkdownLexer(true).tokenize(file.toUri()));
+        try (var stream = new MarkdownLexer(true).tokenStream(file.toUri())) {
+            for (MarkdownToken token : expected)
+                assertEquals(token, stream.next());
+            assertFalse(stream.hasNext());
+        }
+    }
+}
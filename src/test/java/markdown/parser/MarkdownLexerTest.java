@@ -2,9 +2,17 @@ package markdown.parser;
 
 import org.junit.jupiter.api.Test;
 
+import java.io.ByteArrayInputStream;
+import java.io.FilterReader;
+import java.io.IOException;
+import java.io.Reader;
+import java.io.StringReader;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
+import java.util.Random;
 
 import static org.junit.jupiter.api.Assertions.*;
 
@@ -399,6 +407,67 @@ class MarkdownLexerTest extends MarkdownTokenFactory {
         assertEquals( Arrays.asList( token1, token2 ), lexer( text ) );
     }
 
+    @Test
+    void test_RandomTextsSameOnAllPaths() throws IOException {
+        // the block-buffered window is refilled at every offset by a reader which returns a few chars at a time;
+        // the long pieces outgrow the window, so it has to keep the current text and the lookahead across refills
+        String[] pieces = { "a", "text", " ", "  ", "\t", "\n", "\n\n", "\r\n", "\r", "\n\r", "# ", "##", "> ", ">>",
+                "- ", "* ", "+ ", "*", "**", "_", "<b>", "</b>", "<", ">", "<br>", "ä", "€", "😀",
+                "x".repeat( 150 ), "<" + "y".repeat( 120 ) + ">", " ".repeat( 140 ) };
+        Random random = new Random( 3 );
+        for ( int i = 0; i < 500; i++ ) {
+            StringBuilder sb = new StringBuilder();
+            for ( int j = random.nextInt( 80 ); j > 0; j-- )
+                sb.append( pieces[random.nextInt( pieces.length )] );
+            String text = sb.toString();
+            boolean isCreateCRLFEofToken = random.nextBoolean();
+            MarkdownLexer lexer = new MarkdownLexer( isCreateCRLFEofToken );
+
+            var expected = lexer.tokenize( text );
+            var scanned = new ArrayList<MarkdownToken>();
+            MarkdownScanner scanner = new MarkdownScanner( isCreateCRLFEofToken );
+            scanner.begin( new TricklingReader( new StringReader( text ), 1 + random.nextInt( 7 ) ), scanned, 0 );
+            while ( scanner.lexNext() ) ;
+            assertEquals( expected, scanned, text );
+            assertEquals( text.length(), scanner.getCharsRead(), text );
+
+            byte[] utf8 = text.getBytes( StandardCharsets.UTF_8 );
+            assertEquals( expected, lexer.tokenize( new ByteArrayInputStream( utf8 ) ), text );
+            assertEquals( expected, lexer.tokenizeToBuffer( text ).asList(), text );
+            // the tokens of the bytes reference bytes, so only their decoded values are the same:
+            assertEquals( values( expected ), values( lexer.tokenizeToBuffer( ByteBuffer.wrap( utf8 ) ).asList() ), text );
+            var streamed = new ArrayList<MarkdownToken>();
+            try ( MarkdownTokenStream stream = lexer.tokenStream( new StringReader( text ) ) ) {
+                stream.forEachRemaining( streamed::add );
+            }
+            assertEquals( expected, streamed, text );
+        }
+    }
+
+    private static List<String> values( List<MarkdownToken> tokens ) {
+        var values = new ArrayList<String>();
+        for ( MarkdownToken token : tokens )
+            values.add( token.getType() + ":" + token.getValue() );
+        return values;
+    }
+
+    /**
+     * Returns at most maxChars per read, like a slow network input.
+     */
+    private static class TricklingReader extends FilterReader {
+        private final int maxChars;
+
+        TricklingReader( Reader in, int maxChars ) {
+            super( in );
+            this.maxChars = maxChars;
+        }
+
+        @Override
+        public int read( char[] cbuf, int off, int len ) throws IOException {
+            return super.read( cbuf, off, Math.min( len, maxChars ) );
+        }
+    }
+
     private void testTripleToken( String text, MarkdownToken t1, MarkdownToken t2, MarkdownToken t3 ) {
         assertEquals( Arrays.asList( t1, t2, t3 ), lexer( text ) );
     }
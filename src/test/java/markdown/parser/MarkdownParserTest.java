@@ -121,4 +121,65 @@ public class MarkdownParserTest {
         assertEquals( expected, actual );
     }
 
+    @Test
+    void test_nestedEmphasis() {
+        var expected = new MdDoc();
+        var paragraph = new MdParagraph("x ");
+        var outer = new MdEmphasis("*");
+        var inner = new MdEmphasis("_");
+        inner.addChild( new MdText("b") );
+        outer.addChild( new MdText("a ") );
+        outer.addChild( inner );
+        outer.addChild( new MdText(" c") );
+        paragraph.addChild( outer );
+        expected.addChild( paragraph );
+        var actual = MarkdownParser.parse("x *a _b_ c*");
+        assertEquals( expected, actual );
+    }
+
+    @Test
+    void test_deeplyNestedEmphasis() {
+        int depth = 100_000;
+        String markdown = "x " + "* _ ".repeat(depth / 2) + "y" + " _ *".repeat(depth / 2) + "\n";
+        var actual = MarkdownParser.parse(markdown);   // must not overflow the stack
+
+        int nesting = 0;
+        MdNode node = actual.getChild(0).getChild(1);
+        while (node instanceof MdEmphasis) {
+            nesting++;
+            node = node.getChildCount() > 1 ? node.getChild(1) : node.getChild(0);
+        }
+        assertEquals( depth, nesting );
+    }
+
+    @Test
+    void test_deeplyNestedBlockQuotes() {
+        int depth = 1_000;
+        StringBuilder markdown = new StringBuilder();
+        for (int i = 1; i <= depth; i++)
+            markdown.append(">".repeat(i)).append(" q\n").append(">".repeat(i)).append("\n");
+        var actual = MarkdownParser.parse(markdown.toString());
+
+        int nesting = 0;
+        MdNode node = actual.getChild(0);
+        while (node instanceof MdBlockQuote) {
+            nesting++;
+            node = node.getChild(node.getChildCount() - 1);
+        }
+        assertEquals( depth, nesting );
+    }
+
+    @Test
+    void test_blockParser() {
+        String markdown = "# Title\n\nSome *emphasized* text\n> a quote\n>> nested\n\n<b>html</b>\nThe end\n";
+        var lexer = new MarkdownLexer(true);
+        var expected = MarkdownParser.parse(null, lexer.tokenize(markdown));
+        var blocks = new MarkdownBlockParser(null, lexer.tokenStream(markdown));
+        var actual = new MdDoc();
+        while (blocks.hasNext())
+            actual.addChild(blocks.next());
+        assertEquals( expected, actual );
+        assertFalse( blocks.hasNext() );
+        assertThrows( java.util.NoSuchElementException.class, blocks::next );
+    }
 }
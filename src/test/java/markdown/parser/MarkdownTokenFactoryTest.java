@@ -0,0 +1,44 @@
+package markdown.parser;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class MarkdownTokenFactoryTest extends MarkdownTokenFactory {
+    @Test
+    void test_ValuelessTokensAreShared() {
+        assertSame(createCRLF(), createCRLF());
+        assertSame(createBR(), createBR());
+        assertEquals(new MarkdownToken(MarkdownTokenType.CRLF), createCRLF());
+    }
+
+    @Test
+    void test_ShortRunsAreShared() {
+        assertSame(createH("##"), createH("##"));
+        assertSame(createH("###"), createRun(MarkdownTokenType.H, '#', 3));
+        assertSame(createQUOTE(">"), createRun(MarkdownTokenType.QUOTE, '>', 1));
+        assertSame(createEM("**"), createRun(MarkdownTokenType.EM, '*', 2));
+        assertSame(createEM("__"), createRun(MarkdownTokenType.EM, '_', 2));
+        assertSame(createINDENT("    "), createRun(MarkdownTokenType.INDENT, ' ', 4));
+        assertSame(createUL("-"), createRun(MarkdownTokenType.UL, '-', 1));
+        assertEquals("####", createH("####").getValue());
+    }
+
+    @Test
+    void test_OtherValuesAreCreated() {
+        assertEquals(new MarkdownToken(MarkdownTokenType.EM, "*_"), createEM("*_"));
+        assertEquals(new MarkdownToken(MarkdownTokenType.H, "#######"), createRun(MarkdownTokenType.H, '#', 7));
+        assertEquals(new MarkdownToken(MarkdownTokenType.INDENT, " \t"), createINDENT(" \t"));
+        assertNotSame(createT("#"), createT("#"));
+    }
+
+    @Test
+    void test_LexerUsesSharedInstances() {
+        var tokens = new MarkdownLexer(false).tokenize("## Heading\n>> Quote  \n**bold**");
+        assertSame(createH("##"), tokens.get(0));
+        assertSame(createCRLF(), tokens.get(2));
+        assertSame(createQUOTE(">>"), tokens.get(3));
+        assertSame(createBR(), tokens.get(5));
+        assertSame(createEM("**"), tokens.get(6));
+    }
+}
@@ -0,0 +1,88 @@
+package markdown.parser;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.net.URISyntaxException;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.NoSuchElementException;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class MarkdownTokenStreamTest extends MarkdownTokenFactory {
+    private static List<MarkdownToken> drain(MarkdownTokenStream stream) {
+        var tokens = new ArrayList<MarkdownToken>();
+        while (stream.hasNext())
+            tokens.add(stream.next());
+        return tokens;
+    }
+
+    @Test
+    void test_Empty() {
+        var stream = new MarkdownLexer(false).tokenStream("");
+        assertFalse(stream.hasNext());
+        assertThrows(NoSuchElementException.class, stream::next);
+    }
+
+    @Test
+    void test_SameTokensAsList() {
+        String text = "# Heading\n\nFirst *line*  \nSecond <br> line\n\n> Quote\n>> Nested\n";
+        var expected = new MarkdownLexer(true).tokenize(text);
+        var actual = drain(new MarkdownLexer(true).tokenStream(text));
+        assertEquals(expected, actual);
+    }
+
+    @Test
+    void test_SameTokensAsListForResources() throws IOException, URISyntaxException {
+        String[] markdownFiles = {"basic01_text.md", "basic02_headings.md", "basic03_paragraphs.md",
+                "basic04_linebreaks.md", "basic05_emphasis.md", "basic06_blockquotes.md"};
+        for (String markdownFile : markdownFiles) {
+            URL resource = Thread.currentThread().getContextClassLoader().getResource(markdownFile);
+            assertNotNull(resource, markdownFile);
+            var expected = new MarkdownLexer(true).tokenize(resource.toURI());
+            try (var stream = new MarkdownLexer(true).tokenStream(resource.toURI())) {
+                assertEquals(expected, drain(stream));
+            }
+        }
+    }
+
+    @Test
+    void test_Previous() {
+        var stream = new MarkdownLexer(false).tokenStream("First\nSecond");
+        assertFalse(stream.hasPrevious());
+        assertEquals(createT("First"), stream.next());
+        assertEquals(createCRLF(), stream.next());
+        assertEquals(1, stream.previousIndex());
+        assertEquals(createCRLF(), stream.previous());
+        assertEquals(createT("First"), stream.previous());
+        assertFalse(stream.hasPrevious());
+        assertEquals(createT("First"), stream.next());
+        assertEquals(createCRLF(), stream.next());
+        assertEquals(createT("Second"), stream.next());
+        assertFalse(stream.hasNext());
+        assertEquals(3, stream.nextIndex());
+    }
+
+    @Test
+    void test_LookbehindExceeded() {
+        var stream = new MarkdownTokenStream(new MarkdownLexer(false),
+                new StringReader("a\nb\nc\n"), 2);
+        for (int i = 0; i < 5; i++)
+            stream.next();
+        stream.previous();
+        stream.previous();
+        assertFalse(stream.hasPrevious());
+        assertThrows(IllegalStateException.class, stream::previous);
+    }
+
+    @Test
+    void test_ParseFromStream() {
+        String text = "Blockquotes\n\n> Dorothy followed her.\n>\n>> The Witch bade her.\n>\n> Done.\n>\n";
+        var expected = MarkdownParser.parse(null, new MarkdownLexer(true).tokenize(text).listIterator());
+        var actual = MarkdownParser.parse(null, new MarkdownLexer(true).tokenStream(text));
+        assertEquals(expected, actual);
+    }
+}
@@ -0,0 +1,58 @@
+package markdown.parser;
+
+import markdown.interpreter.HtmlGeneratorVisitor;
+import markdown.nodes.MdText;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.nio.charset.StandardCharsets;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class MarkdownTokenTest {
+    private static final String TEXT = "# Heading\n\nSome *emphasized* text<br>  \n> quoted <x";
+
+    @Test
+    void test_RangeEqualsValue() {
+        var range = new MarkdownToken(MarkdownTokenType.T, "xxHelloxx", 2, 5);
+        var value = new MarkdownToken(MarkdownTokenType.T, "Hello");
+        assertEquals(value, range);
+        assertEquals(range, value);
+        assertEquals(value.hashCode(), range.hashCode());
+        assertEquals("Hello", range.getValue());
+        assertNotEquals(new MarkdownToken(MarkdownTokenType.HTML, "Hello"), range);
+    }
+
+    @Test
+    void test_InMemoryTokensReferenceTheInput() {
+        var tokens = new MarkdownLexer(true).tokenize(TEXT);
+        for (MarkdownToken token : tokens) {
+            if (token.getType() == MarkdownTokenType.T || token.getType() == MarkdownTokenType.HTML) {
+                assertSame(TEXT, token.getSource());
+                assertEquals(TEXT.substring(token.getStart(), token.getStart() + token.getLength()), token.getValue());
+            }
+        }
+        var streamed = new MarkdownLexer(true).tokenize(new ByteArrayInputStream(TEXT.getBytes(StandardCharsets.UTF_8)));
+        assertEquals(streamed, tokens);
+    }
+
+    @Test
+    void test_TextNodesReferenceTheInput() {
+        var doc = MarkdownParser.parse(TEXT);
+        var text = (MdText) doc.getChildren().get(1).getChildren().get(0);
+        assertSame(TEXT, text.getSource());
+        assertEquals("Some ", text.getValue());
+        assertEquals(new MdText("Some "), text);
+
+        text.setValue("Other");
+        assertEquals("Other", text.getSource().subSequence(text.getStart(), text.getEnd()).toString());
+        assertTrue(new HtmlGeneratorVisitor().generate(doc).contains("Other "));
+    }
+
+    @Test
+    void test_LessThanAtTheEnd() {
+        assertEquals(new MarkdownToken(MarkdownTokenType.T, "a <"), new MarkdownLexer(false).tokenize("a <").get(0));
+        assertEquals(new MarkdownToken(MarkdownTokenType.T, "a <"),
+                new MarkdownLexer(false).tokenize(new ByteArrayInputStream("a <".getBytes(StandardCharsets.UTF_8))).get(0));
+    }
+}
@@ -0,0 +1,103 @@
+package markdown.parser;
+
+import markdown.nodes.MdDoc;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ParallelMarkdownParserTest {
+    private static ForkJoinPool pool;
+
+    @BeforeAll
+    static void setUp() {
+        pool = new ForkJoinPool(4);
+    }
+
+    @AfterAll
+    static void tearDown() {
+        pool.shutdown();
+    }
+
+    @Test
+    void test_SameDocForResources() throws IOException {
+        StringBuilder all = new StringBuilder();
+        for (String markdownFile : new String[]{"basic01_text.md", "basic02_headings.md", "basic03_paragraphs.md",
+                "basic04_linebreaks.md", "basic05_emphasis.md", "basic06_blockquotes.md"}) {
+            try (InputStream input = getClass().getClassLoader().getResourceAsStream(markdownFile)) {
+                assertNotNull(input, markdownFile);
+                all.append(new String(input.readAllBytes(), StandardCharsets.UTF_8)).append('\n');
+            }
+        }
+        String text = all.toString();
+        for (int chunkSize : new int[]{1, 7, 64, 1000, ParallelMarkdownParser.DEFAULT_CHUNK_SIZE})
+            assertEquals(sequential(text, true), new ParallelMarkdownParser(true, pool, chunkSize).parse(null, text));
+    }
+
+    @Test
+    void test_BlockRunsIntoTheNextChunk() {
+        // the line-break after two spaces is a BR, so the paragraph goes on behind the blank line:
+        String text = "a  \n\nb\n\n> c\n>\n\n> d\n\n# e\n";
+        for (int chunkSize = 1; chunkSize < text.length(); chunkSize++)
+            assertEquals(sequential(text, false), new ParallelMarkdownParser(false, pool, chunkSize).parse(null, text));
+    }
+
+    @Test
+    void test_InvalidTokenEndsTheDoc() {
+        String text = "a\n\n - b\n\nc\n\nd\n";
+        MdDoc expected = sequential(text, true);
+        for (int chunkSize = 1; chunkSize < text.length(); chunkSize++)
+            assertEquals(expected, new ParallelMarkdownParser(true, pool, chunkSize).parse(null, text));
+    }
+
+    @Test
+    void test_BlockFailsAtTheEnd() {
+        // the last block fails at the end of the tokens, in the speculative parse of the last chunk:
+        String text = "word word word\n".repeat(20000) + "> quote\n\n# Title <b>*\n";
+        MdDoc expected = sequential(text, true);
+        assertEquals(expected, new ParallelMarkdownParser(true, pool, ParallelMarkdownParser.DEFAULT_CHUNK_SIZE).parse(null, text));
+        assertEquals(expected, new ParallelMarkdownParser(true).parse(null, text));
+        for (int chunkSize = 1; chunkSize < 40; chunkSize++) {
+            String small = "a\n\n> quote\n\n# Title <b>*\n";
+            assertEquals(sequential(small, true), new ParallelMarkdownParser(true, pool, chunkSize).parse(null, small));
+        }
+    }
+
+    @Test
+    void test_RandomTexts() {
+        String[] pieces = {"a", "text", " ", "  ", "\n", "\n\n", "\r\n", "\r\n\r\n", "\r", "# ", "## ", "> ", ">> ", "<b>", "</b>",
+                "*", "**", "_"};
+        Random random = new Random(12);
+        for (int i = 0; i < 300; i++) {
+            StringBuilder sb = new StringBuilder();
+            for (int j = random.nextInt(200); j > 0; j--)
+                sb.append(pieces[random.nextInt(pieces.length)]);
+            String text = sb.toString();
+            boolean isCreateCRLFEofToken = random.nextBoolean();
+            int chunkSize = 1 + random.nextInt(40);
+            assertEquals(sequential(text, isCreateCRLFEofToken),
+                    new ParallelMarkdownParser(isCreateCRLFEofToken, pool, chunkSize).parse(null, text), text);
+        }
+    }
+
+    @Test
+    void test_NextBlankLineEnd() {
+        assertEquals(3, ParallelMarkdownParser.nextBlankLineEnd("a\n\nb", 0));
+        assertEquals(5, ParallelMarkdownParser.nextBlankLineEnd("a\r\n\r\nb", 0));
+        assertEquals(6, ParallelMarkdownParser.nextBlankLineEnd("a\r\nb\n\nc", 0));
+        assertEquals(-1, ParallelMarkdownParser.nextBlankLineEnd("a\r\nb\n\r", 0));
+        assertEquals(-1, ParallelMarkdownParser.nextBlankLineEnd("a\n\n", 0));
+    }
+
+
+    private static MdDoc sequential(String text, boolean isCreateCRLFEofToken) {
+        return MarkdownParser.parse(null, new MarkdownLexer(isCreateCRLFEofToken).tokenize(text).listIterator());
+    }
+}
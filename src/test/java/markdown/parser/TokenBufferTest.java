@@ -0,0 +1,85 @@
+package markdown.parser;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.NoSuchElementException;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class TokenBufferTest extends MarkdownTokenFactory {
+    private static final String TEXT = "# Heading\n\nFirst *line*  \nSecond <br> line\r\n\n> Quote\n>> Nested\n - *_item_*\n";
+
+    @Test
+    void test_SameTokensAsList() {
+        for (boolean isCreateCRLFEofToken : new boolean[]{false, true}) {
+            var expected = new MarkdownLexer(isCreateCRLFEofToken).tokenize(TEXT);
+            var buffer = new MarkdownLexer(isCreateCRLFEofToken).tokenizeToBuffer(TEXT);
+            assertEquals(expected, buffer.asList());
+            for (int i = 0; i < buffer.size(); i++) {
+                assertEquals(expected.get(i).getType(), buffer.type(i));
+                assertEquals(expected.get(i).getValue(), buffer.value(i));
+            }
+        }
+    }
+
+    @Test
+    void test_SameTokensAsListForResources() throws IOException {
+        String[] markdownFiles = {"basic01_text.md", "basic02_headings.md", "basic03_paragraphs.md",
+                "basic04_linebreaks.md", "basic05_emphasis.md", "basic06_blockquotes.md"};
+        for (String markdownFile : markdownFiles) {
+            String text;
+            try (InputStream input = getClass().getClassLoader().getResourceAsStream(markdownFile)) {
+                assertNotNull(input, markdownFile);
+                text = new String(input.readAllBytes(), StandardCharsets.UTF_8);
+            }
+            var buffer = new MarkdownLexer(true).tokenizeToBuffer(text);
+            assertEquals(new MarkdownLexer(true).tokenize(text), buffer.asList(), markdownFile);
+            assertEquals(MarkdownParser.parse(null, new MarkdownLexer(true).tokenize(text).listIterator()),
+                    MarkdownParser.parse(null, buffer), markdownFile);
+        }
+    }
+
+    @Test
+    void test_OffsetsIntoTheSource() {
+        var buffer = new MarkdownLexer(false).tokenizeToBuffer("ab\r\n##  c");
+        assertSame(MarkdownTokenType.CRLF, buffer.type(1));
+        assertEquals(2, buffer.offset(1));
+        assertEquals(0, buffer.length(1));
+        assertSame(MarkdownTokenType.H, buffer.type(2));
+        assertEquals(4, buffer.offset(2));
+        assertEquals(2, buffer.length(2));
+        assertSame(createH("##"), buffer.token(2));
+    }
+
+    @Test
+    void test_Grows() {
+        var buffer = new TokenBuffer("x", 1);
+        for (int i = 0; i < 1000; i++)
+            buffer.add(MarkdownTokenType.T, 0, 1);
+        assertEquals(1000, buffer.size());
+        assertEquals("x", buffer.value(999));
+        assertThrows(IndexOutOfBoundsException.class, () -> buffer.type(1000));
+        buffer.clear();
+        assertEquals(0, buffer.size());
+    }
+
+    @Test
+    void test_Cursor() {
+        var buffer = new MarkdownLexer(false).tokenizeToBuffer("# Head\nText");
+        var cursor = buffer.cursor();
+        assertSame(MarkdownTokenType.H, cursor.peekType());
+        assertEquals(0, cursor.next());
+        assertSame(MarkdownTokenType.T, cursor.peekType());
+        assertEquals("Head", buffer.value(cursor.next()));
+        cursor.previous();
+        assertEquals(1, cursor.index());
+        cursor.reset(3);
+        assertEquals("Text", buffer.value(cursor.next()));
+        assertFalse(cursor.hasNext());
+        assertNull(cursor.peekType());
+        assertThrows(NoSuchElementException.class, cursor::next);
+    }
+}
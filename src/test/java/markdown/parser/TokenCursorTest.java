@@ -0,0 +1,136 @@
+package markdown.parser;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class TokenCursorTest {
+    private static final String TEXT = "# Heading\n\nFirst *line*  \nSecond <b>line</b>\n> Quote\n - item\n";
+
+    /**
+     * @return a cursor of every kind over the tokens of the text, see TokenCursor.of(...)
+     */
+    private static List<TokenCursor> cursors(String text) {
+        MarkdownLexer lexer = new MarkdownLexer(true);
+        List<TokenCursor> cursors = new ArrayList<>();
+        cursors.add(TokenCursor.of(lexer.tokenize(text), 0));
+        cursors.add(TokenCursor.of(lexer.tokenizeToBuffer(text)));
+        cursors.add(TokenCursor.of(lexer.tokenStream(new StringReader(text))));
+        cursors.add(TokenCursor.of(new LinkedList<>(lexer.tokenize(text)), 0));
+        return cursors;
+    }
+
+    @Test
+    void test_Kinds() {
+        List<String> kinds = new ArrayList<>();
+        for (TokenCursor cursor : cursors(TEXT))
+            kinds.add(cursor.getClass().getSimpleName());
+        assertEquals(List.of("ListCursor", "BufferCursor", "StreamCursor", "IteratorCursor"), kinds);
+    }
+
+    @Test
+    void test_Stepping() {
+        List<MarkdownToken> expected = new MarkdownLexer(true).tokenize(TEXT);
+        for (TokenCursor cursor : cursors(TEXT)) {
+            String kind = cursor.getClass().getSimpleName();
+            for (int i = 0; i < expected.size(); i++) {
+                assertEquals(i, cursor.index(), kind);
+                assertTrue(cursor.hasNext(), kind);
+                assertEquals(expected.get(i).getType(), cursor.peekType(), kind);
+                assertEquals(i, cursor.index(), "peeking does not move the cursor, " + kind);
+                assertEquals(expected.get(i), cursor.next(), kind);
+            }
+            assertFalse(cursor.hasNext(), kind);
+            assertNull(cursor.peekType(), kind);
+            assertThrows(NoSuchElementException.class, cursor::next, kind);
+
+            cursor.previous();
+            cursor.previous();
+            assertEquals(expected.size() - 2, cursor.index(), kind);
+            assertEquals(expected.get(expected.size() - 2), cursor.next(), kind);
+        }
+    }
+
+    @Test
+    void test_Reset() {
+        List<MarkdownToken> expected = new MarkdownLexer(true).tokenize(TEXT);
+        for (TokenCursor cursor : cursors(TEXT)) {
+            String kind = cursor.getClass().getSimpleName();
+            cursor.reset(5);
+            assertEquals(5, cursor.index(), kind);
+            assertEquals(expected.get(5), cursor.next(), kind);
+            cursor.reset(3);
+            assertEquals(expected.get(3).getType(), cursor.peekType(), kind);
+            cursor.reset(expected.size());
+            assertFalse(cursor.hasNext(), kind);
+            cursor.reset(expected.size() - 1);
+            assertEquals(expected.get(expected.size() - 1), cursor.next(), kind);
+        }
+        for (TokenCursor cursor : cursors(TEXT)) {
+            String kind = cursor.getClass().getSimpleName();
+            cursor.reset(0);
+            assertThrows(NoSuchElementException.class, () -> cursor.reset(-1), kind);
+            assertThrows(NoSuchElementException.class, cursor::previous, kind);
+            assertThrows(NoSuchElementException.class, () -> cursor.reset(expected.size() + 1), kind);
+        }
+    }
+
+    @Test
+    void test_StreamStepsBackBounded() {
+        MarkdownTokenStream stream = new MarkdownTokenStream(new MarkdownLexer(true), new StringReader(TEXT), 2);
+        TokenCursor cursor = TokenCursor.of(stream);
+        cursor.reset(6);
+        cursor.reset(4);
+        assertEquals(4, cursor.index());
+        assertThrows(IllegalStateException.class, () -> cursor.reset(3));
+    }
+
+    @Test
+    void test_SourceLength() {
+        MarkdownLexer lexer = new MarkdownLexer(true);
+        // a list does not know its text, whatever its first token is:
+        for (String text : new String[]{TEXT, "\nplain\n", "plain text\nmore\n"}) {
+            assertEquals(-1, TokenCursor.of(lexer.tokenize(text), 0).sourceLength(), text);
+            assertEquals(text.length(), TokenCursor.of(lexer.tokenize(text), 0, text.length()).sourceLength(), text);
+            assertEquals(text.length(), MarkdownParser.parse(text).getSourceLength(), text);
+            assertEquals(-1, MarkdownParser.parse(null, lexer.tokenize(text)).getSourceLength(), text);
+        }
+        assertEquals(TEXT.length(), TokenCursor.of(lexer.tokenizeToBuffer(TEXT)).sourceLength());
+        assertEquals(-1, TokenCursor.of(new ArrayList<>(), 0).sourceLength());
+        assertEquals(-1, TokenCursor.of(new LinkedList<>(lexer.tokenize(TEXT)), 0).sourceLength());
+
+        TokenCursor stream = TokenCursor.of(lexer.tokenStream(new StringReader(TEXT)));
+        while (stream.hasNext())
+            stream.next();
+        assertEquals(TEXT.length(), stream.sourceLength());
+    }
+
+    @Test
+    void test_SameDocAsListIterator() {
+        // the parser over a plain ListIterator, which it only steps through by next() and previous():
+        String[] pieces = {"a", "text", " ", "  ", "\n", "\n\n", "\r\n", "# ", "## ", "> ", ">> ", "- ", "<b>", "</b>",
+                "*", "**", "_"};
+        MarkdownLexer lexer = new MarkdownLexer(true);
+        Random random = new Random(14);
+        for (int i = 0; i < 200; i++) {
+            StringBuilder sb = new StringBuilder();
+            for (int j = random.nextInt(60); j > 0; j--)
+                sb.append(pieces[random.nextInt(pieces.length)]);
+            String text = sb.toString();
+
+            var expected = MarkdownParser.parse(null, new LinkedList<>(lexer.tokenize(text)).listIterator());
+            assertEquals(expected, MarkdownParser.parse(null, lexer.tokenize(text)), text);
+            assertEquals(expected, MarkdownParser.parse(null, lexer.tokenizeToBuffer(text)), text);
+            try (MarkdownTokenStream tokens = lexer.tokenStream(new StringReader(text))) {
+                assertEquals(expected, MarkdownParser.parse(null, tokens), text);
+            }
+        }
+    }
+}
@@ -0,0 +1,163 @@
+package markdown.server;
+
+import markdown.MarkdownProcessor;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class MarkdownServerTest {
+    private static final String MARKDOWN = "# Title\n\nSome *emphasized* text\n> a quote\n";
+
+    private static final String SLOW = "slow\n";
+
+    private final HttpClient client = HttpClient.newBuilder().version(HttpClient.Version.HTTP_1_1).build();
+    private final CountDownLatch slowStarted = new CountDownLatch(1);
+    private final CountDownLatch slowReleased = new CountDownLatch(1);
+    private MarkdownServer server;
+    private URI uri;
+
+    @BeforeEach
+    void setUp() throws IOException {
+        // renders the markdown SLOW only once slowReleased is counted down:
+        MarkdownProcessor processor = new MarkdownProcessor() {
+            @Override
+            public void process(byte[] markdown, Appendable output) throws IOException {
+                if (SLOW.equals(new String(markdown, StandardCharsets.UTF_8))) {
+                    slowStarted.countDown();
+                    try {
+                        slowReleased.await();
+                    } catch (InterruptedException e) {
+                        throw new IOException(e);
+                    }
+                }
+                super.process(markdown, output);
+            }
+        };
+        server = new MarkdownServer(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), processor, 1024);
+        server.start();
+        uri = URI.create("http://localhost:" + server.getAddress().getPort() + "/");
+    }
+
+    @AfterEach
+    void tearDown() throws InterruptedException {
+        slowReleased.countDown();
+        server.shutdown(Duration.ZERO);
+    }
+
+    private HttpResponse<String> post(HttpRequest.BodyPublisher body) throws IOException, InterruptedException {
+        return client.send(HttpRequest.newBuilder(uri).POST(body).build(), HttpResponse.BodyHandlers.ofString());
+    }
+
+    private CompletableFuture<HttpResponse<String>> postSlow() throws InterruptedException {
+        CompletableFuture<HttpResponse<String>> response = client.sendAsync(
+                HttpRequest.newBuilder(uri).POST(HttpRequest.BodyPublishers.ofString(SLOW)).build(),
+                HttpResponse.BodyHandlers.ofString());
+        slowStarted.await();
+        return response;
+    }
+
+    private static String render(String markdown) throws IOException {
+        StringBuilder html = new StringBuilder();
+        new MarkdownProcessor().process(markdown.getBytes(StandardCharsets.UTF_8), html);
+        return html.toString();
+    }
+
+    @Test
+    void test_render() throws Exception {
+        HttpResponse<String> response = post(HttpRequest.BodyPublishers.ofString(MARKDOWN));
+        assertEquals(200, response.statusCode());
+        assertEquals("text/html; charset=utf-8", response.headers().firstValue("Content-Type").orElse(null));
+        assertEquals(render(MARKDOWN), response.body());
+        assertTrue(response.body().contains("<h1>Title"));
+
+        // not ascii:
+        response = post(HttpRequest.BodyPublishers.ofString("Grüße *ñ*\n", StandardCharsets.UTF_8));
+        assertEquals(render("Grüße *ñ*\n"), response.body());
+    }
+
+    @Test
+    void test_methodNotAllowed() throws Exception {
+        HttpResponse<String> response = client.send(HttpRequest.newBuilder(uri).GET().build(),
+                HttpResponse.BodyHandlers.ofString());
+        assertEquals(405, response.statusCode());
+        assertEquals("POST", response.headers().firstValue("Allow").orElse(null));
+    }
+
+    @Test
+    void test_sizeLimit() throws Exception {
+        String big = "x".repeat(1025);
+        assertEquals(413, post(HttpRequest.BodyPublishers.ofString(big)).statusCode());
+        assertEquals(200, post(HttpRequest.BodyPublishers.ofString(big.substring(1))).statusCode());
+
+        // chunked, without a Content-Length:
+        byte[] bytes = big.getBytes(StandardCharsets.UTF_8);
+        HttpResponse<String> response = post(HttpRequest.BodyPublishers.ofInputStream(
+                () -> new java.io.ByteArrayInputStream(bytes)));
+        assertEquals(413, response.statusCode());
+    }
+
+    @Test
+    void test_concurrentRequests() throws Exception {
+        CompletableFuture<?>[] responses = new CompletableFuture<?>[50];
+        for (int i = 0; i < responses.length; i++) {
+            String markdown = "# Request " + i + "\n";
+            String expected = render(markdown);
+            responses[i] = client.sendAsync(HttpRequest.newBuilder(uri).POST(HttpRequest.BodyPublishers.ofString(markdown)).build(),
+                            HttpResponse.BodyHandlers.ofString())
+                    .thenAccept(response -> assertEquals(expected, response.body()));
+        }
+        CompletableFuture.allOf(responses).join();
+    }
+
+    @Test
+    void test_slowRequest() throws Exception {
+        CompletableFuture<HttpResponse<String>> slow = postSlow();
+        assertEquals(render(MARKDOWN), post(HttpRequest.BodyPublishers.ofString(MARKDOWN)).body());
+        assertFalse(slow.isDone());
+        slowReleased.countDown();
+        assertEquals(render(SLOW), slow.get().body());
+    }
+
+    @Test
+    void test_drain() throws Exception {
+        CompletableFuture<HttpResponse<String>> slow = postSlow();
+        CompletableFuture<Boolean> shutdown = CompletableFuture.supplyAsync(() -> {
+            try {
+                return server.shutdown(Duration.ofSeconds(30));
+            } catch (InterruptedException e) {
+                throw new IllegalStateException(e);
+            }
+        });
+        while (!server.isDraining())
+            Thread.sleep(1);
+        assertEquals(503, post(HttpRequest.BodyPublishers.ofString(MARKDOWN)).statusCode());
+        assertFalse(shutdown.isDone());
+
+        slowReleased.countDown();
+        HttpResponse<String> response = slow.get();
+        assertEquals(200, response.statusCode());
+        assertEquals(render(SLOW), response.body());
+        assertTrue(shutdown.get());
+        assertThrows(IOException.class, () -> post(HttpRequest.BodyPublishers.ofString(MARKDOWN)));
+    }
+
+    @Test
+    void test_drainTimeout() throws Exception {
+        postSlow();
+        assertFalse(server.shutdown(Duration.ofMillis(50)));
+    }
+}